@@ -59,6 +59,7 @@ public class TCConfig {
     public static boolean useCoalFromStorageCart;
     public static boolean setOwnerOnPlacement;
     public static boolean keepChunksLoadedOnlyWhenMoving;
+    public static double restoreTrainsTimePerTick = 5.0;
     public static int maxDetectorLength;
     public static int maxMutexSize;
     public static int maxMinecartStackSize;
@@ -100,6 +101,7 @@ public class TCConfig {
     public static boolean playHissWhenLinked = true;
     public static boolean playHissWhenCartRemoved = true;
     public static boolean rerouteOnStartup = false;
+    public static boolean pathFindingUseHeuristic = false;
     public static boolean switcherResetCountersOnFirstCart = true;
     public static boolean logMutexConflicts = false;
     public static String launchFunctionType = "bezier";
@@ -109,7 +111,15 @@ public class TCConfig {
     public static boolean trainsCheckSignFacing = true;
     public static double unloadRunawayTrainDistance = 160.0;
     public static int autoSaveInterval = 30 * 20; // autosave every 30 seconds
+    public static boolean logAutoSave = false;
     public static int attachmentTransformParallelism = -1;
+    public static int packetWriterThreads = -1;
+    public static boolean packetFlushPerTick = false;
+    public static int packetQueueLimit = 0;
+    public static double attachmentSyncPositionThreshold = 0.0;
+    public static double attachmentSyncRotationThreshold = 0.0;
+    public static double attachmentSyncFullRateDistance = 32.0;
+    public static double attachmentSyncSlowSpeed = 0.05;
     public static boolean allowExternalTicketImagePaths = false; // Whether images outside of the images subdirectory are allowed
     public static String currencyFormat;
     public static Set<Material> allowedBlockBreakTypes = new HashSet<>();
@@ -245,6 +255,12 @@ public class TCConfig {
         config.addHeader("keepChunksLoadedOnlyWhenMoving", "They also keep chunks loaded while the train is waiting on a station");
         keepChunksLoadedOnlyWhenMoving = config.get("keepChunksLoadedOnlyWhenMoving", false);
 
+        config.setHeader("restoreTrainsTimePerTick", "\nMaximum time in milliseconds spent every tick restoring unloaded trains in chunks that loaded");
+        config.addHeader("restoreTrainsTimePerTick", "When many trains are in chunks that load at once, they are restored over multiple ticks,");
+        config.addHeader("restoreTrainsTimePerTick", "with the trains nearest to players restored first. At least one train is restored every tick");
+        config.addHeader("restoreTrainsTimePerTick", "Set to 0 to restore all trains right away when their chunks load");
+        restoreTrainsTimePerTick = config.get("restoreTrainsTimePerTick", 5.0);
+
         config.setHeader("enableCeilingBlockCollision", "\nWhether to enable or cancel collisions with blocks above minecarts");
         config.addHeader("enableCeilingBlockCollision", "Some constructions depend on these block collisions to block minecarts");
         config.addHeader("enableCeilingBlockCollision", "If these collisions are unwanted, they can be turned off here");
@@ -264,6 +280,10 @@ public class TCConfig {
         config.addHeader("autoSaveInterval", "A manual save can be performed using /train saveall");
         autoSaveInterval = config.get("autoSaveInterval", 30 * 20);
 
+        config.setHeader("logAutoSave", "\nLogs a message to server log for every file saved, with the time it took and the number of bytes written");
+        config.addHeader("logAutoSave", "Files are saved on background threads, so this time is not spent on the main thread");
+        logAutoSave = config.get("logAutoSave", false);
+
         config.setHeader("claimNewSavedTrains", "\nSets whether players automatically claim new saved trains that they save");
         config.addHeader("claimNewSavedTrains", "Once claimed, other players cannot overwrite the saved train, effectively protecting it");
         config.addHeader("claimNewSavedTrains", "Setting this to false will have new trains exist in public domain, and anyone can modify it");
@@ -493,6 +513,11 @@ public class TCConfig {
         traincarts.getPathProvider().setMaxProcessingPerTick(
                 config.get("pathFindingMaxProcessingPerTick", PathProvider.DEFAULT_MAX_PROCESSING_PER_TICK));
 
+        config.setHeader("pathFindingUseHeuristic", "\nWhether to guide route lookups using the straight-line block distance to the destination");
+        config.addHeader("pathFindingUseHeuristic", "This makes finding routes on very large networks faster, but can pick a longer route");
+        config.addHeader("pathFindingUseHeuristic", "when rails teleport trains, for example through portals");
+        pathFindingUseHeuristic = config.get("pathFindingUseHeuristic", false);
+
         config.setHeader("switcherResetCountersOnFirstCart", "\nFor [cart] signs that use counter statements, specifies whether");
         config.addHeader("switcherResetCountersOnFirstCart", "counters reset on the first cart of the train");
         switcherResetCountersOnFirstCart = config.get("switcherResetCountersOnFirstCart", true);
@@ -614,6 +639,46 @@ public class TCConfig {
             attachmentTransformParallelism = config.get("attachmentTransformParallelism", -1);
         }
 
+        // How many threads are used to send packets to players
+        config.setHeader("packetWriterThreads", "\nHow many threads are used to send attachment packets to players");
+        config.addHeader("packetWriterThreads", "The threads are shared by all players, and send the packets of one player at a time");
+        config.addHeader("packetWriterThreads", "The default, 'auto' or -1, uses half the number of CPU cores, up to 4");
+        if (!config.contains("packetWriterThreads")) {
+            config.set("packetWriterThreads", "auto");
+            packetWriterThreads = -1;
+        } else if ("auto".equals(config.get("packetWriterThreads"))) {
+            packetWriterThreads = -1;
+        } else {
+            packetWriterThreads = config.get("packetWriterThreads", -1);
+        }
+
+        config.setHeader("packetFlushPerTick", "\nWhether packets are sent to players once per tick, instead of right away");
+        config.addHeader("packetFlushPerTick", "This sends more packets at once, which reduces the work done by the writer threads");
+        packetFlushPerTick = config.get("packetFlushPerTick", false);
+
+        config.setHeader("packetQueueLimit", "\nLimits the number of packets waiting to be sent to a single player");
+        config.addHeader("packetQueueLimit", "When set, position and rotation packets of an entity that were not sent yet are replaced");
+        config.addHeader("packetQueueLimit", "by newer ones, and non-critical packets are dropped while more packets are waiting than this limit");
+        config.addHeader("packetQueueLimit", "This stops players with a slow connection from receiving a large backlog of old movement");
+        config.addHeader("packetQueueLimit", "The default, 0, does not limit the queue and sends all packets");
+        packetQueueLimit = config.get("packetQueueLimit", 0);
+
+        config.setHeader("attachmentSync", "\nConfigures how attachment movement is sent to players");
+        config.addHeader("attachmentSync", "Position and rotation changes smaller than these thresholds are not sent right away");
+        config.addHeader("attachmentSync", "Instead, they are sent once they add up to more than the threshold");
+        config.addHeader("attachmentSync", "This reduces the number of packets sent for trains with many attachments");
+        config.addHeader("attachmentSync", "The default, 0, sends all changes that players can see");
+        ConfigurationNode attachmentSyncConfig = config.getNode("attachmentSync");
+        attachmentSyncConfig.setHeader("positionThreshold", "Position change in blocks below which it is not sent");
+        attachmentSyncPositionThreshold = attachmentSyncConfig.get("positionThreshold", 0.0);
+        attachmentSyncConfig.setHeader("rotationThreshold", "Rotation change in degrees below which it is not sent");
+        attachmentSyncRotationThreshold = attachmentSyncConfig.get("rotationThreshold", 0.0);
+        attachmentSyncConfig.setHeader("fullRateDistance", "Carts closer than this distance in blocks to a player are updated every tick");
+        attachmentSyncConfig.addHeader("fullRateDistance", "Carts further away are updated less often, up to the maximum sync interval of the train");
+        attachmentSyncFullRateDistance = attachmentSyncConfig.get("fullRateDistance", 32.0);
+        attachmentSyncConfig.setHeader("slowSpeed", "Carts moving slower than this speed in blocks/tick are updated at the maximum sync interval of the train");
+        attachmentSyncSlowSpeed = attachmentSyncConfig.get("slowSpeed", 0.05);
+
         config.setHeader("unloadRunawayTrainDistance", "\nWhen trains that keep chunks loaded around them derail, they can end up");
         config.addHeader("unloadRunawayTrainDistance", "flying off into nowhere. This results in thousands of chunks being generated,");
         config.addHeader("unloadRunawayTrainDistance", "with no clear indication other than server performance tanking. To combat this,");
@@ -652,6 +652,10 @@ public class TCListener implements Listener {
                     if (railType != RailType.NONE) {
                         railType.onBlockPlaced(placed);
                         plugin.applyBlockPhysics(placed, blockData);
+                        RailLookup.notifyTrackChanged(placed);
+
+                        // Routes ending at or passing by this rail might have changed
+                        plugin.getPathProvider().getWorld(placed.getWorld()).rerouteWalkedRailsNear(new BlockLocation(placed));
                     }
                 }
             });
@@ -686,6 +690,7 @@ public class TCListener implements Listener {
                     RailLookup.CachedRailPiece cachedRailPiece = RailLookup.lookupCachedRailPieceIfCached(OfflineBlock.of(block), type);
                     if (!cachedRailPiece.isNone()) {
                         cachedRailPiece.forceCacheVerification();
+                        RailLookup.notifyTrackChanged(block);
                     }
                 }
             }
@@ -757,11 +762,13 @@ public class TCListener implements Listener {
      * @param railsBlock that is broken
      */
     public void onRailsBreak(Block railsBlock) {
+        RailLookup.notifyTrackChanged(railsBlock);
         MinecartMember<?> mm = MinecartMemberStore.getAt(railsBlock);
         if (mm != null) {
             mm.getGroup().getSignTracker().updatePosition();
         }
-        // Remove path node from path finding
+        // Remove path node from path finding, and route again the connections passing this rail
+        plugin.getPathProvider().getWorld(railsBlock.getWorld()).rerouteWalkedRail(new BlockLocation(railsBlock));
         PathNode.remove(railsBlock);
     }
 }
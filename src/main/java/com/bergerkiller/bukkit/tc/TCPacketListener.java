@@ -11,9 +11,11 @@ import com.bergerkiller.bukkit.common.protocol.PacketType;
 import com.bergerkiller.bukkit.common.utils.CommonUtil;
 import com.bergerkiller.bukkit.common.utils.WorldUtil;
 import com.bergerkiller.bukkit.common.wrappers.HumanHand;
+import com.bergerkiller.bukkit.tc.attachments.AttachmentEntityIndex;
 import com.bergerkiller.bukkit.tc.controller.MinecartGroup;
 import com.bergerkiller.bukkit.tc.controller.MinecartGroupStore;
 import com.bergerkiller.bukkit.tc.controller.MinecartMember;
+import com.bergerkiller.bukkit.tc.controller.components.AttachmentControllerMember;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.PacketPlayInUseEntityHandle;
 import com.bergerkiller.generated.net.minecraft.world.EnumHandHandle;
 import com.bergerkiller.generated.net.minecraft.world.entity.player.EntityHumanHandle;
@@ -23,6 +25,7 @@ import java.util.Iterator;
 import java.util.Map;
 
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerInteractEntityEvent;
 import org.bukkit.inventory.EquipmentSlot;
@@ -120,67 +123,100 @@ class TCPacketListener implements PacketListener {
                 return;
             }
 
-            // Find all Minecart entities that are nearby the player
+            // Find the Minecart that uses this entity id in its attachments
             Location eyeLoc = event.getPlayer().getEyeLocation();
-            try (ImplicitlySharedSet<MinecartGroup> groups = MinecartGroupStore.getGroups().clone()) {
-                for (MinecartGroup group : groups) {
-                    if (group.getWorld() != eyeLoc.getWorld()) {
-                        continue;
-                    }
+            MinecartMember<?> member = findAttachmentMember(event.getPlayer(), eyeLoc.getWorld(), entityId);
+            if (member == null) {
+                return; // Not an attachment entity
+            }
+
+            // UseAction INTERACT_AT fires for all entities, including Armorstands
+            // The INTERACT only fires for interactable entities, like Minecarts
+            // Since INTERACT_AT also fires for Minecarts, it is easier to ignore INTERACT
+            // and do all handling using INTERACT_AT.
+            if (packet_use.isInteract()) {
+                event.setCancelled(true);
+                return;
+            }
+
+            // If nearby the player, allow standard interaction. Otherwise, do all of this ourselves.
+            // Minecraft enforces a 3 block radius when not having line of sight, assume this limit.
+            if (member.getEntity().loc.distanceSquared(eyeLoc) < (3.0 * 3.0)) {
+                
+                // For some reason this is needed, though.
+                if (packet_use.isInteractAt()) {
+                    HumanHand hand = packet_use.getInteractHand(event.getPlayer());
+                    packet_use.setInteract(event.getPlayer(), hand);
+                }
+
+                // Must track this to cancel superfluous LEFT clicks that happen later
+                if (packet_use.isInteract() || packet_use.isInteractAt()) {
+                    this.suppressAttacksFor(event.getPlayer(), ATTACK_SUPPRESS_DURATION);
+                }
 
-                    for (MinecartMember<?> member : group) {
-                        if (!member.getAttachments().isViewer(event.getPlayer())) {
-                            continue; // If not visible, don't loop through the model to check this
-                        }
-                        if (!member.getAttachments().isAttachment(entityId)) {
-                            continue; // Id is not used in the model
-                        }
-
-                        // UseAction INTERACT_AT fires for all entities, including Armorstands
-                        // The INTERACT only fires for interactable entities, like Minecarts
-                        // Since INTERACT_AT also fires for Minecarts, it is easier to ignore INTERACT
-                        // and do all handling using INTERACT_AT.
-                        if (packet_use.isInteract()) {
-                            event.setCancelled(true);
-                            return;
-                        }
-
-                        // If nearby the player, allow standard interaction. Otherwise, do all of this ourselves.
-                        // Minecraft enforces a 3 block radius when not having line of sight, assume this limit.
-                        if (member.getEntity().loc.distanceSquared(eyeLoc) < (3.0 * 3.0)) {
-                            
-                            // For some reason this is needed, though.
-                            if (packet_use.isInteractAt()) {
-                                HumanHand hand = packet_use.getInteractHand(event.getPlayer());
-                                packet_use.setInteract(event.getPlayer(), hand);
-                            }
-
-                            // Must track this to cancel superfluous LEFT clicks that happen later
-                            if (packet_use.isInteract() || packet_use.isInteractAt()) {
-                                this.suppressAttacksFor(event.getPlayer(), ATTACK_SUPPRESS_DURATION);
-                            }
-
-                            // Rewrite the packet
-                            packet_use.setUsedEntityId(member.getEntity().getEntityId());
-                            return; // Allow
-                        }
-
-                        // Cancel the interaction and handle this ourselves.
-                        if (packet_use.isInteract() || packet_use.isInteractAt()) {
-                            // Get hand used for interaction
-                            HumanHand hand = packet_use.getInteractHand(event.getPlayer());
-                            fakeInteraction(member, event.getPlayer(), hand);
-                            event.setCancelled(true);
-                        } else if (packet_use.isAttack()) {
-                            // Attack
-                            fakeAttack(member, event.getPlayer());
-                            event.setCancelled(true);
-                        }
-                        return;
+                // Rewrite the packet
+                packet_use.setUsedEntityId(member.getEntity().getEntityId());
+                return; // Allow
+            }
+
+            // Cancel the interaction and handle this ourselves.
+            if (packet_use.isInteract() || packet_use.isInteractAt()) {
+                // Get hand used for interaction
+                HumanHand hand = packet_use.getInteractHand(event.getPlayer());
+                fakeInteraction(member, event.getPlayer(), hand);
+                event.setCancelled(true);
+            } else if (packet_use.isAttack()) {
+                // Attack
+                fakeAttack(member, event.getPlayer());
+                event.setCancelled(true);
+            }
+        }
+    }
+
+    /**
+     * Finds the Minecart member that has an attachment using an entity id, that the player
+     * can see. Entity ids registered in the {@link AttachmentEntityIndex} are looked up
+     * right away. Otherwise the attachments of all trains on the world are checked, which
+     * finds attachments that spawn entities of their own without registering them.
+     *
+     * @param player Player that interacted with the entity
+     * @param world World the player is on
+     * @param entityId Entity id of the entity
+     * @return Minecart member using the entity id, or null if none does
+     */
+    private static MinecartMember<?> findAttachmentMember(Player player, World world, int entityId) {
+        AttachmentControllerMember controller = AttachmentEntityIndex.find(entityId);
+        if (controller != null) {
+            MinecartMember<?> member = controller.getMember();
+            if (member.isUnloaded() || member.getEntity().getWorld() != world) {
+                return null;
+            }
+            if (!controller.isViewer(player)) {
+                return null; // If not visible, the player can't have clicked on it
+            }
+            if (!controller.isAttachment(entityId)) {
+                return null; // Id is no longer used in the model
+            }
+            return member;
+        }
+
+        try (ImplicitlySharedSet<MinecartGroup> groups = MinecartGroupStore.getGroups().clone()) {
+            for (MinecartGroup group : groups) {
+                if (group.getWorld() != world) {
+                    continue;
+                }
+
+                for (MinecartMember<?> member : group) {
+                    if (!member.getAttachments().isViewer(player)) {
+                        continue; // If not visible, don't loop through the model to check this
+                    }
+                    if (member.getAttachments().isAttachment(entityId)) {
+                        return member;
                     }
                 }
             }
         }
+        return null;
     }
 
     public static void fakeAttack(final MinecartMember<?> member, final Player player) {
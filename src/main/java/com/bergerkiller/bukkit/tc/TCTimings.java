@@ -25,6 +25,7 @@ public class TCTimings {
     public static final Timings RAILTYPE_FINDRAILINFO = timings.create("findRailInfo  (Rail Type Cache)");
     public static final Timings SIGNACTION_SPAWN = timings.create("spawn  (Sign Action, Spawner)");
     public static final Timings NETWORK_UPDATE_POSITIONS = timings.create("updatePositions  (Network)");
+    public static final Timings NETWORK_WAIT_TRANSFORMS = timings.create("waitTransforms  (Network, Attachment Transform Threads)");
     public static final Timings NETWORK_PERFORM_TICK = timings.create("performTick  (Network)");
     public static final Timings NETWORK_PERFORM_MOVEMENT = timings.create("performMovement  (Network)");
 }
@@ -51,6 +51,7 @@ import com.bergerkiller.bukkit.tc.signactions.SignActionSpawn;
 import com.bergerkiller.bukkit.tc.signactions.mutex.MutexZoneCache;
 import com.bergerkiller.bukkit.tc.signactions.spawner.SpawnSignManager;
 import com.bergerkiller.bukkit.tc.statements.Statement;
+import com.bergerkiller.bukkit.tc.storage.AsyncSaveWriter;
 import com.bergerkiller.bukkit.tc.storage.OfflineGroup;
 import com.bergerkiller.bukkit.tc.storage.OfflineGroupManager;
 import com.bergerkiller.bukkit.tc.tickets.TicketStore;
@@ -87,6 +88,7 @@ public class TrainCarts extends PluginBase {
     private Task autosaveTask;
     private Task cacheCleanupTask;
     private Task mutexZoneUpdateTask;
+    private Task trainRestoreTask;
     private final List<ChunkPreloadTask> chunkPreloadTasks = new ArrayList<>();
     private TCPropertyRegistry propertyRegistry;
     private TCListener listener;
@@ -106,6 +108,7 @@ public class TrainCarts extends PluginBase {
     private final OfflineSignStore offlineSignStore = new OfflineSignStore(this);
     private final SignController signController = new SignController(this);
     private final PacketQueueMap packetQueueMap = new PacketQueueMap();
+    private final AsyncSaveWriter saveWriter = new AsyncSaveWriter(this);
     private ResourcePackModelListing modelListing = new ResourcePackModelListing(); // Uninitialized
     private Economy econ = null;
     private boolean isTabPluginEnabled = false;
@@ -188,6 +191,15 @@ public class TrainCarts extends PluginBase {
         return this.routeManager;
     }
 
+    /**
+     * Gets the writer that saves the save files of TrainCarts on background threads
+     *
+     * @return save writer
+     */
+    public AsyncSaveWriter getSaveWriter() {
+        return this.saveWriter;
+    }
+
     /**
      * Gets the selector handler registry, which is used to replace selectors
      * in commands with the handler-provided replacements.<br>
@@ -701,6 +713,9 @@ public class TrainCarts extends PluginBase {
         // Refreshes mutex signs with trains on it to release state again
         mutexZoneUpdateTask = new MutexZoneUpdateTask(this).start(1, 1);
 
+        // Restores trains in chunks that loaded, a limited number every tick
+        trainRestoreTask = new TrainRestoreTask(this).start(1, 1);
+
         // Starts a task to track the auto-spawn timers
         this.spawnSignManager.enable();
 
@@ -796,6 +811,7 @@ public class TrainCarts extends PluginBase {
         Task.stop(autosaveTask);
         Task.stop(cacheCleanupTask);
         Task.stop(mutexZoneUpdateTask);
+        Task.stop(trainRestoreTask);
 
         //Stop preloading chunks (happens when quickly disabling after enabling)
         for (ChunkPreloadTask preloadTask : this.chunkPreloadTasks) {
@@ -805,6 +821,9 @@ public class TrainCarts extends PluginBase {
         //stop updating
         trainUpdateController.disable();
 
+        //send remaining packets and stop the packet writer threads
+        packetQueueMap.shutdown();
+
         //update max item stack
         if (TCConfig.maxMinecartStackSize != 1) {
             for (Material material : MaterialsByName.getAllMaterials()) {
@@ -882,6 +901,7 @@ public class TrainCarts extends PluginBase {
 
         //save all data to disk (autosave=false)
         save(false);
+        saveWriter.shutdown();
 
         // Disable path provider before de-initializing path nodes / sign actions
         if (this.pathProvider != null) {
@@ -967,6 +987,11 @@ public class TrainCarts extends PluginBase {
         if (!autosave) {
             OfflineGroupManager.save(getDataFolder() + File.separator + "trains.groupdata");
         }
+
+        // Most files are written in the background. A forced save completes all of them.
+        if (!autosave) {
+            saveWriter.flush();
+        }
     }
 
     private void enableOfflineSignHandlers() {
@@ -1044,6 +1069,18 @@ public class TrainCarts extends PluginBase {
         }
     }
 
+    private static class TrainRestoreTask extends Task {
+
+        public TrainRestoreTask(TrainCarts plugin) {
+            super(plugin);
+        }
+
+        @Override
+        public void run() {
+            OfflineGroupManager.restoreQueuedGroups((TrainCarts) this.getPlugin());
+        }
+    }
+
     private static class MutexZoneUpdateTask extends Task {
 
         public MutexZoneUpdateTask(JavaPlugin plugin) {
@@ -0,0 +1,71 @@
+package com.bergerkiller.bukkit.tc.attachments;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bergerkiller.bukkit.tc.attachments.api.AttachmentManager;
+import com.bergerkiller.bukkit.tc.controller.components.AttachmentControllerMember;
+
+/**
+ * Tracks the entity ids of virtual entities that are spawned for the attachments of
+ * minecarts. When a player interacts with an entity that does not exist on the server,
+ * this is used to find the minecart it belongs to with a single lookup, rather than
+ * checking the attachments of every minecart on the server.<br>
+ * <br>
+ * {@link VirtualEntity} registers itself while it has viewers. Other entities spawned
+ * by attachments, like fake players in seats, must be registered and unregistered
+ * by the attachment itself. Entity ids that are not registered are still found by
+ * checking the attachments of all minecarts, using
+ * {@link com.bergerkiller.bukkit.tc.attachments.api.Attachment#containsEntityId(int)}.
+ * This class is multi-thread safe.
+ */
+public final class AttachmentEntityIndex {
+    private static final ConcurrentHashMap<Integer, AttachmentControllerMember> byEntityId = new ConcurrentHashMap<>();
+
+    private AttachmentEntityIndex() {
+    }
+
+    /**
+     * Registers an entity id as being used by an attachment of a minecart. If the manager
+     * is not the attachment controller of a minecart, this method does nothing.
+     *
+     * @param entityId Entity id of the virtual entity
+     * @param manager Attachment manager of the attachment that spawned the entity
+     */
+    public static void register(int entityId, AttachmentManager manager) {
+        if (entityId != -1 && manager instanceof AttachmentControllerMember) {
+            byEntityId.put(entityId, (AttachmentControllerMember) manager);
+        }
+    }
+
+    /**
+     * Un-registers an entity id previously registered using {@link #register(int, AttachmentManager)}
+     *
+     * @param entityId Entity id of the virtual entity
+     */
+    public static void unregister(int entityId) {
+        if (entityId != -1) {
+            byEntityId.remove(entityId);
+        }
+    }
+
+    /**
+     * Finds the attachment controller of the minecart that spawned an entity.
+     * The caller should still check that the entity id is used by an attachment
+     * using {@link AttachmentControllerMember#isAttachment(int)}.
+     *
+     * @param entityId Entity id of the virtual entity
+     * @return Attachment controller of the minecart, or null if not found
+     */
+    public static AttachmentControllerMember find(int entityId) {
+        return byEntityId.get(entityId);
+    }
+
+    /**
+     * Gets the number of entity ids that are registered
+     *
+     * @return count
+     */
+    public static int size() {
+        return byEntityId.size();
+    }
+}
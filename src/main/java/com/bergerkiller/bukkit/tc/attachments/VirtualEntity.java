@@ -22,6 +22,7 @@ import com.bergerkiller.bukkit.common.protocol.PacketType;
 import com.bergerkiller.bukkit.common.utils.EntityUtil;
 import com.bergerkiller.bukkit.common.utils.MathUtil;
 import com.bergerkiller.bukkit.common.wrappers.DataWatcher;
+import com.bergerkiller.bukkit.tc.TCConfig;
 import com.bergerkiller.bukkit.tc.Util;
 import com.bergerkiller.bukkit.tc.attachments.api.AttachmentManager;
 import com.bergerkiller.bukkit.tc.attachments.api.AttachmentViewer;
@@ -71,8 +72,10 @@ public class VirtualEntity {
     private final Vector liveAbsPos;
     private final Vector syncAbsPos;
     private final Vector velSyncAbsPos;
+    private final Vector prevLiveAbsPos;
     private float liveYaw, livePitch;
     private float syncYaw, syncPitch;
+    private float prevLiveYaw, prevLivePitch;
     private double liveVel;
     private double syncVel;
     private Vector relativePos = new Vector();
@@ -98,6 +101,8 @@ public class VirtualEntity {
         this.liveAbsPos = new Vector();
         this.syncAbsPos = new Vector(Double.NaN, Double.NaN, Double.NaN);
         this.velSyncAbsPos = new Vector(Double.NaN, Double.NaN, Double.NaN);
+        this.prevLiveAbsPos = new Vector(Double.NaN, Double.NaN, Double.NaN);
+        this.prevLiveYaw = this.prevLivePitch = Float.NaN;
         this.syncVel = 0.0;
         this.posX = this.posY = this.posZ = 0.0;
         this.posSet = false;
@@ -388,6 +393,9 @@ public class VirtualEntity {
 
     public void addViewerWithoutSpawning(AttachmentViewer viewer) {
         if (!this.viewers.contains(viewer)) {
+            if (this.viewers.isEmpty()) {
+                AttachmentEntityIndex.register(this.entityId, this.manager);
+            }
             this.viewers.add(viewer);
         }
     }
@@ -415,6 +423,9 @@ public class VirtualEntity {
         if (this.viewers.contains(viewer)) {
             this.destroy(viewer);
         }
+        if (this.viewers.isEmpty()) {
+            AttachmentEntityIndex.register(this.entityId, this.manager);
+        }
         this.viewers.add(viewer);
 
         this.sendSpawnPackets(viewer, motion);
@@ -540,20 +551,40 @@ public class VirtualEntity {
             broadcast(PacketPlayOutEntityTeleportHandle.createNew(this.entityId,
                     this.liveAbsPos.getX(), this.liveAbsPos.getY(), this.liveAbsPos.getZ(),
                     this.liveYaw, this.livePitch, false));
+            VirtualEntitySyncStatistics.sent(this.viewers.size());
             syncPositionSilent();
             refreshHeadRotation();
             return;
         }
 
         boolean moved, rotated, rotatedNow;
+        boolean savedMove = false, savedRotation = false;
 
         // Check that the position changed meaningfully (can be represented in protocol)
+        // Changes below the configured threshold are not sent until they add up, or until
+        // the entity stops moving. Then the final position is sent so no offset remains.
         // TODO: make this a constant somewhere
         moved = (abs_delta >= (1.0 / 4096.0));
+        if (moved && abs_delta < TCConfig.attachmentSyncPositionThreshold && !this.liveAbsPos.equals(this.prevLiveAbsPos)) {
+            moved = false;
+            savedMove = true;
+        }
+        MathUtil.setVector(this.prevLiveAbsPos, this.liveAbsPos);
 
         // Check for changes in rotation
+        // Like position, changes below the threshold are sent once the rotation stops changing
         rotatedNow = EntityTrackerEntryStateHandle.hasProtocolRotationChanged(this.liveYaw, this.syncYaw) ||
                      EntityTrackerEntryStateHandle.hasProtocolRotationChanged(this.livePitch, this.syncPitch);
+        if (rotatedNow && TCConfig.attachmentSyncRotationThreshold > 0.0 &&
+                (this.liveYaw != this.prevLiveYaw || this.livePitch != this.prevLivePitch) &&
+                MathUtil.getAngleDifference(this.liveYaw, this.syncYaw) < TCConfig.attachmentSyncRotationThreshold &&
+                MathUtil.getAngleDifference(this.livePitch, this.syncPitch) < TCConfig.attachmentSyncRotationThreshold
+        ) {
+            rotatedNow = false;
+            savedRotation = true;
+        }
+        this.prevLiveYaw = this.liveYaw;
+        this.prevLivePitch = this.livePitch;
 
         // Remember the rotation change for X more ticks. This prevents partial rotation on the client.
         rotated = false;
@@ -565,6 +596,16 @@ public class VirtualEntity {
             rotated = true;
         }
 
+        // Only count changes as saved when no packet is sent at all
+        if (!moved && !rotated) {
+            if (savedMove) {
+                VirtualEntitySyncStatistics.savedMove(this.viewers.size());
+            }
+            if (savedRotation) {
+                VirtualEntitySyncStatistics.savedRotation(this.viewers.size());
+            }
+        }
+
         // Refresh head rotation first
         if (rotatedNow) {
             this.refreshHeadRotation();
@@ -591,6 +632,7 @@ public class VirtualEntity {
             this.syncPitch = packet.getPitch();
             MathUtil.addToVector(this.syncAbsPos, packet.getDeltaX(), packet.getDeltaY(), packet.getDeltaZ());
             broadcast(packet);
+            VirtualEntitySyncStatistics.sent(this.viewers.size());
         } else if (moved) {
             // Only position changed
             PacketPlayOutRelEntityMoveHandle packet = PacketPlayOutRelEntityMoveHandle.createNew(
@@ -600,6 +642,7 @@ public class VirtualEntity {
 
             MathUtil.addToVector(this.syncAbsPos, packet.getDeltaX(), packet.getDeltaY(), packet.getDeltaZ());
             broadcast(packet);
+            VirtualEntitySyncStatistics.sent(this.viewers.size());
         } else if (rotated) {
             // Only rotation changed
             for (AttachmentViewer viewer : this.viewers) {
@@ -630,6 +673,7 @@ public class VirtualEntity {
                     this.syncPitch = packet.getPitch();
                 }
             }
+            VirtualEntitySyncStatistics.sent(this.viewers.size());
         }
     }
 
@@ -672,6 +716,7 @@ public class VirtualEntity {
             viewer.getVehicleMountController().remove(this.entityId);
         }
         this.viewers.clear();
+        AttachmentEntityIndex.unregister(this.entityId);
     }
 
     @Deprecated
@@ -680,7 +725,9 @@ public class VirtualEntity {
     }
 
     public void destroy(AttachmentViewer viewer) {
-        this.viewers.remove(viewer);
+        if (this.viewers.remove(viewer) && this.viewers.isEmpty()) {
+            AttachmentEntityIndex.unregister(this.entityId);
+        }
         this.sendDestroyPackets(viewer);
         viewer.getVehicleMountController().remove(this.entityId);
     }
@@ -0,0 +1,73 @@
+package com.bergerkiller.bukkit.tc.attachments;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * Counts the movement packets sent by {@link VirtualEntity#syncPosition(boolean)}, and
+ * the packets that were not sent because the change in position or rotation was
+ * below the configured thresholds. Shown using /train debug attachmentsync.
+ */
+public final class VirtualEntitySyncStatistics {
+    private static final AtomicLong packetsSent = new AtomicLong();
+    private static final AtomicLong movePacketsSaved = new AtomicLong();
+    private static final AtomicLong rotationPacketsSaved = new AtomicLong();
+    private static int startTicks = CommonUtil.getServerTicks();
+
+    private VirtualEntitySyncStatistics() {
+    }
+
+    static void sent(int numPackets) {
+        packetsSent.addAndGet(numPackets);
+    }
+
+    static void savedMove(int numPackets) {
+        movePacketsSaved.addAndGet(numPackets);
+    }
+
+    static void savedRotation(int numPackets) {
+        rotationPacketsSaved.addAndGet(numPackets);
+    }
+
+    /**
+     * Takes the statistics counted since the previous time this method was called,
+     * and starts counting again from zero.
+     *
+     * @return statistics
+     */
+    public static synchronized Result reset() {
+        int ticks = CommonUtil.getServerTicks();
+        Result result = new Result(Math.max(1, ticks - startTicks),
+                packetsSent.getAndSet(0L),
+                movePacketsSaved.getAndSet(0L),
+                rotationPacketsSaved.getAndSet(0L));
+        startTicks = ticks;
+        return result;
+    }
+
+    /**
+     * Counted statistics
+     */
+    public static final class Result {
+        /** Number of ticks during which was counted */
+        public final int ticks;
+        /** Number of movement packets sent to players */
+        public final long packetsSent;
+        /** Number of movement packets not sent, because the position barely changed */
+        public final long movePacketsSaved;
+        /** Number of rotation packets not sent, because the rotation barely changed */
+        public final long rotationPacketsSaved;
+
+        private Result(int ticks, long packetsSent, long movePacketsSaved, long rotationPacketsSaved) {
+            this.ticks = ticks;
+            this.packetsSent = packetsSent;
+            this.movePacketsSaved = movePacketsSaved;
+            this.rotationPacketsSaved = rotationPacketsSaved;
+        }
+
+        public double perTick(long count) {
+            return (double) count / (double) this.ticks;
+        }
+    }
+}
@@ -111,6 +111,20 @@ public class AttachmentInternalState {
      */
     private UpdateTask transformUpdateTask;
 
+    /**
+     * Level of detail: the attachment and its children are only shown to viewers
+     * at least this distance away. Used for low-detail placeholders.
+     * Loaded from the 'lod.minDistance' configuration.
+     */
+    public double lodMinDistance = 0.0;
+
+    /**
+     * Level of detail: the attachment and its children are hidden for viewers this
+     * distance or further away. Used for high-detail parts of a model.
+     * Loaded from the 'lod.maxDistance' configuration.
+     */
+    public double lodMaxDistance = Double.MAX_VALUE;
+
     /**
      * Previous transform
      */
@@ -147,6 +161,14 @@ public class AttachmentInternalState {
         // Position
         this.position.load(managerType, attachmentType, config.getNode("position"));
 
+        // Level of detail
+        if (config.isNode("lod")) {
+            ConfigurationNode lod = config.getNode("lod");
+            double maxDistance = lod.get("maxDistance", 0.0);
+            this.lodMinDistance = Math.max(0.0, lod.get("minDistance", 0.0));
+            this.lodMaxDistance = (maxDistance > 0.0) ? maxDistance : Double.MAX_VALUE;
+        }
+
         // Animation list
         if (config.isNode("animations")) {
             ConfigurationNode animations = config.getNode("animations");
@@ -171,6 +193,28 @@ public class AttachmentInternalState {
         this.last_transform = null;
         this.curr_transform = null;
         this.transformUpdateTask = null;
+        this.lodMinDistance = 0.0;
+        this.lodMaxDistance = Double.MAX_VALUE;
+    }
+
+    /**
+     * Gets whether a level of detail distance range was configured for the attachment
+     *
+     * @return True if a level of detail is configured
+     */
+    public boolean hasLOD() {
+        return this.lodMinDistance > 0.0 || this.lodMaxDistance != Double.MAX_VALUE;
+    }
+
+    /**
+     * Gets whether the attachment is shown to a viewer at a distance, according to the
+     * configured level of detail. Does not check the level of detail of parent attachments.
+     *
+     * @param distance Distance between the viewer and the attachments
+     * @return True if within the configured level of detail distance range
+     */
+    public boolean isInLODRange(double distance) {
+        return distance >= this.lodMinDistance && distance < this.lodMaxDistance;
     }
 
     /**
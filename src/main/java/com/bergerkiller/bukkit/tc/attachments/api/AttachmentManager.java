@@ -49,6 +49,21 @@ public interface AttachmentManager {
      */
     AttachmentViewer asAttachmentViewer(Player player);
 
+    /**
+     * Gets the distance between a viewer and the attachments, which selects the level of detail
+     * shown to the viewer. Attachments with a configured level of detail distance range are only
+     * made visible to viewers within that range. The distance returned must only change while
+     * the manager updates the visibility of the attachments accordingly.<br>
+     * <br>
+     * By default returns 0, showing all attachments without a minimum distance.
+     *
+     * @param viewer Player viewer
+     * @return level of detail distance
+     */
+    default double getLODDistance(Player viewer) {
+        return 0.0;
+    }
+
     /**
      * Gets the {@link AttachmentTypeRegistry} used to find and create new attachments from
      * configuration.
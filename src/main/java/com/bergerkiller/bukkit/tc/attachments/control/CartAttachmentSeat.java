@@ -412,6 +412,7 @@ public class CartAttachmentSeat extends CartAttachment {
     public void onDetached() {
         super.onDetached();
         this.debug.stopEyePreviews();
+        this.seated.onDetached();
         this.setEntity(null);
         this._displayedItemEntity = null;
         this._displayedItemPosition = null;
@@ -12,6 +12,7 @@ import com.bergerkiller.bukkit.common.math.Matrix4x4;
 import com.bergerkiller.bukkit.common.math.Quaternion;
 import com.bergerkiller.bukkit.common.utils.MathUtil;
 import com.bergerkiller.bukkit.common.wrappers.DataWatcher;
+import com.bergerkiller.bukkit.tc.attachments.AttachmentEntityIndex;
 import com.bergerkiller.bukkit.tc.attachments.FakePlayerSpawner;
 import com.bergerkiller.bukkit.tc.attachments.VirtualEntity;
 import com.bergerkiller.bukkit.tc.attachments.VirtualEntity.SyncMode;
@@ -533,6 +534,13 @@ public abstract class SeatedEntity {
      */
     public abstract boolean containsEntityId(int entityId);
 
+    /**
+     * Called when the seat is detached. Un-registers the entity ids of fake entities
+     * used for display from the {@link AttachmentEntityIndex}.
+     */
+    public void onDetached() {
+    }
+
     public static enum DisplayMode {
         DEFAULT(SeatedEntityNormal::new), /* Player is displayed either upright or upside-down in a cart */
         ELYTRA_SIT(SeatedEntityElytra::new), /* Player is in sitting pose while flying in an elytra */
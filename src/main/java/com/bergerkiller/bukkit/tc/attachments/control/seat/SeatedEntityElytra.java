@@ -10,6 +10,7 @@ import com.bergerkiller.bukkit.common.math.Matrix4x4;
 import com.bergerkiller.bukkit.common.utils.EntityUtil;
 import com.bergerkiller.bukkit.common.utils.MathUtil;
 import com.bergerkiller.bukkit.common.wrappers.DataWatcher;
+import com.bergerkiller.bukkit.tc.attachments.AttachmentEntityIndex;
 import com.bergerkiller.bukkit.tc.attachments.FakePlayerSpawner;
 import com.bergerkiller.bukkit.tc.attachments.VirtualEntity;
 import com.bergerkiller.bukkit.tc.attachments.api.AttachmentViewer;
@@ -98,6 +99,8 @@ class SeatedEntityElytra extends SeatedEntity {
         if (this._fakeEntityIdFlipped == -1) {
             this._fakeEntityIdFlipped = EntityUtil.getUniqueEntityId();
         }
+        AttachmentEntityIndex.register(this._fakeEntityId, seat.getManager());
+        AttachmentEntityIndex.register(this._fakeEntityIdFlipped, seat.getManager());
 
         // Compute the fake player position and orientation
         FakePlayerSpawner.FakePlayerPosition fpp = FakePlayerSpawner.FakePlayerPosition.create(
@@ -204,6 +207,12 @@ class SeatedEntityElytra extends SeatedEntity {
         return false;
     }
 
+    @Override
+    public void onDetached() {
+        AttachmentEntityIndex.unregister(this._fakeEntityId);
+        AttachmentEntityIndex.unregister(this._fakeEntityIdFlipped);
+    }
+
     @Override
     public void updatePosition(Matrix4x4 transform) {
         if (isDisplayed()) {
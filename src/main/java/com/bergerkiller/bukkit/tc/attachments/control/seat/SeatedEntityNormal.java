@@ -13,6 +13,7 @@ import com.bergerkiller.bukkit.common.utils.EntityUtil;
 import com.bergerkiller.bukkit.common.utils.MathUtil;
 import com.bergerkiller.bukkit.common.wrappers.DataWatcher;
 import com.bergerkiller.bukkit.tc.TCConfig;
+import com.bergerkiller.bukkit.tc.attachments.AttachmentEntityIndex;
 import com.bergerkiller.bukkit.tc.attachments.FakePlayerSpawner;
 import com.bergerkiller.bukkit.tc.attachments.VirtualEntity;
 import com.bergerkiller.bukkit.tc.attachments.api.AttachmentViewer;
@@ -83,6 +84,7 @@ class SeatedEntityNormal extends SeatedEntity {
         if (this._fakeEntityId == -1) {
             this._fakeEntityId = EntityUtil.getUniqueEntityId();
         }
+        AttachmentEntityIndex.register(this._fakeEntityId, seat.getManager());
 
         // Position of the fake player
         Vector fpp_pos = seat.getTransform().toVector();
@@ -324,6 +326,11 @@ class SeatedEntityNormal extends SeatedEntity {
         return false;
     }
 
+    @Override
+    public void onDetached() {
+        AttachmentEntityIndex.unregister(this._fakeEntityId);
+    }
+
     @Override
     public void updatePosition(Matrix4x4 transform) {
         if (isDisplayed()) {
@@ -6,6 +6,7 @@ import org.bukkit.util.Vector;
 import com.bergerkiller.bukkit.common.controller.VehicleMountController;
 import com.bergerkiller.bukkit.common.math.Matrix4x4;
 import com.bergerkiller.bukkit.common.utils.EntityUtil;
+import com.bergerkiller.bukkit.tc.attachments.AttachmentEntityIndex;
 import com.bergerkiller.bukkit.tc.attachments.FakePlayerSpawner;
 import com.bergerkiller.bukkit.tc.attachments.VirtualEntity;
 import com.bergerkiller.bukkit.tc.attachments.api.AttachmentViewer;
@@ -49,6 +50,7 @@ class SeatedEntityStanding extends SeatedEntityNormal {
         if (this._fakeEntityId == -1) {
             this._fakeEntityId = EntityUtil.getUniqueEntityId();
         }
+        AttachmentEntityIndex.register(this._fakeEntityId, seat.getManager());
 
         // Position of the fake player
         Vector fpp_pos = seat.getTransform().toVector();
@@ -1,6 +1,7 @@
 package com.bergerkiller.bukkit.tc.attachments.helper;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
@@ -8,6 +9,7 @@ import java.util.function.Supplier;
 
 import com.bergerkiller.bukkit.common.math.Matrix4x4;
 import com.bergerkiller.bukkit.tc.attachments.api.Attachment;
+import com.bergerkiller.bukkit.tc.attachments.api.AttachmentManager;
 
 /**
  * Performs the per-tick update operations on trees of attachments.
@@ -78,6 +80,16 @@ public abstract class AttachmentUpdateTransformHelper {
      */
     public abstract void finish();
 
+    /**
+     * Finishes processing the tasks previously started using {@link #start(Attachment, Matrix4x4)}
+     * for the attachments of a single attachment manager. Tasks of other managers may continue
+     * processing in the background, until they are finished as well. {@link #finish()} must
+     * still be called afterwards.
+     *
+     * @param manager Attachment manager whose attachments to finish processing
+     */
+    public abstract void finish(AttachmentManager manager);
+
     private static final class AttachmentUpdateHelperSingleThreaded extends AttachmentUpdateTransformHelper {
         private final ArrayList<Attachment> pendingUpdates = new ArrayList<>();
 
@@ -117,14 +129,22 @@ public abstract class AttachmentUpdateTransformHelper {
                 activeChangeHandler.sync();
             }
         }
+
+        @Override
+        public void finish(AttachmentManager manager) {
+            // Everything is processed on this thread anyway
+            finish();
+        }
     }
 
     private static final class AttachmentUpdateHelperMultiThreaded extends AttachmentUpdateTransformHelper {
         private final List<ForkJoinTask<Void>> pendingTasks;
+        private final IdentityHashMap<AttachmentManager, ForkJoinTask<Void>> pendingTasksByManager;
         private final ForkJoinPool pool;
 
         public AttachmentUpdateHelperMultiThreaded(int parallelism) {
             pendingTasks = new ArrayList<ForkJoinTask<Void>>();
+            pendingTasksByManager = new IdentityHashMap<AttachmentManager, ForkJoinTask<Void>>();
             pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false);
         }
 
@@ -138,9 +158,19 @@ public abstract class AttachmentUpdateTransformHelper {
 
             // Schedule it
             pendingTasks.add(task);
+            pendingTasksByManager.put(attachment.getManager(), task);
             pool.execute(task);
         }
 
+        @Override
+        public void finish(AttachmentManager manager) {
+            ForkJoinTask<Void> task = pendingTasksByManager.remove(manager);
+            if (task != null) {
+                task.join();
+                activeChangeHandler.sync(manager);
+            }
+        }
+
         @Override
         public void finish() {
             try {
@@ -150,6 +180,7 @@ public abstract class AttachmentUpdateTransformHelper {
                 }
             } finally {
                 pendingTasks.clear();
+                pendingTasksByManager.clear();
                 activeChangeHandler.sync();
             }
         }
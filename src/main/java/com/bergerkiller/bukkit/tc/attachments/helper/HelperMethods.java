@@ -14,6 +14,8 @@ import com.bergerkiller.bukkit.tc.TCConfig;
 import com.bergerkiller.bukkit.tc.attachments.animation.Animation;
 import com.bergerkiller.bukkit.tc.attachments.animation.AnimationOptions;
 import com.bergerkiller.bukkit.tc.attachments.api.Attachment;
+import com.bergerkiller.bukkit.tc.attachments.api.AttachmentInternalState;
+import com.bergerkiller.bukkit.tc.attachments.api.AttachmentManager;
 import com.bergerkiller.bukkit.tc.attachments.api.AttachmentViewer;
 
 /**
@@ -58,9 +60,16 @@ public class HelperMethods {
      * @param viewer Attachment Viewer to hide it from
      */
     public static void makeHiddenRecursive(Attachment root, boolean active, AttachmentViewer viewer) {
+        makeHiddenRecursive(root, active, viewer, getLODDistance(root, viewer.getPlayer()));
+    }
+
+    private static void makeHiddenRecursive(Attachment root, boolean active, AttachmentViewer viewer, double lodDistance) {
+        if (!root.getInternalState().isInLODRange(lodDistance)) {
+            return; // Not visible to this viewer at this level of detail
+        }
         active &= root.isActive();
         for (Attachment child : root.getChildren()) {
-            makeHiddenRecursive(child, active, viewer);
+            makeHiddenRecursive(child, active, viewer, lodDistance);
         }
         if (active || !root.isHiddenWhenInactive()) {
             root.makeHidden(viewer);
@@ -76,15 +85,72 @@ public class HelperMethods {
      * @param viewer Attachment Viewer to make it visible for
      */
     public static void makeVisibleRecursive(Attachment root, boolean active, AttachmentViewer viewer) {
+        makeVisibleRecursive(root, active, viewer, getLODDistance(root, viewer.getPlayer()));
+    }
+
+    private static void makeVisibleRecursive(Attachment root, boolean active, AttachmentViewer viewer, double lodDistance) {
+        if (!root.getInternalState().isInLODRange(lodDistance)) {
+            return; // Not visible to this viewer at this level of detail
+        }
         active &= root.isActive();
         if (active || !root.isHiddenWhenInactive()) {
             root.makeVisible(viewer);
         }
         for (Attachment child : root.getChildren()) {
-            makeVisibleRecursive(child, active, viewer);
+            makeVisibleRecursive(child, active, viewer, lodDistance);
         }
     }
 
+    /**
+     * Makes an attachment and all child attachments visible or hidden for a viewer, after
+     * the level of detail distance of the viewer changed. Only the attachments whose
+     * configured level of detail distance range was entered or left are changed.
+     *
+     * @param root attachment to update, only root attachment is permitted
+     * @param active whether the attachment and parent attachments are active
+     * @param viewer Attachment Viewer whose level of detail distance changed
+     * @param oldDistance Previous level of detail distance, at which attachments were made visible
+     * @param newDistance New level of detail distance
+     * @see com.bergerkiller.bukkit.tc.attachments.api.AttachmentManager#getLODDistance(Player)
+     */
+    public static void updateLODRecursive(Attachment root, boolean active, AttachmentViewer viewer, double oldDistance, double newDistance) {
+        AttachmentInternalState state = root.getInternalState();
+        boolean wasInRange = state.isInLODRange(oldDistance);
+        boolean isInRange = state.isInLODRange(newDistance);
+        if (wasInRange && isInRange) {
+            active &= root.isActive();
+            for (Attachment child : root.getChildren()) {
+                updateLODRecursive(child, active, viewer, oldDistance, newDistance);
+            }
+        } else if (wasInRange) {
+            makeHiddenRecursive(root, active, viewer, oldDistance);
+        } else if (isInRange) {
+            makeVisibleRecursive(root, active, viewer, newDistance);
+        }
+    }
+
+    /**
+     * Gets whether an attachment is shown to a viewer at a level of detail distance.
+     * The configured level of detail of the attachment and all its parents are checked.
+     *
+     * @param attachment Attachment
+     * @param distance Level of detail distance of the viewer
+     * @return True if shown
+     */
+    public static boolean isInLODRange(Attachment attachment, double distance) {
+        do {
+            if (!attachment.getInternalState().isInLODRange(distance)) {
+                return false;
+            }
+        } while ((attachment = attachment.getParent()) != null);
+        return true;
+    }
+
+    private static double getLODDistance(Attachment attachment, Player viewer) {
+        AttachmentManager manager = attachment.getManager();
+        return (manager == null) ? 0.0 : manager.getLODDistance(viewer);
+    }
+
     /**
      * Gets whether a parent higher up the tree is inactive, concluding therefore
      * that the attachment itself can not be active.
@@ -117,11 +183,15 @@ public class HelperMethods {
         if (attachment.isHiddenWhenInactive()) {
             if (active) {
                 for (Player viewer : viewers) {
-                    attachment.makeVisible(viewer);
+                    if (isInLODRange(attachment, getLODDistance(attachment, viewer))) {
+                        attachment.makeVisible(viewer);
+                    }
                 }
             } else {
                 for (Player viewer : viewers) {
-                    attachment.makeHidden(viewer);
+                    if (isInLODRange(attachment, getLODDistance(attachment, viewer))) {
+                        attachment.makeHidden(viewer);
+                    }
                 }
             }
             attachment.getInternalState().last_transform = null;
@@ -1,9 +1,11 @@
 package com.bergerkiller.bukkit.tc.attachments.helper;
 
+import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.bergerkiller.bukkit.tc.attachments.api.Attachment;
+import com.bergerkiller.bukkit.tc.attachments.api.AttachmentManager;
 
 /**
  * Queues active changes so they can be processed instantly later
@@ -29,6 +31,23 @@ public class QueuedActiveChangeHandler implements ActiveChangeHandler {
         }
     }
 
+    /**
+     * Processes the previously queued active changes of the attachments of a
+     * single attachment manager. The changes of other managers stay queued.
+     *
+     * @param manager Attachment manager whose attachment changes to process
+     */
+    public void sync(AttachmentManager manager) {
+        Iterator<PendingChange> iter = queue.iterator();
+        while (iter.hasNext()) {
+            PendingChange pending = iter.next();
+            if (pending.attachment.getManager() == manager) {
+                iter.remove();
+                pending.attachment.setActive(pending.active);
+            }
+        }
+    }
+
     private static final class PendingChange {
         public final Attachment attachment;
         public final boolean active;
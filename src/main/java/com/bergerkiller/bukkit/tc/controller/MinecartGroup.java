@@ -1395,6 +1395,7 @@ public class MinecartGroup extends MinecartGroupStore implements IPropertiesHold
     @Override
     public void onPropertiesChanged() {
         this.getSignTracker().update();
+        this.obstacleTracker.forgetTrackAhead();
         for (MinecartMember<?> member : this.toArray()) {
             member.onPropertiesChanged();
         }
@@ -25,7 +25,13 @@ public class MinecartGroupStore extends ArrayList<MinecartMember<?>> {
 
     /**
      * Called onPhysics for all Minecart entities who didn't get ticked in the previous run.
-     * This is a sort of hack against the bugged issues on some server implementations.
+     * This is a sort of hack against the bugged issues on some server implementations.<br>
+     * <br>
+     * Trains are ticked one after the other on the main thread. The movement of a train
+     * can not be split off from the rest of its physics: every update step looks up rails
+     * in the {@link com.bergerkiller.bukkit.tc.rails.RailLookup RailLookup} cache, moves the
+     * entities in the world and fires block change and sign events in between. None of that
+     * is safe to do from other threads, not even for trains far apart from each other.
      *
      * @param plugin Main TrainCarts plugin instance initiating this
      */
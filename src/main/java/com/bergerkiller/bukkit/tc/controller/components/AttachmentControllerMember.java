@@ -35,6 +35,7 @@ import com.bergerkiller.bukkit.tc.attachments.config.AttachmentModelOwner;
 import com.bergerkiller.bukkit.tc.attachments.control.CartAttachmentSeat;
 import com.bergerkiller.bukkit.tc.attachments.helper.AttachmentUpdateTransformHelper;
 import com.bergerkiller.bukkit.tc.attachments.helper.HelperMethods;
+import com.bergerkiller.bukkit.tc.controller.MinecartGroup;
 import com.bergerkiller.bukkit.tc.controller.MinecartMember;
 import com.bergerkiller.bukkit.tc.events.seat.MemberBeforeSeatChangeEvent;
 import com.bergerkiller.bukkit.tc.events.seat.MemberBeforeSeatEnterEvent;
@@ -54,12 +55,21 @@ import com.bergerkiller.generated.net.minecraft.world.entity.EntityHandle;
  * controllers when this configuration changes.
  */
 public class AttachmentControllerMember implements AttachmentModelOwner, AttachmentManager {
+    /** Number of ticks between checking the distance of viewers, for the level of detail and sync interval */
+    private static final int VIEWER_DISTANCE_UPDATE_INTERVAL = 5;
+    /** How much the distance of a viewer must change before a different level of detail is shown */
+    private static final double LOD_HYSTERESIS = 2.0;
     private final MinecartMember<?> member;
     private Attachment rootAttachment;
     private List<CartAttachmentSeat> seatAttachments = Collections.emptyList();
     private List<Attachment> flattenedAttachments = Collections.emptyList();
     private Map<Entity, SeatHint> seatHints = new HashMap<Entity, SeatHint>();
     private final Map<Player, AttachmentViewer> viewers = new IdentityHashMap<>();
+    private final Map<Player, Double> lodDistances = new IdentityHashMap<>();
+    private boolean hasLOD = false;
+    private int viewerDistanceUpdateTicks = 0;
+    private double nearestViewerDistance = 0.0;
+    private int lastMovementSyncTicks = 0;
     protected final ToggledState networkInvalid = new ToggledState();
     private boolean attached = false;
     private boolean hidden = false;
@@ -132,6 +142,7 @@ public class AttachmentControllerMember implements AttachmentModelOwner, Attachm
             this.rootAttachment = null;
             this.flattenedAttachments = Collections.emptyList();
             this.seatAttachments = Collections.emptyList();
+            this.hasLOD = false;
         }
     }
 
@@ -511,6 +522,7 @@ public class AttachmentControllerMember implements AttachmentModelOwner, Attachm
     public synchronized void makeVisible(Player viewer) {
         AttachmentViewer attachmentViewer = asAttachmentViewer(viewer);
         viewers.put(viewer, attachmentViewer);
+        lodDistances.put(viewer, computeLODDistance(viewer));
         if (!this.hidden) {
             HelperMethods.makeVisibleRecursive(this.getRootAttachment(), true, attachmentViewer);
         }
@@ -528,6 +540,7 @@ public class AttachmentControllerMember implements AttachmentModelOwner, Attachm
         if (!this.hidden && this.rootAttachment != null) {
             HelperMethods.makeHiddenRecursive(this.rootAttachment, true, attachmentViewer);
         }
+        lodDistances.remove(viewer);
     }
 
     public synchronized void makeHiddenForAll() {
@@ -536,6 +549,87 @@ public class AttachmentControllerMember implements AttachmentModelOwner, Attachm
             iter.remove();
             HelperMethods.makeHiddenRecursive(this.rootAttachment, true, attachmentViewer);
         }
+        this.lodDistances.clear();
+    }
+
+    /**
+     * Gets the distance between a viewer and this cart, at which the viewer was last shown
+     * the level of detail of the attachments. Is updated every few ticks when the viewer
+     * moved closer or further away.
+     *
+     * @param viewer Player viewer
+     * @return level of detail distance
+     */
+    @Override
+    public synchronized double getLODDistance(Player viewer) {
+        Double distance = this.lodDistances.get(viewer);
+        return (distance != null) ? distance.doubleValue() : computeLODDistance(viewer);
+    }
+
+    private double computeLODDistance(Player viewer) {
+        return this.member.getEntity().loc.distance(viewer.getLocation());
+    }
+
+    /**
+     * Updates the distance to the nearest viewer, and shows a different level of detail
+     * of the attachments to viewers whose distance to this cart changed enough since
+     * the level of detail was last updated
+     */
+    private synchronized void updateViewerDistances() {
+        if (this.hidden || this.rootAttachment == null) {
+            return;
+        }
+        double nearestDistance = Double.MAX_VALUE;
+        for (AttachmentViewer viewer : this.viewers.values()) {
+            Player player = viewer.getPlayer();
+            double newDistance = this.computeLODDistance(player);
+            nearestDistance = Math.min(nearestDistance, newDistance);
+            if (this.hasLOD) {
+                double oldDistance = this.getLODDistance(player);
+                if (Math.abs(newDistance - oldDistance) >= LOD_HYSTERESIS) {
+                    this.lodDistances.put(player, newDistance);
+                    HelperMethods.updateLODRecursive(this.rootAttachment, true, viewer, oldDistance, newDistance);
+                }
+            }
+        }
+        this.nearestViewerDistance = nearestDistance;
+    }
+
+    /**
+     * Gets the number of ticks between sending the relative movement of the attachments
+     * to viewers. Carts that move fast near a viewer, or that have a player passenger, are
+     * updated every tick. Carts that move slowly, or that are far away from all viewers,
+     * are updated less often, up to the maximum sync interval configured for the train.
+     * Clients interpolate the movement in between.
+     *
+     * @return sync interval in ticks
+     */
+    public int getSyncInterval() {
+        MinecartGroup group = this.member.getGroup();
+        if (group == null) {
+            return 1;
+        }
+        int maxInterval = group.getProperties().getMaxSyncInterval();
+        if (maxInterval <= 1 || this.member.getEntity().hasPlayerPassenger()) {
+            return 1;
+        }
+        if (this.member.getRealSpeed() < TCConfig.attachmentSyncSlowSpeed) {
+            return maxInterval;
+        }
+        if (TCConfig.attachmentSyncFullRateDistance <= 0.0) {
+            return 1;
+        }
+        double distance = Math.min(this.nearestViewerDistance, maxInterval * TCConfig.attachmentSyncFullRateDistance);
+        return Math.min(maxInterval, 1 + (int) (distance / TCConfig.attachmentSyncFullRateDistance));
+    }
+
+    /**
+     * Gets the distance between this cart and the nearest viewer, as last checked
+     *
+     * @return nearest viewer distance
+     */
+    public double getNearestViewerDistance() {
+        return this.nearestViewerDistance;
     }
 
     /**
@@ -691,6 +785,13 @@ public class AttachmentControllerMember implements AttachmentModelOwner, Attachm
         }
 
         this.flattenedAttachments.forEach(Attachment::onTick);
+
+        // Viewers that moved closer or further away might see a different level of detail,
+        // and change how often movement is sent
+        if (++this.viewerDistanceUpdateTicks >= VIEWER_DISTANCE_UPDATE_INTERVAL) {
+            this.viewerDistanceUpdateTicks = 0;
+            this.updateViewerDistances();
+        }
     }
 
     @SuppressWarnings("deprecation")
@@ -713,7 +814,13 @@ public class AttachmentControllerMember implements AttachmentModelOwner, Attachm
         this.member.getEntity().setVelocityChanged(false);
 
         // Perform actual movement, which sends movement update packets
+        // Relative movement is sent less often for carts that move slowly or are far away
         if (this.rootAttachment != null) {
+            int ticks = CommonUtil.getServerTicks();
+            if (!absolute && (ticks - this.lastMovementSyncTicks) < this.getSyncInterval()) {
+                return;
+            }
+            this.lastMovementSyncTicks = ticks;
             this.flattenedAttachments.forEach(a -> a.onMove(absolute));
         }
     }
@@ -784,6 +891,7 @@ public class AttachmentControllerMember implements AttachmentModelOwner, Attachm
             detachRootAttachment();
         } else {
             this.viewers.clear(); // Silent
+            this.lodDistances.clear();
         }
 
         // Attach new attachments - after this viewers see everything but passengers are not 'in'
@@ -794,11 +902,13 @@ public class AttachmentControllerMember implements AttachmentModelOwner, Attachm
                 .filter(attachment -> attachment instanceof CartAttachmentSeat)
                 .map(attachment -> (CartAttachmentSeat) attachment)
                 .collect(StreamUtil.toUnmodifiableList());
+        this.hasLOD = this.flattenedAttachments.stream().anyMatch(a -> a.getInternalState().hasLOD());
         this.member.getTrainCarts().getTrainUpdateController().computeAttachmentTransform(
                 this.rootAttachment, this.getLiveTransform());
 
         // Re-show the attachments and repopulate the viewers set
         for (AttachmentViewer viewer : originalViewers) {
+            this.lodDistances.put(viewer.getPlayer(), computeLODDistance(viewer.getPlayer()));
             HelperMethods.makeVisibleRecursive(this.rootAttachment, true, viewer);
             this.viewers.put(viewer.getPlayer(), viewer);
         }
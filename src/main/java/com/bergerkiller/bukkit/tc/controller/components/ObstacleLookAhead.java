@@ -0,0 +1,292 @@
+package com.bergerkiller.bukkit.tc.controller.components;
+
+import java.util.ArrayList;
+
+import org.bukkit.World;
+
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.tc.controller.MinecartMember;
+import com.bergerkiller.bukkit.tc.rails.RailLookup;
+import com.bergerkiller.bukkit.tc.rails.TrackChangeLog;
+import com.bergerkiller.bukkit.tc.signactions.mutex.MutexZoneCacheWorld;
+import com.bergerkiller.bukkit.tc.utils.TrackWalkingPoint;
+
+/**
+ * Remembers the track walked ahead of a train by the {@link ObstacleTracker}, so that
+ * it does not have to be walked again every tick. For every rail it stores the rail state,
+ * the distance and the speed limit predicted there. Mutex zones are looked up every tick.<br>
+ * <br>
+ * Only the rail the head of the train is on is walked again every tick. When the train moves
+ * forwards, the rails it passed are trimmed off the front. When more distance is needed,
+ * more rails are walked at the end. The track is walked again fully when the layout of the
+ * track or signs change near the remembered track (see {@link RailLookup#notifyTrackChanged(org.bukkit.block.Block)}),
+ * when the properties of the train change, or when the remembered track is older than
+ * {@link #MAX_AGE_TICKS}. The latter catches any other changes that alter the predicted path.
+ * Changes elsewhere on the world keep the remembered track.<br>
+ * <br>
+ * Other trains on the track are not remembered, these must be checked every tick.
+ */
+class ObstacleLookAhead {
+    /** Number of ticks after which the track is walked again fully */
+    private static final int MAX_AGE_TICKS = 20;
+    /** Distance in blocks around the remembered rails in which changes, like of signs, alter the track */
+    private static final int CHANGE_MARGIN = 2;
+    private final ArrayList<Step> steps = new ArrayList<Step>();
+    private TrackWalkingPoint tail = null; // Null if the end of the track was reached
+    private double tailOffset = 0.0;
+    private boolean tailLoopFilter = false;
+    private boolean predicted = false;
+    private int trackChangeCounter = 0;
+    private int createdTicks = 0;
+    // Area of the remembered rails, to check for track changes in
+    private World world = null;
+    private TrackChangeLog trackChanges = null;
+    private long trackChangesCounter = 0;
+    private int minX, minZ, maxX, maxZ;
+
+    /**
+     * Forgets all the track that was walked
+     */
+    public void clear() {
+        this.steps.clear();
+        this.tail = null;
+    }
+
+    /**
+     * Starts walking the track ahead of a train
+     *
+     * @param startState The rail state of the head of the train
+     * @param predictedMember Member whose predicted path to follow, null to not follow a predicted path
+     * @return cursor to walk the track with. {@link Cursor#next()} must be called first.
+     */
+    public Cursor walk(RailState startState, MinecartMember<?> predictedMember) {
+        TrackWalkingPoint walker = new TrackWalkingPoint(startState);
+        if (predictedMember != null) {
+            walker.setFollowPredictedPath(predictedMember);
+        }
+        return new Cursor(walker, predictedMember != null);
+    }
+
+    /**
+     * Called after the rail the head of the train is on was walked past. Finds the rail the
+     * walker is now on in the remembered track, and trims off the rails before it. If it
+     * cannot be found, the remembered track is discarded and the walker is used to walk
+     * the track from here on.
+     *
+     * @param walker Walker positioned at the start of the rail after the head of the train
+     * @param isPredicted Whether the walker follows the predicted path
+     * @return distance to add to the offset of the steps to get the distance from the head
+     */
+    private double attach(TrackWalkingPoint walker, boolean isPredicted) {
+        int index = this.isValid(isPredicted) ? this.find(walker.state) : -1;
+        if (index == -1) {
+            this.steps.clear();
+            this.tail = walker;
+            this.tailOffset = walker.movedTotal;
+            this.tailLoopFilter = false;
+            this.predicted = isPredicted;
+            this.trackChangeCounter = RailLookup.getTrackChangeCounter();
+            this.createdTicks = CommonUtil.getServerTicks();
+            this.world = walker.state.railWorld();
+            this.trackChanges = RailLookup.getTrackChangeLog(this.world);
+            this.trackChangesCounter = (this.trackChanges == null) ? 0 : this.trackChanges.getCounter();
+            this.minX = this.minZ = Integer.MAX_VALUE;
+            this.maxX = this.maxZ = Integer.MIN_VALUE;
+            this.addStep(new Step(walker, 0.0));
+            index = 0;
+        } else if (index > 0) {
+            this.steps.subList(0, index).clear();
+        }
+        return walker.movedTotal - this.steps.get(0).offset;
+    }
+
+    private boolean isValid(boolean isPredicted) {
+        return !this.steps.isEmpty()
+                && !this.tailLoopFilter
+                && this.predicted == isPredicted
+                && this.trackChangeCounter == RailLookup.getTrackChangeCounter()
+                && (CommonUtil.getServerTicks() - this.createdTicks) < MAX_AGE_TICKS
+                && !this.hasTrackChanged();
+    }
+
+    /**
+     * Checks whether the track changed near the remembered rails since the last time
+     * this was checked
+     *
+     * @return True if the track changed
+     */
+    private boolean hasTrackChanged() {
+        TrackChangeLog log = this.trackChanges;
+        if (log == null || log != RailLookup.getTrackChangeLog(this.world)) {
+            return true;
+        }
+        if (log.hasChangedSince(this.trackChangesCounter,
+                this.minX - CHANGE_MARGIN, this.minZ - CHANGE_MARGIN,
+                this.maxX + CHANGE_MARGIN, this.maxZ + CHANGE_MARGIN)
+        ) {
+            return true;
+        }
+        this.trackChangesCounter = log.getCounter();
+        return false;
+    }
+
+    private void addStep(Step step) {
+        if (step.state.railWorld() != this.world) {
+            this.trackChanges = null; // Track spans multiple worlds, walk it again next time
+        }
+        IntVector3 pos = step.state.railPiece().blockPosition();
+        this.minX = Math.min(this.minX, pos.x);
+        this.minZ = Math.min(this.minZ, pos.z);
+        this.maxX = Math.max(this.maxX, pos.x);
+        this.maxZ = Math.max(this.maxZ, pos.z);
+        this.steps.add(step);
+    }
+
+    private int find(RailState state) {
+        RailPath.Position position = state.position();
+        for (int i = 0; i < this.steps.size(); i++) {
+            RailState stepState = this.steps.get(i).state;
+            if (stepState.isSameRails(state) &&
+                stepState.position().motDot(position) > 0.0 &&
+                stepState.position().distanceSquared(position) < 1e-4
+            ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Walks more track past the end of the remembered track
+     *
+     * @param loopFilter Whether to stop when rails are visited a second time
+     * @return True if a new step was added, False if the end of the track was reached
+     */
+    private boolean extend(boolean loopFilter) {
+        TrackWalkingPoint tail = this.tail;
+        if (tail == null) {
+            return false;
+        }
+        if (loopFilter && !this.tailLoopFilter) {
+            // Stop using the remembered track next tick, as it might have been cut short
+            this.tailLoopFilter = true;
+            tail.setLoopFilter(true);
+        }
+        if (!tail.moveFull()) {
+            this.tail = null;
+            return false;
+        }
+        this.addStep(new Step(tail, tail.movedTotal - this.tailOffset));
+        return true;
+    }
+
+    /**
+     * A single rail that was walked
+     */
+    private static final class Step {
+        public final RailState state;
+        public final RailPath.Position end;
+        public final double offset;
+        public final double speedLimit;
+
+        public Step(TrackWalkingPoint walker, double offset) {
+            this.state = walker.state.clone();
+            this.end = walker.currentRailPath.getEndOfPath(walker.state.railBlock(), walker.state.position());
+            this.offset = offset;
+            this.speedLimit = walker.getPredictedSpeedLimit();
+        }
+    }
+
+    /**
+     * Walks along the track ahead of the train. Works much like a {@link TrackWalkingPoint}
+     * that only moves full rails, except that it re-uses the remembered track.
+     */
+    public final class Cursor {
+        private TrackWalkingPoint head;
+        private final boolean isPredicted;
+        private boolean loopFilter = false;
+        private boolean started = false;
+        private double base = 0.0;
+        private int index = -1;
+        private Step step = null;
+        /** Rail state at the current position. Must not be modified. */
+        public RailState state = null;
+        /** Total distance moved from the head of the train */
+        public double movedTotal = 0.0;
+
+        private Cursor(TrackWalkingPoint head, boolean isPredicted) {
+            this.head = head;
+            this.isPredicted = isPredicted;
+        }
+
+        /**
+         * Moves to the next rail. The first time this is called, the cursor is
+         * positioned at the head of the train.
+         *
+         * @return True if successful, False if the end of the track was reached
+         */
+        public boolean next() {
+            if (!this.started) {
+                this.started = true;
+                if (!this.head.moveFull()) {
+                    this.head = null;
+                    return false;
+                }
+                this.state = this.head.state;
+                this.movedTotal = this.head.movedTotal;
+                return true;
+            }
+
+            if (this.head != null) {
+                // Walk past the rail the head of the train is on
+                TrackWalkingPoint walker = this.head;
+                this.head = null;
+                if (!walker.moveFull()) {
+                    return false;
+                }
+                this.base = attach(walker, this.isPredicted);
+                this.index = 0;
+            } else if (++this.index >= steps.size() && !extend(this.loopFilter)) {
+                this.index = steps.size();
+                return false;
+            }
+
+            this.step = steps.get(this.index);
+            this.state = this.step.state;
+            this.movedTotal = this.base + this.step.offset;
+            return true;
+        }
+
+        /**
+         * Gets the speed limit predicted for the current rail.
+         * Returns {@link Double#MAX_VALUE} if the predicted path is not followed.
+         *
+         * @return predicted speed limit, {@link Double#MAX_VALUE} if there is none
+         */
+        public double getPredictedSpeedLimit() {
+            return (this.head != null) ? this.head.getPredictedSpeedLimit() : this.step.speedLimit;
+        }
+
+        /**
+         * Finds the mutex zone between the current position and the end of the current rail
+         *
+         * @param mutexZones Mutex zones to look in
+         * @return Mutex zone with distance to it, or null if none
+         */
+        public MutexZoneCacheWorld.MutexZoneResult findMutex(MutexZoneCacheWorld.MovingPoint mutexZones) {
+            return (this.head != null) ? mutexZones.get(this.head)
+                                       : mutexZones.get(this.step.state.position(), this.step.end);
+        }
+
+        /**
+         * Sets whether to stop walking once rails are visited a second time
+         *
+         * @param enabled
+         * @see TrackWalkingPoint#setLoopFilter(boolean)
+         */
+        public void setLoopFilter(boolean enabled) {
+            this.loopFilter = enabled;
+        }
+    }
+}
@@ -26,7 +26,6 @@ import com.bergerkiller.bukkit.tc.signactions.mutex.MutexZoneCacheWorld;
 import com.bergerkiller.bukkit.tc.signactions.mutex.MutexZoneSlot;
 import com.bergerkiller.bukkit.tc.signactions.mutex.MutexZoneSlot.EnteredGroup;
 import com.bergerkiller.bukkit.tc.utils.ForwardChunkArea;
-import com.bergerkiller.bukkit.tc.utils.TrackWalkingPoint;
 
 /**
  * Checks the rails ahead of the train for any obstacles that exist there.
@@ -45,6 +44,8 @@ public class ObstacleTracker implements TrainStatusProvider {
     private int waitRemainingTicks = Integer.MAX_VALUE;
     private ObstacleSpeedLimit lastObstacleSpeedLimit = ObstacleSpeedLimit.NONE;
     private List<MutexZone> enteredMutexZones = Collections.emptyList();
+    private final ObstacleLookAhead lookAhead = new ObstacleLookAhead();
+    private MutexZoneCacheWorld.MovingPoint mutexZonesCursor = null;
     private int tickCounter = 0;
 
     public ObstacleTracker(MinecartGroup group) {
@@ -73,6 +74,15 @@ public class ObstacleTracker implements TrainStatusProvider {
         return this.tickCounter;
     }
 
+    /**
+     * Forgets the track remembered ahead of the train, so that it is walked again
+     * the next time obstacles are looked for. Called when the train properties change,
+     * as these can change the path predicted ahead of the train.
+     */
+    public void forgetTrackAhead() {
+        this.lookAhead.clear();
+    }
+
     /**
      * Main update tick function. Checks if the train should slow down, or use altered speeds,
      * and if so, returns a new max speed value the train should use. This operates in the
@@ -396,22 +406,23 @@ public class ObstacleTracker implements TrainStatusProvider {
                 group.getChunkArea().getForwardChunkArea().reset();
             }
 
-            MutexZoneCacheWorld.MovingPoint mutexZones = group.head().railLookup().getMutexZones()
-                    .track(group.head().getEntity().loc.block());
+            // Re-uses the mutex zones found the previous tick while the train stays in the same chunks
+            MutexZoneCacheWorld.MovingPoint mutexZones = mutexZonesCursor = group.head().railLookup().getMutexZones()
+                    .track(mutexZonesCursor, group.head().getEntity().loc.block());
 
             // If no wait distance is set and no mutex zones are anywhere close, skip these expensive calculations
             if (distance <= 0.0 && trainDistance <= 0.0 && (!checkRailObstacles || !mutexZones.isNear())) {
                 return Collections.emptyList();
             }
 
+            // Walks the track ahead, re-using the rails walked the previous tick where possible.
+            // Only the other trains on the track have to be checked every tick.
             RailState startState = group.head().discoverRail();
             startState.setMember(null); // Make sure this is NOT used for prediction
-            TrackWalkingPoint iter = new TrackWalkingPoint(startState);
-            if (group.getProperties().isWaitPredicted()) {
-                iter.setFollowPredictedPath(group.head());
-            }
+            ObstacleLookAhead.Cursor iter = lookAhead.walk(startState,
+                    group.getProperties().isWaitPredicted() ? group.head() : null);
 
-            while (iter.movedTotal <= checkDistance && iter.moveFull()) {
+            while (iter.movedTotal <= checkDistance && iter.next()) {
                 // The distance traveled from the physical front of the cart
                 // The first iteration will likely have a negative distance
                 double distanceFromFront = iter.movedTotal - selfCartOffset;
@@ -449,7 +460,7 @@ public class ObstacleTracker implements TrainStatusProvider {
                     if (currentMutex == null) {
                         boolean checkForNewMutexes = (checkForNewHardObstacles && distanceFromFront < mutexSoftDistance);
                         if (prevMutex != null || checkForNewMutexes) {
-                            MutexZoneCacheWorld.MutexZoneResult newMutexResult = mutexZones.get(iter);
+                            MutexZoneCacheWorld.MutexZoneResult newMutexResult = iter.findMutex(mutexZones);
                             if (newMutexResult != null) {
                                 // If checking for soft mutexes, always allow if its within range
                                 // If not, it must be the same slot / expanded smart mutex zone to count
@@ -539,7 +550,7 @@ public class ObstacleTracker implements TrainStatusProvider {
             if (currentMutex != null) {
                 // Exceeding 64 blocks we enable the loop filter, as we probably reached an infinite loop of sorts...
                 double enabledLoopFilterLimit = iter.movedTotal + 64.0;
-                while (!currentMutexGroup.isOccupiedFully() && iter.moveFull()) {
+                while (!currentMutexGroup.isOccupiedFully() && iter.next()) {
                     if (iter.movedTotal >= enabledLoopFilterLimit) {
                         enabledLoopFilterLimit = Double.MAX_VALUE;
                         iter.setLoopFilter(true);
@@ -555,7 +566,7 @@ public class ObstacleTracker implements TrainStatusProvider {
                     // one exists at this position. In that case, continue looking.
                     IntVector3 currBlockPos = iter.state.positionOfflineBlock().getPosition();
                     if (!currentMutex.containsBlock(currBlockPos)) {
-                        MutexZoneCacheWorld.MutexZoneResult otherMutex = mutexZones.get(iter);
+                        MutexZoneCacheWorld.MutexZoneResult otherMutex = iter.findMutex(mutexZones);
                         if (otherMutex == null || otherMutex.zone.slot != currentMutex.slot) {
                             break;
                         }
@@ -580,7 +591,7 @@ public class ObstacleTracker implements TrainStatusProvider {
          * @param iter
          * @return True if more track is requested
          */
-        private boolean updateCurrentMutex(TrackWalkingPoint iter) {
+        private boolean updateCurrentMutex(ObstacleLookAhead.Cursor iter) {
             MutexZoneSlot.EnterResult result;
             result = currentMutexGroup.enter(currentMutex.type,                      /* Mutex zone slot type */
                                              iter.state.railPiece().blockPosition(), /* Rail block */
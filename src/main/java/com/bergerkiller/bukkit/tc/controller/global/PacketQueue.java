@@ -1,23 +1,32 @@
 package com.bergerkiller.bukkit.tc.controller.global;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
 import org.bukkit.entity.Player;
 
+import com.bergerkiller.bukkit.common.Logging;
 import com.bergerkiller.bukkit.common.controller.VehicleMountController;
 import com.bergerkiller.bukkit.common.protocol.CommonPacket;
 import com.bergerkiller.bukkit.common.protocol.PacketType;
 import com.bergerkiller.bukkit.common.utils.PacketUtil;
 import com.bergerkiller.bukkit.common.utils.PlayerUtil;
+import com.bergerkiller.bukkit.tc.TCConfig;
 import com.bergerkiller.bukkit.tc.attachments.api.AttachmentViewer;
 import com.bergerkiller.bukkit.tc.utils.CircularFIFOQueue;
 import com.bergerkiller.bukkit.tc.utils.CircularFIFOQueue.EmptyQueueException;
+import com.bergerkiller.bukkit.tc.utils.CircularFIFOQueueCoalescing;
 import com.bergerkiller.bukkit.tc.utils.CircularFIFOQueueStampedRW;
 import com.bergerkiller.generated.net.minecraft.network.protocol.PacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.PacketPlayOutCustomPayloadHandle;
 
 /**
- * Efficiently queues up packets and sends them on a dedicated thread.
+ * Efficiently queues up packets and sends them using a shared pool of writer threads.
  * Includes a sync method to wait until sending has completed.
- * Queue is per player.<br>
+ * Queue is per player. The number of packets waiting to be sent and the time it
+ * takes to send them are tracked, which shows whether the network of a player
+ * is falling behind.<br>
  * <br>
  * The PacketQueue can be safely used as a key in hashmaps / hashsets.
  * Two queues for the same player will be considered equal.
@@ -26,16 +35,30 @@ public class PacketQueue implements AttachmentViewer, me.m56738.smoothcoasters.a
     private final Player player;
     private final VehicleMountController vmc; // cached
     private final CircularFIFOQueue<CommonPacket> queue;
-    private volatile Thread thread;
+    private final CircularFIFOQueueCoalescing<CommonPacket> coalescingQueue; // null if not limited
+    private final PacketWriterPool pool;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Object syncLock = new Object();
+    private final AtomicLong numQueued = new AtomicLong(0);
+    private volatile long numSent = 0; // Only updated by the writer thread
+    private volatile long pendingSince = 0;
+    private volatile long lastLatency = 0;
+    private volatile long maxLatency = 0;
 
     /**
      * Creates a new functional packet queue for a player
      *
      * @param player
+     * @param pool Pool of writer threads that send the packets
      * @return Packet queue
      */
-    public static PacketQueue create(Player player) {
-        return new PacketQueue(player, new CircularFIFOQueueStampedRW<>());
+    public static PacketQueue create(Player player, PacketWriterPool pool) {
+        if (TCConfig.packetQueueLimit > 0) {
+            return new PacketQueue(player, new CircularFIFOQueueCoalescing<>(CoalescingPolicy.INSTANCE,
+                    TCConfig.packetQueueLimit), pool);
+        } else {
+            return new PacketQueue(player, new CircularFIFOQueueStampedRW<>(), pool);
+        }
     }
 
     /**
@@ -55,15 +78,19 @@ public class PacketQueue implements AttachmentViewer, me.m56738.smoothcoasters.a
         this.player = player;
         this.vmc = PlayerUtil.getVehicleMountController(player);
         this.queue = CircularFIFOQueue.forward(this::processPacket);
-        this.thread = null;
+        this.coalescingQueue = null;
+        this.pool = null;
     }
 
-    private PacketQueue(Player player, CircularFIFOQueue<CommonPacket> queue) {
+    @SuppressWarnings("unchecked")
+    private PacketQueue(Player player, CircularFIFOQueue<CommonPacket> queue, PacketWriterPool pool) {
         this.player = player;
         this.vmc = PlayerUtil.getVehicleMountController(player);
         this.queue = queue;
-        this.queue.setWakeCallback(this::startProcessingPackets);
-        this.thread = null;
+        this.coalescingQueue = (queue instanceof CircularFIFOQueueCoalescing)
+                ? (CircularFIFOQueueCoalescing<CommonPacket>) queue : null;
+        this.pool = pool;
+        this.queue.setWakeCallback(this::onPacketsQueued);
     }
 
     @Override
@@ -78,22 +105,22 @@ public class PacketQueue implements AttachmentViewer, me.m56738.smoothcoasters.a
 
     @Override
     public void send(PacketHandle packet) {
-        queue.put(packet.toCommonPacket());
+        put(packet.toCommonPacket());
     }
 
     @Override
     public void send(CommonPacket packet) {
-        queue.put(packet);
+        put(packet);
     }
 
     @Override
     public void sendSilent(CommonPacket packet) {
-        queue.put(new SilentCommonPacket(packet.getHandle(), packet.getType()));
+        put(new SilentCommonPacket(packet.getHandle(), packet.getType()));
     }
 
     @Override
     public void sendSilent(PacketHandle packet) {
-        queue.put(new SilentCommonPacket(packet.getRaw(), packet.getPacketType()));
+        put(new SilentCommonPacket(packet.getRaw(), packet.getPacketType()));
     }
 
     /// -------------- Smoothcoasters support integration -----------------
@@ -114,36 +141,175 @@ public class PacketQueue implements AttachmentViewer, me.m56738.smoothcoasters.a
 
     public void abort() {
         queue.abort();
+
+        // Wake up anyone still waiting in sync()
+        synchronized (syncLock) {
+            syncLock.notifyAll();
+        }
+    }
+
+    /**
+     * Gets the number of packets that were queued up, but have not been sent yet
+     *
+     * @return number of pending packets
+     */
+    public long getPendingPacketCount() {
+        return Math.max(0L, numQueued.get() - numSent);
+    }
+
+    /**
+     * Gets the total number of packets sent using this queue
+     *
+     * @return number of sent packets
+     */
+    public long getSentPacketCount() {
+        return numSent;
+    }
+
+    /**
+     * Gets the total number of packets that were not sent, because a newer packet
+     * for the same entity replaced it while it was waiting to be sent.
+     * Only happens when the queue is limited.
+     *
+     * @return number of coalesced packets
+     */
+    public long getCoalescedPacketCount() {
+        return (coalescingQueue == null) ? 0L : coalescingQueue.getCoalescedCount();
+    }
+
+    /**
+     * Gets the total number of non-critical packets that were not sent, because too
+     * many packets were waiting to be sent. Only happens when the queue is limited.
+     *
+     * @return number of dropped packets
+     */
+    public long getDroppedPacketCount() {
+        return (coalescingQueue == null) ? 0L : coalescingQueue.getDroppedCount();
+    }
+
+    /**
+     * Gets how long it took the last time to send all the packets queued up, from
+     * the moment the first packet was put into the empty queue.
+     *
+     * @return Last latency in nanoseconds
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * Gets the longest time it took to send all the packets queued up, from
+     * the moment the first packet was put into the empty queue.
+     *
+     * @return Maximum latency in nanoseconds
+     */
+    public long getMaxLatency() {
+        return maxLatency;
     }
 
     /**
      * Waits until all packets queued up before have been sent to the player
      */
     public void sync() {
-        while (!this.queue.isEmpty()) {
-            Thread.yield(); // Eh.
+        final long target = numQueued.get();
+        if (numSent >= target) {
+            return;
+        }
+
+        // When flushing once per tick the packets might not be scheduled for sending yet
+        flush();
+
+        synchronized (syncLock) {
+            while (numSent < target && !queue.isAborted()) {
+                try {
+                    syncLock.wait(50);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules the packets queued up so far for sending, if not already scheduled
+     */
+    public void flush() {
+        if (pool != null && !queue.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void put(CommonPacket packet) {
+        if (coalescingQueue != null) {
+            // Only count packets that will actually be sent, or sync() would wait forever
+            if (coalescingQueue.offer(packet)) {
+                numQueued.incrementAndGet();
+            }
+            return;
+        }
+        if (pool != null) {
+            numQueued.incrementAndGet();
+        }
+        queue.put(packet);
+    }
+
+    // Called when a packet is put into the empty queue
+    private void onPacketsQueued() {
+        pendingSince = System.nanoTime();
+        if (!pool.isFlushPerTick()) {
+            schedule();
         }
     }
 
-    private void startProcessingPackets() {
-        if (thread == null && !queue.isAborted()) {
-            Thread newThread = new Thread(this::processPacketsThread, "TC-PacketWriterThread-" + player.getEntityId());
-            newThread.setDaemon(true);
-            this.thread = newThread;
-            newThread.start();
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            pool.execute(this::sendBatch);
         }
     }
 
-    private void processPacketsThread() {
+    /**
+     * Runs on one of the writer threads to send a batch of packets
+     */
+    private void sendBatch() {
         final CircularFIFOQueue<CommonPacket> queue = this.queue;
-        while (true) {
-            try {
-                processPacket(queue.take(60000));
-            } catch (EmptyQueueException e) {
-                if (queue.runIfEmpty(() -> thread = null)) {
-                    break;
+        int remaining = PacketWriterPool.BATCH_SIZE;
+        boolean drained = false;
+        try {
+            while (--remaining >= 0) {
+                CommonPacket packet = queue.take(0);
+                try {
+                    processPacket(packet);
+                } catch (Throwable t) {
+                    Logging.LOGGER_NETWORK.log(Level.SEVERE, "Failed to send packet to " + player.getName(), t);
                 }
+                numSent++;
             }
+        } catch (EmptyQueueException e) {
+            drained = true;
+            if (remaining < (PacketWriterPool.BATCH_SIZE - 1)) {
+                // All sent
+                long latency = System.nanoTime() - pendingSince;
+                lastLatency = latency;
+                if (latency > maxLatency) {
+                    maxLatency = latency;
+                }
+            }
+        } finally {
+            synchronized (syncLock) {
+                syncLock.notifyAll();
+            }
+        }
+
+        if (drained) {
+            // Queue is empty. Packets put in right before this was reset could not schedule
+            // the queue again, so check for that.
+            scheduled.set(false);
+            if (!pool.isFlushPerTick() && !queue.isEmpty()) {
+                schedule();
+            }
+        } else {
+            // Send more packets later, giving other queues a turn first
+            pool.execute(this::sendBatch);
         }
     }
 
@@ -172,6 +338,59 @@ public class PacketQueue implements AttachmentViewer, me.m56738.smoothcoasters.a
         return "PacketQueue{player=" + player + "}";
     }
 
+    /**
+     * Replaces packets that set the absolute position, rotation or velocity of an entity with
+     * newer packets of the same type for that entity. Relative movement packets are never
+     * replaced, as the client adds them up. Velocity packets are only used for the sound of
+     * minecarts, and are dropped when the queue is full.
+     */
+    private static final class CoalescingPolicy implements CircularFIFOQueueCoalescing.Policy<CommonPacket> {
+        public static final CoalescingPolicy INSTANCE = new CoalescingPolicy();
+
+        @Override
+        public Object getKey(CommonPacket packet) {
+            PacketType type = packet.getType();
+            if (type == PacketType.OUT_ENTITY_MOVE) {
+                return packet.read(PacketType.OUT_ENTITY_MOVE.entityId);
+            } else if (type == PacketType.OUT_ENTITY_MOVE_LOOK) {
+                return packet.read(PacketType.OUT_ENTITY_MOVE_LOOK.entityId);
+            } else if (type == PacketType.OUT_ENTITY_LOOK) {
+                return packet.read(PacketType.OUT_ENTITY_LOOK.entityId);
+            } else if (type == PacketType.OUT_ENTITY_TELEPORT) {
+                return packet.read(PacketType.OUT_ENTITY_TELEPORT.entityId);
+            } else if (type == PacketType.OUT_ENTITY_HEAD_ROTATION) {
+                return packet.read(PacketType.OUT_ENTITY_HEAD_ROTATION.entityId);
+            } else if (type == PacketType.OUT_ENTITY_VELOCITY) {
+                return packet.read(PacketType.OUT_ENTITY_VELOCITY.entityId);
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean canReplace(CommonPacket older, CommonPacket newer) {
+            PacketType type = newer.getType();
+            return older.getType() == type &&
+                   older.getClass() == newer.getClass() &&
+                   (type == PacketType.OUT_ENTITY_TELEPORT ||
+                    type == PacketType.OUT_ENTITY_LOOK ||
+                    type == PacketType.OUT_ENTITY_HEAD_ROTATION ||
+                    type == PacketType.OUT_ENTITY_VELOCITY);
+        }
+
+        @Override
+        public boolean isBarrier(CommonPacket packet) {
+            // Spawn, destroy and mount packets must stay ordered with the movement of entities
+            PacketType type = packet.getType();
+            return type != PacketType.OUT_ENTITY_METADATA && type != PacketType.OUT_CUSTOM_PAYLOAD;
+        }
+
+        @Override
+        public boolean canDrop(CommonPacket packet) {
+            return packet.getType() == PacketType.OUT_ENTITY_VELOCITY;
+        }
+    }
+
     private static final class SilentCommonPacket extends CommonPacket {
 
         public SilentCommonPacket(Object packetHandle, PacketType packetType) {
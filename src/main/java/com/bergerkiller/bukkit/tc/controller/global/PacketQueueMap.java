@@ -10,10 +10,12 @@ import com.bergerkiller.bukkit.common.collections.FastIdentityHashMap;
 /**
  * Stores a mapping from players to their packet queues.
  * Automatically purges the queues when players log off.
+ * The packets of all queues are sent by a shared pool of writer threads.
  */
 public class PacketQueueMap {
     private final FastIdentityHashMap<Player, PacketQueue> queues = new FastIdentityHashMap<>();
     private final List<PacketQueue> queuesList = new ArrayList<>();
+    private final PacketWriterPool pool = new PacketWriterPool();
 
     /**
      * Gets the PacketQueue to be used for sending packets to a Player
@@ -25,7 +27,7 @@ public class PacketQueueMap {
         PacketQueue queue = queues.get(player);
         if (queue == null) {
             if (player.isOnline()) {
-                queue = PacketQueue.create(player);
+                queue = PacketQueue.create(player, pool);
                 queues.put(player, queue);
                 queuesList.add(queue);
             } else {
@@ -49,9 +51,36 @@ public class PacketQueueMap {
     }
 
     /**
-     * Calls {@link PacketQueue#sync()} on all queues active right now
+     * Gets all the queues active right now
+     *
+     * @return List of packet queues
+     */
+    public synchronized List<PacketQueue> getQueues() {
+        return new ArrayList<>(queuesList);
+    }
+
+    /**
+     * Calls {@link PacketQueue#sync()} on all queues active right now.
+     * Waits until all packets queued up before have been sent.
+     */
+    public void syncAll() {
+        getQueues().forEach(PacketQueue::sync);
+    }
+
+    /**
+     * Calls {@link PacketQueue#flush()} on all queues active right now.
+     * Must be called every tick when packets are only sent once per tick.
+     */
+    public void flushAll() {
+        getQueues().forEach(PacketQueue::flush);
+    }
+
+    /**
+     * Waits for the packets queued up so far to be sent, and then stops
+     * the writer threads. Should be called when the plugin disables.
      */
-    public synchronized void syncAll() {
-        queuesList.forEach(PacketQueue::sync);
+    public void shutdown() {
+        syncAll();
+        pool.shutdown();
     }
 }
@@ -0,0 +1,98 @@
+package com.bergerkiller.bukkit.tc.controller.global;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bergerkiller.bukkit.tc.TCConfig;
+
+/**
+ * A bounded pool of threads that send the packets queued up in {@link PacketQueue}s.
+ * A queue is scheduled on the pool when packets are put into it, and a thread then
+ * sends a batch of packets from it. If more packets remain, the queue is scheduled
+ * again at the back, so that a single busy queue does not hold up the others.<br>
+ * <br>
+ * Once {@link #shutdown()} is called, tasks run on the thread that schedules them.
+ */
+public class PacketWriterPool {
+    /** Maximum number of packets sent from a single queue before moving on to the next queue */
+    public static final int BATCH_SIZE = 256;
+    private ThreadPoolExecutor executor = null;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Gets whether queues are only scheduled for sending once every tick, when
+     * {@link PacketQueueMap#flushAll()} is called. If false, queues are scheduled
+     * right away when packets are put into them. Always false after {@link #shutdown()},
+     * as queues are then no longer flushed every tick.
+     *
+     * @return True if packets are flushed once per tick
+     */
+    public boolean isFlushPerTick() {
+        return TCConfig.packetFlushPerTick && !this.shutdown;
+    }
+
+    /**
+     * Schedules a task that sends packets of a queue. If the pool was shut down,
+     * the task is run right away on the calling thread instead.
+     *
+     * @param task Task to run on one of the writer threads
+     */
+    public void execute(Runnable task) {
+        synchronized (this) {
+            if (!this.shutdown) {
+                ThreadPoolExecutor executor = this.executor;
+                if (executor == null) {
+                    this.executor = executor = createExecutor();
+                }
+                executor.execute(task);
+                return;
+            }
+        }
+
+        // Writer threads are stopped, so packets sent while disabling must be sent right away
+        task.run();
+    }
+
+    /**
+     * Stops the writer threads once all scheduled tasks have completed.
+     * Tasks scheduled after this, including more batches of tasks that were
+     * still running, are run on the thread that schedules them.
+     */
+    public void shutdown() {
+        ThreadPoolExecutor executor;
+        synchronized (this) {
+            this.shutdown = true;
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) { /* ignore */ }
+        }
+    }
+
+    private ThreadPoolExecutor createExecutor() {
+        int numThreads = TCConfig.packetWriterThreads;
+        if (numThreads <= 0) {
+            // Netty already uses threads of its own, so do not claim all the cores
+            numThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        }
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "TC-PacketWriterThread-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
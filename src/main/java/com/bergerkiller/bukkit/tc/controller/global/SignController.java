@@ -237,6 +237,9 @@ public class SignController implements LibraryComponent, Listener {
             if (!entry.verifyAfterUpdate(true)) {
                 worldController.removeInvalidEntry(entry);
             }
+
+            // Speed limits and switching predicted ahead of trains might now be different
+            RailLookup.notifyTrackChanged(tracker.getBlock());
         }
     }
 
@@ -502,6 +505,7 @@ public class SignController implements LibraryComponent, Listener {
         try {
             entry.activated = true;
             entry.initRedstonePower();
+            RailLookup.notifyTrackChanged(b);
 
             if (handleLoadChange) {
                 if (refreshRailSigns) {
@@ -523,6 +527,7 @@ public class SignController implements LibraryComponent, Listener {
 
         try {
             entry.activated = false;
+            RailLookup.notifyTrackChanged(entry.sign.getBlock());
             SignAction.handleLoadChange(entry.sign.getSign(), false);
         } catch (Throwable t) {
             Block b = entry.sign.getBlock();
@@ -839,6 +844,7 @@ public class SignController implements LibraryComponent, Listener {
             // Change in redstone power?
             if (this.powered != newPowerState) {
                 this.powered = newPowerState;
+                RailLookup.notifyTrackChanged(this.sign.getBlock());
                 if (type != SignActionType.NONE) {
                     SignAction.executeAll(info, type);
                 }
@@ -157,6 +157,7 @@ public class TrainUpdateController {
     private void syncPositions(Collection<MinecartGroup> groups, boolean positionSync) {
         try (Timings t = TCTimings.NETWORK_UPDATE_POSITIONS.start()) {
             // First do a pre-movement update for all trains
+            // This starts updating the attachment transforms in the background
             for (MinecartGroup group : groups) {
                 try {
                     group.getAttachments().syncPrePositionUpdate(updateTransformHelper);
@@ -164,21 +165,34 @@ public class TrainUpdateController {
                     syncFail(group, ex);
                 }
             }
-
-            // Sync
-            updateTransformHelper.finish();
         }
 
-        // Post-updates
-        for (MinecartGroup group : groups) {
-            try {
-                if (positionSync) {
-                    group.getAttachments().syncPositionAbsolute();
-                } else {
-                    group.getAttachments().syncPostPositionUpdate();
+        // Post-updates. Each train is updated as soon as the transforms of its own
+        // attachments are computed, while the transforms of the trains after it are
+        // still being computed in the background.
+        try {
+            for (MinecartGroup group : groups) {
+                try {
+                    try (Timings t = TCTimings.NETWORK_WAIT_TRANSFORMS.start()) {
+                        for (MinecartMember<?> member : group) {
+                            updateTransformHelper.finish(member.getAttachments());
+                        }
+                    }
+
+                    if (positionSync) {
+                        group.getAttachments().syncPositionAbsolute();
+                    } else {
+                        group.getAttachments().syncPostPositionUpdate();
+                    }
+                } catch (Throwable t) {
+                    syncFail(group, t);
                 }
+            }
+        } finally {
+            try (Timings t = TCTimings.NETWORK_WAIT_TRANSFORMS.start()) {
+                updateTransformHelper.finish();
             } catch (Throwable t) {
-                syncFail(group, t);
+                plugin.handle(t);
             }
         }
     }
@@ -242,6 +256,9 @@ public class TrainUpdateController {
             try (ImplicitlySharedSet<MinecartGroup> groups = MinecartGroupStore.getGroups().clone()) {
                 syncPositions(groups, false);
             }
+
+            // When packets are sent once per tick, start sending them now
+            ((TrainCarts) getPlugin()).getPacketQueueMap().flushAll();
         }
     }
 
@@ -0,0 +1,76 @@
+package com.bergerkiller.bukkit.tc.controller.spawnable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.bergerkiller.bukkit.common.config.ConfigurationNode;
+
+/**
+ * The configuration of a saved train, prepared for spawning it many times. The
+ * train configuration and the configuration of every cart, including the attachment
+ * models, are copied from the saved train once. Spawnable groups created from it
+ * share these configurations, rather than copying them every time a train spawns.<br>
+ * <br>
+ * Templates are cached by the {@link com.bergerkiller.bukkit.tc.properties.SavedTrainPropertiesStore
+ * SavedTrainPropertiesStore}, and are created again when saved trains are changed.
+ * The configurations of a template must not be modified.
+ */
+public final class SpawnTemplate {
+    private final String name;
+    private final ConfigurationNode config;
+    private final List<ConfigurationNode> carts;
+
+    private SpawnTemplate(String name, ConfigurationNode config, List<ConfigurationNode> carts) {
+        this.name = name;
+        this.config = config;
+        this.carts = carts;
+    }
+
+    /**
+     * Gets the name of the saved train this template was created from
+     *
+     * @return saved train name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the train configuration, without the carts
+     *
+     * @return train configuration
+     */
+    public ConfigurationNode getConfig() {
+        return this.config;
+    }
+
+    /**
+     * Gets the configuration of all the carts, in the same order as they are saved
+     *
+     * @return unmodifiable list of cart configurations
+     */
+    public List<ConfigurationNode> getCarts() {
+        return this.carts;
+    }
+
+    /**
+     * Creates a new template from the configuration of a saved train
+     *
+     * @param name Name of the saved train
+     * @param savedConfig Configuration of the saved train, is copied
+     * @return spawn template
+     */
+    public static SpawnTemplate create(String name, ConfigurationNode savedConfig) {
+        ConfigurationNode config = new ConfigurationNode();
+        savedConfig.cloneIntoExcept(config, Collections.singleton("carts"));
+
+        List<ConfigurationNode> savedCarts = savedConfig.getNodeList("carts");
+        List<ConfigurationNode> carts = new ArrayList<ConfigurationNode>(savedCarts.size());
+        for (ConfigurationNode cartConfig : savedCarts) {
+            carts.add(cartConfig.clone());
+        }
+
+        return new SpawnTemplate(name, config, Collections.unmodifiableList(carts));
+    }
+}
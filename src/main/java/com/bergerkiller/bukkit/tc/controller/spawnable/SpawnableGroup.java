@@ -188,6 +188,18 @@ public class SpawnableGroup {
         return countAdded;
     }
 
+    private int applyTemplate(SpawnTemplate template) {
+        ConfigurationNode templateConfig = template.getConfig();
+        for (String key : templateConfig.getKeys()) {
+            this.config.set(key, templateConfig.get(key));
+        }
+        List<ConfigurationNode> cartConfigList = template.getCarts();
+        for (int i = cartConfigList.size() - 1; i >= 0; i--) {
+            this.members.add(new SpawnableMember(this, cartConfigList.get(i), false));
+        }
+        return cartConfigList.size();
+    }
+
     /**
      * Gets the total length of all the members of this spawnable group
      * 
@@ -571,6 +583,8 @@ public class SpawnableGroup {
     /**
      * Parses the contents of a types-encoded String. This is a String token
      * in the same format as is used on the 3rd/4th lines on spawner signs.
+     * Saved trains are added using their cached {@link SpawnTemplate}, so their
+     * configuration is not copied every time.
      *
      * @param plugin TrainCarts plugin instance
      * @param typesText
@@ -597,8 +611,10 @@ public class SpawnableGroup {
             String name = plugin.getSavedTrains().findName(typesText.substring(typeTextIdx));
             if (name != null && (name.length() > 1 || findVanillaCartType(c) == null)) {
                 typeTextIdx += name.length() - 1;
-                ConfigurationNode savedTrainConfig = plugin.getSavedTrains().getConfig(name);
-                countAdded += result.applyConfig(savedTrainConfig);
+                SpawnTemplate template = plugin.getSavedTrains().getSpawnTemplate(name);
+                if (template != null) {
+                    countAdded += result.applyTemplate(template);
+                }
             } else {
                 EntityType type = findVanillaCartType(c);
                 if (type != null) {
@@ -627,7 +643,8 @@ public class SpawnableGroup {
                     int startIdx = result.members.size() - countAdded;
                     for (int n = 0; n < amount - 1; n++) {
                         for (int i = 0; i < countAdded; i++) {
-                            result.members.add(result.members.get(startIdx + i).clone());
+                            SpawnableMember member = result.members.get(startIdx + i);
+                            result.members.add(new SpawnableMember(result, member.getConfig(), false));
                         }
                     }
                 }
@@ -22,8 +22,20 @@ public class SpawnableMember {
     private final boolean flipped;
 
     protected SpawnableMember(SpawnableGroup group, ConfigurationNode config) {
+        this(group, config, true);
+    }
+
+    /**
+     * Creates a new spawnable member
+     *
+     * @param group Group the member is part of
+     * @param config Configuration of the member
+     * @param cloneConfig Whether to clone the configuration. If false, the configuration
+     *                    is shared and must not be modified.
+     */
+    SpawnableMember(SpawnableGroup group, ConfigurationNode config, boolean cloneConfig) {
         this.group = group;
-        this.config = config.clone();
+        this.config = cloneConfig ? config.clone() : config;
         if (this.config.contains("model.physical.cartLength")) {
             this.length = this.config.get("model.physical.cartLength", DEFAULT_CART_LENGTH);
         } else if (this.group.getConfig().contains("model.physical.cartLength")) {
@@ -56,7 +68,8 @@ public class SpawnableMember {
 
     /**
      * Gets the train member configuration to be applied to the cart's properties
-     * after spawning.
+     * after spawning. Members of a group parsed from saved trains share this
+     * configuration with the {@link SpawnTemplate}, so it should not be modified.
      * 
      * @return cart configuration
      */
@@ -1,6 +1,8 @@
 package com.bergerkiller.bukkit.tc.debug;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -17,17 +19,25 @@ import com.bergerkiller.bukkit.common.Task;
 import com.bergerkiller.bukkit.common.bases.IntVector2;
 import com.bergerkiller.bukkit.common.bases.IntVector3;
 import com.bergerkiller.bukkit.common.math.Quaternion;
+import com.bergerkiller.bukkit.common.offline.OfflineWorld;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
 import com.bergerkiller.bukkit.common.utils.WorldUtil;
 import com.bergerkiller.bukkit.tc.Localization;
 import com.bergerkiller.bukkit.tc.Permission;
 import com.bergerkiller.bukkit.tc.TCConfig;
 import com.bergerkiller.bukkit.tc.TrainCarts;
 import com.bergerkiller.bukkit.tc.commands.annotations.CommandRequiresPermission;
+import com.bergerkiller.bukkit.tc.commands.annotations.CommandTargetTrain;
+import com.bergerkiller.bukkit.tc.attachments.VirtualEntitySyncStatistics;
+import com.bergerkiller.bukkit.tc.controller.MinecartGroup;
 import com.bergerkiller.bukkit.tc.controller.MinecartMemberStore;
+import com.bergerkiller.bukkit.tc.controller.components.AttachmentControllerMember;
+import com.bergerkiller.bukkit.tc.controller.global.PacketQueue;
 import com.bergerkiller.bukkit.tc.controller.global.SignControllerWorld;
 import com.bergerkiller.bukkit.tc.debug.types.DebugToolTypeListDestinations;
 import com.bergerkiller.bukkit.tc.debug.types.DebugToolTypeRails;
 import com.bergerkiller.bukkit.tc.debug.types.DebugToolTypeTrackDistance;
+import com.bergerkiller.bukkit.tc.properties.TrainProperties;
 import com.bergerkiller.bukkit.tc.rails.RailLookup;
 import com.bergerkiller.bukkit.tc.storage.OfflineGroupManager;
 import com.bergerkiller.bukkit.tc.utils.EventListenerHook;
@@ -260,6 +270,102 @@ public class DebugCommands {
         });
     }
 
+    @CommandRequiresPermission(Permission.DEBUG_COMMAND_DEBUG)
+    @CommandMethod("train debug packetqueues")
+    @CommandDescription("Shows how many packets are waiting to be sent to every player, and how long sending takes")
+    private void commandDebugPacketQueues(
+            final CommandSender sender,
+            final TrainCarts plugin
+    ) {
+        List<PacketQueue> queues = plugin.getPacketQueueMap().getQueues();
+        if (queues.isEmpty()) {
+            sender.sendMessage(ChatColor.YELLOW + "No packets have been sent to players yet");
+            return;
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + "Packet queues of " + queues.size() + " players:");
+        for (PacketQueue queue : queues) {
+            long pending = queue.getPendingPacketCount();
+            sender.sendMessage(ChatColor.WHITE + queue.getPlayer().getName() + ": " +
+                    ((pending > 1000) ? ChatColor.RED : ChatColor.GREEN) + pending + " pending" +
+                    ChatColor.WHITE + ", " + queue.getSentPacketCount() + " sent" +
+                    ", " + queue.getCoalescedPacketCount() + " replaced" +
+                    ", " + queue.getDroppedPacketCount() + " dropped" +
+                    ", latency " + formatMillis(queue.getLastLatency()) +
+                    " (max " + formatMillis(queue.getMaxLatency()) + ")");
+        }
+    }
+
+    @CommandRequiresPermission(Permission.DEBUG_COMMAND_DEBUG)
+    @CommandMethod("train debug restorequeue")
+    @CommandDescription("Shows how many unloaded trains are waiting to be restored in chunks that loaded")
+    private void commandDebugRestoreQueue(
+            final CommandSender sender,
+            final TrainCarts plugin
+    ) {
+        sender.sendMessage(ChatColor.YELLOW + "Last tick restored " + OfflineGroupManager.getLastRestoredCount() +
+                " trains in " + formatMillis(OfflineGroupManager.getLastRestoreTime()));
+        int total = OfflineGroupManager.getRestoreBacklog();
+        if (total == 0) {
+            sender.sendMessage(ChatColor.GREEN + "No trains are waiting to be restored");
+            return;
+        }
+        for (Map.Entry<OfflineWorld, Integer> entry : OfflineGroupManager.getRestoreBacklogByWorld().entrySet()) {
+            World world = entry.getKey().getLoadedWorld();
+            String worldName = (world == null) ? entry.getKey().getUniqueId().toString() : world.getName();
+            sender.sendMessage(ChatColor.WHITE + worldName + ": " + ChatColor.RED + entry.getValue() + " waiting");
+        }
+        sender.sendMessage(ChatColor.YELLOW + "Total: " + ChatColor.RED + total + " waiting");
+    }
+
+    @CommandRequiresPermission(Permission.DEBUG_COMMAND_DEBUG)
+    @CommandMethod("train debug attachmentsync")
+    @CommandDescription("Shows how many attachment movement packets were sent and saved per tick since the last time")
+    private void commandDebugAttachmentSync(
+            final CommandSender sender,
+            final TrainCarts plugin
+    ) {
+        VirtualEntitySyncStatistics.Result stats = VirtualEntitySyncStatistics.reset();
+        sender.sendMessage(ChatColor.YELLOW + "Attachment movement packets of the last " + stats.ticks + " ticks (per tick):");
+        sender.sendMessage(ChatColor.WHITE + "Sent: " + ChatColor.GREEN + formatPerTick(stats, stats.packetsSent));
+        sender.sendMessage(ChatColor.WHITE + "Position changes not sent: " + ChatColor.GREEN + formatPerTick(stats, stats.movePacketsSaved));
+        sender.sendMessage(ChatColor.WHITE + "Rotation changes not sent: " + ChatColor.GREEN + formatPerTick(stats, stats.rotationPacketsSaved));
+    }
+
+    @CommandTargetTrain
+    @CommandRequiresPermission(Permission.DEBUG_COMMAND_DEBUG)
+    @CommandMethod("train debug syncrate")
+    @CommandDescription("Shows how often the movement of the attachments of each cart of a train is sent to players")
+    private void commandDebugSyncRate(
+            final CommandSender sender,
+            final TrainProperties properties
+    ) {
+        MinecartGroup group = properties.getHolder();
+        if (group == null) {
+            sender.sendMessage(ChatColor.RED + "The train is not loaded");
+            return;
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + "Attachment movement of train " + properties.getTrainName() +
+                " (max interval " + properties.getMaxSyncInterval() + " ticks):");
+        for (int i = 0; i < group.size(); i++) {
+            AttachmentControllerMember attachments = group.get(i).getAttachments();
+            double distance = attachments.getNearestViewerDistance();
+            sender.sendMessage(ChatColor.WHITE + "Cart " + (i + 1) + ": every " +
+                    ChatColor.GREEN + attachments.getSyncInterval() + ChatColor.WHITE + " ticks (" +
+                    (attachments.getViewers().isEmpty() ? "no viewers" : ("nearest viewer " + MathUtil.round(distance, 1) + " blocks")) +
+                    ", speed " + MathUtil.round(group.get(i).getRealSpeed(), 3) + ")");
+        }
+    }
+
+    private static String formatPerTick(VirtualEntitySyncStatistics.Result stats, long count) {
+        return count + " (" + MathUtil.round(stats.perTick(count), 1) + ")";
+    }
+
+    private static String formatMillis(long nanos) {
+        return MathUtil.round((double) nanos / 1000000.0, 2) + "ms";
+    }
+
     // There's no possibly way people still need this in 2022
     /*
     @Hidden
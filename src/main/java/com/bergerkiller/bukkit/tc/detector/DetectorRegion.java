@@ -1,16 +1,14 @@
 package com.bergerkiller.bukkit.tc.detector;
 
-import com.bergerkiller.bukkit.common.BlockLocation;
 import com.bergerkiller.bukkit.common.bases.IntVector3;
-import com.bergerkiller.bukkit.common.collections.BlockMap;
 import com.bergerkiller.bukkit.common.collections.ImplicitlySharedList;
 import com.bergerkiller.bukkit.common.config.DataReader;
-import com.bergerkiller.bukkit.common.config.DataWriter;
 import com.bergerkiller.bukkit.common.utils.LogicUtil;
 import com.bergerkiller.bukkit.common.utils.StreamUtil;
 import com.bergerkiller.bukkit.tc.TrainCarts;
 import com.bergerkiller.bukkit.tc.controller.MinecartGroup;
 import com.bergerkiller.bukkit.tc.controller.MinecartMember;
+import com.bergerkiller.bukkit.tc.controller.components.RailTracker.TrackedRail;
 import com.bergerkiller.bukkit.tc.rails.RailLookup;
 import com.bergerkiller.bukkit.tc.rails.WorldRailLookup;
 
@@ -18,6 +16,7 @@ import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -35,7 +34,7 @@ import java.util.logging.Level;
 public final class DetectorRegion {
     private static boolean hasChanges = false;
     private static HashMap<UUID, DetectorRegion> regionsById = new HashMap<>();
-    private static BlockMap<DetectorRegion[]> regions = new BlockMap<>();
+    private static HashMap<String, HashMap<IntVector3, DetectorRegion[]>> regionsByWorld = new HashMap<>();
     private final UUID id;
     private final String world;
     private final Set<IntVector3> coordinates;
@@ -51,9 +50,9 @@ public final class DetectorRegion {
 
         WorldRailLookup lookup = RailLookup.forWorldIfInitialized(Bukkit.getWorld(world));
         final DetectorRegion[] singleRegion = new DetectorRegion[] { this };
+        final HashMap<IntVector3, DetectorRegion[]> regions = regionsByWorld.computeIfAbsent(world, w -> new HashMap<>());
         for (IntVector3 coord : this.coordinates) {
-            BlockLocation block_coord = new BlockLocation(world, coord);
-            DetectorRegion[] regionsAtBlock = regions.compute(block_coord, (key, array) -> {
+            DetectorRegion[] regionsAtBlock = regions.compute(coord, (key, array) -> {
                 if (array == null) {
                     return singleRegion;
                 } else {
@@ -71,19 +70,38 @@ public final class DetectorRegion {
 
     /**
      * Detects all minecarts that are on this region and fires onEnter events.
-     * This should be called after the listeners are set up.
+     * This should be called after the listeners are set up.<br>
+     * <br>
+     * Only the rails occupied by the trains on the same world are checked, rather than
+     * every coordinate of this region. Large regions are therefore not more expensive.
      */
     public void detectMinecarts() {
         //load members
         World w = Bukkit.getServer().getWorld(this.world);
         if (w != null) {
-            WorldRailLookup railLookup = RailLookup.forWorld(w);
-            for (IntVector3 coord : this.coordinates) {
-                List<MinecartMember<?>> members = railLookup.findMembersOnRail(coord);
-                if (!members.isEmpty()) {
-                    for (MinecartMember<?> mm : new ArrayList<>(members)) {
-                        mm.getSignTracker().addToDetectorRegion(this);
-                    }
+            for (MinecartGroup group : MinecartGroup.getGroups().cloneAsIterable()) {
+                if (group.getWorld() == w) {
+                    detectMinecarts(group, this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the members of a group to the detector regions of the rails they occupy.
+     * Uses the detector regions stored in the rail lookup cache for these rails.
+     *
+     * @param group Group whose members to add
+     * @param onlyRegion If not null, only adds members to this detector region
+     */
+    private static void detectMinecarts(MinecartGroup group, DetectorRegion onlyRegion) {
+        if (group.isUnloaded()) {
+            return;
+        }
+        for (TrackedRail rail : new ArrayList<>(group.getRailTracker().getRailInformation())) {
+            for (DetectorRegion region : rail.state.railPiece().detectorRegions()) {
+                if (onlyRegion == null || region == onlyRegion) {
+                    rail.member.getSignTracker().addToDetectorRegion(region);
                 }
             }
         }
@@ -95,11 +113,10 @@ public final class DetectorRegion {
      * @param railLookup
      */
     public static void fillRailLookup(WorldRailLookup railLookup) {
-        String worldName = railLookup.getWorld().getName();
-        for (Map.Entry<BlockLocation, DetectorRegion[]> entry : regions.entrySet()) {
-            BlockLocation block = entry.getKey();
-            if (worldName.equals(block.world)) {
-                railLookup.storeDetectorRegions(block.getCoordinates(), entry.getValue());
+        HashMap<IntVector3, DetectorRegion[]> regions = regionsByWorld.get(railLookup.getWorld().getName());
+        if (regions != null) {
+            for (Map.Entry<IntVector3, DetectorRegion[]> entry : regions.entrySet()) {
+                railLookup.storeDetectorRegions(entry.getKey(), entry.getValue());
             }
         }
     }
@@ -111,13 +128,22 @@ public final class DetectorRegion {
      * @return List of detector regions, empty list if no regions exist
      */
     public static List<DetectorRegion> getRegions(Block at) {
-        DetectorRegion[] regionsAtBlock = regions.get(at);
+        HashMap<IntVector3, DetectorRegion[]> regions = regionsByWorld.get(at.getWorld().getName());
+        DetectorRegion[] regionsAtBlock = (regions == null) ? null : regions.get(new IntVector3(at));
         return regionsAtBlock == null ? Collections.emptyList() : Arrays.asList(regionsAtBlock);
     }
 
+    /**
+     * Detects all minecarts that are on any detector region and fires onEnter events.
+     * Checks the rails occupied by every train once, so this does not become slower
+     * when there are more or larger detector regions.
+     */
     public static void detectAllMinecarts() {
-        for (DetectorRegion region : regionsById.values()) {
-            region.detectMinecarts();
+        if (regionsById.isEmpty()) {
+            return;
+        }
+        for (MinecartGroup group : MinecartGroup.getGroups().cloneAsIterable()) {
+            detectMinecarts(group, null);
         }
     }
 
@@ -142,8 +168,9 @@ public final class DetectorRegion {
 
     public static DetectorRegion create(final String world, final Set<IntVector3> coordinates) {
         //first check if this region is not already defined
+        HashMap<IntVector3, DetectorRegion[]> regions = regionsByWorld.get(world);
         for (IntVector3 coord : coordinates) {
-            DetectorRegion[] list = regions.get(world, coord);
+            DetectorRegion[] list = (regions == null) ? null : regions.get(coord);
             if (list != null) {
                 for (DetectorRegion region : list) {
                     if (!region.coordinates.containsAll(coordinates)) continue;
@@ -162,7 +189,7 @@ public final class DetectorRegion {
 
     public static void init(TrainCarts plugin) {
         regionsById.clear();
-        regions.clear();
+        regionsByWorld.clear();
         new DataReader(plugin, "detectorregions.dat") {
             public void read(DataInputStream stream) throws IOException {
                 int count = stream.readInt();
@@ -179,10 +206,14 @@ public final class DetectorRegion {
                     //create
                     new DetectorRegion(id, world, coords);
                 }
+                int blockCount = 0;
+                for (HashMap<IntVector3, DetectorRegion[]> regions : regionsByWorld.values()) {
+                    blockCount += regions.size();
+                }
                 if (regionsById.size() == 1) {
-                    plugin.log(Level.INFO, regionsById.size() + " detector rail region loaded covering " + regions.size() + " blocks");
+                    plugin.log(Level.INFO, regionsById.size() + " detector rail region loaded covering " + blockCount + " blocks");
                 } else {
-                    plugin.log(Level.INFO, regionsById.size() + " detector rail regions loaded covering " + regions.size() + " blocks");
+                    plugin.log(Level.INFO, regionsById.size() + " detector rail regions loaded covering " + blockCount + " blocks");
                 }
             }
         }.read();
@@ -193,19 +224,24 @@ public final class DetectorRegion {
         if (autosave && !hasChanges) {
             return;
         }
-        new DataWriter(plugin, "detectorregions.dat") {
-            public void write(DataOutputStream stream) throws IOException {
-                stream.writeInt(regionsById.size());
-                for (DetectorRegion region : regionsById.values()) {
-                    StreamUtil.writeUUID(stream, region.id);
-                    stream.writeUTF(region.world);
-                    stream.writeInt(region.coordinates.size());
-                    for (IntVector3 coord : region.coordinates) {
-                        coord.write(stream);
-                    }
+        // Encoded right away, the file is written in the background
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream stream = new DataOutputStream(bytes)) {
+            stream.writeInt(regionsById.size());
+            for (DetectorRegion region : regionsById.values()) {
+                StreamUtil.writeUUID(stream, region.id);
+                stream.writeUTF(region.world);
+                stream.writeInt(region.coordinates.size());
+                for (IntVector3 coord : region.coordinates) {
+                    coord.write(stream);
                 }
             }
-        }.write();
+        } catch (IOException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to encode detector regions", ex);
+            return;
+        }
+        final byte[] data = bytes.toByteArray();
+        plugin.getSaveWriter().write("detector regions", plugin.getDataFile("detectorregions.dat"), () -> data);
         hasChanges = false;
     }
 
@@ -383,10 +419,14 @@ public final class DetectorRegion {
         regionsById.remove(this.id);
         hasChanges = true;
 
+        HashMap<IntVector3, DetectorRegion[]> regions = regionsByWorld.get(this.world);
+        if (regions == null) {
+            return;
+        }
+
         WorldRailLookup lookup = RailLookup.forWorldIfInitialized(Bukkit.getWorld(world));
         for (IntVector3 coord : this.coordinates) {
-            BlockLocation block_coord = new BlockLocation(this.world, coord);
-            DetectorRegion[] regionsAtBlock = regions.computeIfPresent(block_coord, (key, list) -> {
+            DetectorRegion[] regionsAtBlock = regions.computeIfPresent(coord, (key, list) -> {
                 if (list.length == 1 && list[0] == DetectorRegion.this) {
                     return null;
                 } else {
@@ -397,5 +437,8 @@ public final class DetectorRegion {
                 lookup.storeDetectorRegions(coord, regionsAtBlock);
             }
         }
+        if (regions.isEmpty()) {
+            regionsByWorld.remove(this.world);
+        }
     }
 }
@@ -1,5 +1,7 @@
 package com.bergerkiller.bukkit.tc.offline.sign;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
@@ -19,14 +21,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -806,13 +811,13 @@ public class OfflineSignStore {
     private void onEntryAdded(OfflineMetadataEntry<?> entry) {
         allEntries.add(CommonUtil.unsafeCast(entry));
         entry.handlerEntry.entries.add(CommonUtil.unsafeCast(entry));
-        writer.changed();
+        writer.changed(entry);
         entry.callOnAdded();
     }
 
     private void onEntryRemoved(OfflineMetadataEntry<?> entry) {
         if (allEntries.remove(entry)) {
-            writer.changed();
+            writer.changed(entry);
         }
         entry.removed = true;
         entry.callOnRemoved();
@@ -927,14 +932,16 @@ public class OfflineSignStore {
 
     private final class OfflineMetadataEntry<T> implements Entry<T> {
         public OfflineSign sign;
+        public final String metadataTypeName;
         private MetadataHandlerEntry<T> handlerEntry;
         private byte[] encodedData;
         private T metadata;
-        private boolean removed;
+        private volatile boolean removed;
         private boolean addedToHandler;
 
         public OfflineMetadataEntry(OfflineSign sign, MetadataHandlerEntry<T> handlerEntry, T metadata) {
             this.sign = sign;
+            this.metadataTypeName = handlerEntry.metadataTypeName;
             this.handlerEntry = handlerEntry;
             this.encodedData = null;
             this.metadata = metadata;
@@ -942,8 +949,9 @@ public class OfflineSignStore {
             this.addedToHandler = false;
         }
 
-        public OfflineMetadataEntry(OfflineSign sign, byte[] encodedData) {
+        public OfflineMetadataEntry(OfflineSign sign, String metadataTypeName, byte[] encodedData) {
             this.sign = sign;
+            this.metadataTypeName = metadataTypeName;
             this.handlerEntry = null;
             this.encodedData = encodedData;
             this.metadata = null;
@@ -1221,7 +1229,7 @@ public class OfflineSignStore {
                 }
             }
 
-            OfflineSignStore.this.writer.changed();
+            OfflineSignStore.this.writer.changed(this);
         }
 
         @Override
@@ -1230,24 +1238,56 @@ public class OfflineSignStore {
         }
     }
 
+    /**
+     * Writes changes to the sign metadata to disk on a background thread. Changed and
+     * removed entries are appended to a journal file next to the save file, so that the
+     * cost of writing is proportional to the number of changes. When the journal grows
+     * too large compared to the save file, all entries are written to the save file again
+     * and the journal is deleted. This is called compaction.<br>
+     * <br>
+     * The save file stores a generation number that is incremented every compaction, and
+     * the journal stores the generation of the save file it was appended to. This makes
+     * sure a journal left behind after a crash during compaction is never replayed on top
+     * of a newer save file. Every journal record stores a checksum, so that a record only
+     * partially written before a crash is detected and ignored when loading.
+     */
     private class BackgroundWriter {
+        private static final int SAVE_FILE_VERSION = 2;
+        private static final int JOURNAL_VERSION = 1;
+        private static final int RECORD_PUT = 1;
+        private static final int RECORD_REMOVE = 2;
+        private static final long MIN_COMPACTION_SIZE = 256 * 1024; // 256KB
         private Thread thread;
         private final Object lock = new Object();
         private final File saveFile;
+        private final File journalFile;
+        private LinkedHashSet<OfflineMetadataEntry<?>> pendingChanges = new LinkedHashSet<>();
         private volatile boolean savingNeeded = false;
         private volatile boolean shuttingDown = false;
+        private long generation = 0;
+        private long saveFileSize = 0;
+        private long journalSize = 0;
+        private boolean compactionNeeded = false;
 
         public BackgroundWriter(File saveFile) {
             this.saveFile = saveFile;
+            this.journalFile = new File(saveFile.getParentFile(), saveFile.getName() + ".journal");
         }
 
-        public void changed() {
+        public void changed(OfflineMetadataEntry<?> entry) {
             synchronized (lock) {
+                pendingChanges.add(entry);
                 savingNeeded = true;
                 lock.notifyAll();
             }
         }
 
+        private void retryLater() {
+            synchronized (lock) {
+                savingNeeded = true;
+            }
+        }
+
         public void start() {
             this.shuttingDown = false;
             if (this.thread == null) {
@@ -1280,6 +1320,7 @@ public class OfflineSignStore {
             long lastSaveTS = System.currentTimeMillis() - MIN_SAVE_INTERVAL;
             do {
                 boolean doSave = false;
+                List<OfflineMetadataEntry<?>> changes = Collections.emptyList();
                 synchronized (lock) {
                     try {
                         // Wait until a change occurs that must be saved, or shutting down
@@ -1299,43 +1340,50 @@ public class OfflineSignStore {
                     // Track whether saving (and not just shutting down) and reset state
                     doSave = savingNeeded;
                     savingNeeded = false;
+                    if (!pendingChanges.isEmpty()) {
+                        changes = new ArrayList<>(pendingChanges);
+                        pendingChanges = new LinkedHashSet<>();
+                    }
                 }
 
                 // Perform the saving if needed
                 if (doSave) {
                     lastSaveTS = System.currentTimeMillis();
-                    save();
+                    save(changes);
                 }
             } while (!shuttingDown);
+
+            // Leave behind a single save file when shutting down
+            if (journalSize > 0 || compactionNeeded) {
+                compact();
+            }
         }
 
         public void load() {
+            Map<EntryKey, LoadedEntry> entries = new LinkedHashMap<>();
+            generation = 0;
+            saveFileSize = 0;
+            journalSize = 0;
+            compactionNeeded = false;
+
             if (this.saveFile.exists()) {
                 try {
                     try (FileInputStream f_stream = new FileInputStream(this.saveFile);
-                         DataInputStream stream = new DataInputStream(f_stream))
+                         DataInputStream stream = new DataInputStream(new BufferedInputStream(f_stream)))
                     {
                         int versionCode = readVariableLengthInt(stream);
-                        if (versionCode == 1) {
+                        if (versionCode == 1 || versionCode == SAVE_FILE_VERSION) {
+                            // Version 1 save files have no generation and are treated as generation 0
+                            if (versionCode == SAVE_FILE_VERSION) {
+                                generation = stream.readLong();
+                            }
                             while (stream.available() > 0) {
                                 // Read metadata bytes
                                 byte[] encodedData = new byte[readVariableLengthInt(stream)];
                                 stream.readFully(encodedData);
 
-                                // Decode just the sign metadata bit
-                                OfflineSign sign;
-                                String metadataTypeName;
-                                try (ByteArrayInputStream m_b_stream = new ByteArrayInputStream(encodedData);
-                                     InflaterInputStream m_d_stream = new InflaterInputStream(m_b_stream);
-                                     DataInputStream m_stream = new DataInputStream(m_d_stream))
-                                {
-                                    sign = OfflineSign.readFrom(m_stream);
-                                    metadataTypeName = m_stream.readUTF();
-                                }
-
-                                // Import it into the store
-                                OfflineMetadataEntry<Object> newEntry = new OfflineMetadataEntry<Object>(sign, encodedData);
-                                loadEntry(metadataTypeName, newEntry);
+                                LoadedEntry entry = LoadedEntry.decode(encodedData);
+                                entries.put(entry.key, entry);
                             }
                         } else {
                             logger.log(Level.SEVERE, "Failed to read sign metadata: unsupported version");
@@ -1346,11 +1394,170 @@ public class OfflineSignStore {
                 } catch (IOException ex) {
                     logger.log(Level.SEVERE, "Failed to read sign metadata", ex);
                 }
+                saveFileSize = this.saveFile.length();
+            }
+
+            if (this.journalFile.exists()) {
+                replayJournal(entries);
+            }
+
+            // Import all of it into the store
+            for (LoadedEntry entry : entries.values()) {
+                loadEntry(entry.metadataTypeName, new OfflineMetadataEntry<Object>(
+                        entry.sign, entry.metadataTypeName, entry.encodedData));
+            }
+        }
+
+        private void replayJournal(Map<EntryKey, LoadedEntry> entries) {
+            // The journal is kept small by compaction, so it can be read into memory fully
+            byte[] journalData;
+            try {
+                journalData = Files.readAllBytes(this.journalFile.toPath());
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to read sign metadata journal", ex);
+                compactionNeeded = true;
+                return;
+            }
+
+            try (DataInputStream stream = new DataInputStream(new ByteArrayInputStream(journalData))) {
+                int versionCode = readVariableLengthInt(stream);
+                if (versionCode != JOURNAL_VERSION) {
+                    logger.log(Level.SEVERE, "Failed to read sign metadata journal: unsupported version");
+                    compactionNeeded = true;
+                    return;
+                }
+                long journalGeneration = stream.readLong();
+                if (journalGeneration != generation) {
+                    // Left behind when compaction was interrupted, the save file already has these changes
+                    logger.log(Level.WARNING, "Ignoring outdated sign metadata journal");
+                    compactionNeeded = true;
+                    return;
+                }
+
+                long position = journalData.length - stream.available();
+                int numRecords = 0;
+                CRC32 crc = new CRC32();
+                try {
+                    while (stream.available() > 0) {
+                        int recordType = stream.readUnsignedByte();
+                        int length = readVariableLengthInt(stream);
+                        if (length > stream.available()) {
+                            throw new EOFException("Record is incomplete");
+                        }
+                        byte[] data = new byte[length];
+                        stream.readFully(data);
+                        crc.reset();
+                        crc.update(recordType);
+                        crc.update(data, 0, data.length);
+                        if (stream.readInt() != (int) crc.getValue()) {
+                            throw new IOException("Checksum mismatch");
+                        }
+
+                        if (recordType == RECORD_PUT) {
+                            LoadedEntry entry = LoadedEntry.decode(data);
+                            entries.remove(entry.key); // Keeps order of change
+                            entries.put(entry.key, entry);
+                        } else if (recordType == RECORD_REMOVE) {
+                            try (DataInputStream r_stream = new DataInputStream(new ByteArrayInputStream(data))) {
+                                OfflineBlock block = OfflineBlock.readFrom(r_stream);
+                                entries.remove(new EntryKey(block, r_stream.readUTF()));
+                            }
+                        } else {
+                            throw new IOException("Unknown record type " + recordType);
+                        }
+
+                        position = journalData.length - stream.available();
+                        numRecords++;
+                    }
+                } catch (IOException ex) {
+                    // Likely a record that was partially written when the server crashed
+                    logger.log(Level.WARNING, "Sign metadata journal is truncated after " + numRecords +
+                            " changes, the remaining changes are lost (" + ex.getMessage() + ")");
+                    compactionNeeded = true;
+                }
+                journalSize = position;
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to read sign metadata journal", ex);
+                compactionNeeded = true;
+            }
+        }
+
+        /**
+         * Saves changes made to entries. Appends the changes to the journal, or if the
+         * journal is getting too large, writes all entries to the save file.
+         *
+         * @param changes Entries that were added, changed or removed
+         */
+        private void save(List<OfflineMetadataEntry<?>> changes) {
+            if (compactionNeeded || journalSize > Math.max(MIN_COMPACTION_SIZE, saveFileSize / 2)) {
+                compact();
+            } else if (!changes.isEmpty()) {
+                appendToJournal(changes);
+            }
+        }
+
+        private void appendToJournal(List<OfflineMetadataEntry<?>> changes) {
+            final List<OfflineMetadataEntry<?>> encodeFailures = new ArrayList<>();
+            try (FileOutputStream f_stream = new FileOutputStream(this.journalFile, journalSize > 0);
+                 DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(f_stream)))
+            {
+                if (journalSize == 0) {
+                    writeVariableLengthInt(stream, JOURNAL_VERSION);
+                    stream.writeLong(generation);
+                }
+
+                CRC32 crc = new CRC32();
+                for (OfflineMetadataEntry<?> entry : changes) {
+                    int recordType;
+                    byte[] data;
+                    if (entry.isRemoved()) {
+                        recordType = RECORD_REMOVE;
+                        try (ByteArrayOutputStream b_stream = new ByteArrayOutputStream()) {
+                            try (DataOutputStream r_stream = new DataOutputStream(b_stream)) {
+                                OfflineBlock.writeTo(r_stream, entry.sign.getBlock());
+                                r_stream.writeUTF(entry.metadataTypeName);
+                            }
+                            data = b_stream.toByteArray();
+                        }
+                    } else {
+                        recordType = RECORD_PUT;
+                        data = entry.encodeMetadata();
+                        if (data == null) {
+                            encodeFailures.add(entry);
+                            continue;
+                        }
+                    }
+
+                    crc.reset();
+                    crc.update(recordType);
+                    crc.update(data, 0, data.length);
+                    stream.writeByte(recordType);
+                    writeVariableLengthInt(stream, data.length);
+                    stream.write(data);
+                    stream.writeInt((int) crc.getValue());
+                }
+
+                // Make sure it's actually on disk before considering these changes saved
+                stream.flush();
+                f_stream.getFD().sync();
+                journalSize = f_stream.getChannel().size();
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write sign metadata journal", ex);
+
+                // Journal could be corrupted now, write everything to the save file instead
+                compactionNeeded = true;
+                retryLater();
             }
+
+            removeEncodeFailures(encodeFailures);
         }
 
-        public void save() {
+        /**
+         * Writes all entries to the save file and deletes the journal
+         */
+        private void compact() {
             final List<OfflineMetadataEntry<?>> encodeFailures = new ArrayList<>();
+            final long newGeneration = generation + 1;
             File tmpFile = new File(this.saveFile.getParentFile(), this.saveFile.getName() +
                     "." + System.currentTimeMillis() + ".tmp");
 
@@ -1358,9 +1565,10 @@ public class OfflineSignStore {
             boolean saveSuccessful = false;
             try {
                 try (FileOutputStream f_stream = new FileOutputStream(tmpFile);
-                     DataOutputStream stream = new DataOutputStream(f_stream))
+                     DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(f_stream)))
                 {
-                    writeVariableLengthInt(stream, 1);
+                    writeVariableLengthInt(stream, SAVE_FILE_VERSION);
+                    stream.writeLong(newGeneration);
                     for (OfflineMetadataEntry<?> entry : allEntries.cloneAsIterable()) {
                         byte[] encodedData = entry.encodeMetadata();
                         if (encodedData != null) {
@@ -1370,6 +1578,8 @@ public class OfflineSignStore {
                             encodeFailures.add(entry);
                         }
                     }
+                    stream.flush();
+                    f_stream.getFD().sync();
                 }
                 saveSuccessful = true;
             } catch (IOException ex) {
@@ -1377,14 +1587,33 @@ public class OfflineSignStore {
             }
 
             // Swap the tmp and actual save file atomically
+            // Once swapped the journal is outdated, and is deleted
             if (saveSuccessful) {
                 try {
+                    long size = tmpFile.length();
                     atomicMove(tmpFile, saveFile);
+                    generation = newGeneration;
+                    saveFileSize = size;
+                    compactionNeeded = false;
+                    journalSize = 0;
+                    if (journalFile.exists() && !journalFile.delete()) {
+                        logger.log(Level.WARNING, "Failed to delete outdated sign metadata journal");
+                    }
                 } catch (Throwable t) {
                     logger.log(Level.SEVERE, "Failed to finalize writing sign metadata", t);
+                    compactionNeeded = true;
+                    retryLater();
                 }
+            } else {
+                tmpFile.delete();
+                compactionNeeded = true;
+                retryLater();
             }
 
+            removeEncodeFailures(encodeFailures);
+        }
+
+        private void removeEncodeFailures(List<OfflineMetadataEntry<?>> encodeFailures) {
             // If there were entries that couldn't be encoded, clean those up on the main thread later
             if (!encodeFailures.isEmpty()) {
                 CommonUtil.getPluginExecutor(plugin).execute(() -> {
@@ -1394,6 +1623,70 @@ public class OfflineSignStore {
         }
     }
 
+    /**
+     * Uniquely identifies a metadata entry in the save file and journal. Only a single
+     * entry can exist for a metadata type at a sign.
+     */
+    private static final class EntryKey {
+        private final UUID worldUUID;
+        private final IntVector3 position;
+        private final String metadataTypeName;
+
+        public EntryKey(OfflineBlock block, String metadataTypeName) {
+            this.worldUUID = block.getWorldUUID();
+            this.position = block.getPosition();
+            this.metadataTypeName = metadataTypeName;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.position.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (o instanceof EntryKey) {
+                EntryKey other = (EntryKey) o;
+                return this.position.equals(other.position) &&
+                       this.worldUUID.equals(other.worldUUID) &&
+                       this.metadataTypeName.equals(other.metadataTypeName);
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Encoded metadata read from the save file or journal, before it is imported
+     */
+    private static final class LoadedEntry {
+        public final EntryKey key;
+        public final OfflineSign sign;
+        public final String metadataTypeName;
+        public final byte[] encodedData;
+
+        private LoadedEntry(OfflineSign sign, String metadataTypeName, byte[] encodedData) {
+            this.key = new EntryKey(sign.getBlock(), metadataTypeName);
+            this.sign = sign;
+            this.metadataTypeName = metadataTypeName;
+            this.encodedData = encodedData;
+        }
+
+        public static LoadedEntry decode(byte[] encodedData) throws IOException {
+            // Decode just the sign metadata bit
+            try (ByteArrayInputStream m_b_stream = new ByteArrayInputStream(encodedData);
+                 InflaterInputStream m_d_stream = new InflaterInputStream(m_b_stream);
+                 DataInputStream m_stream = new DataInputStream(m_d_stream))
+            {
+                OfflineSign sign = OfflineSign.readFrom(m_stream);
+                String metadataTypeName = m_stream.readUTF();
+                return new LoadedEntry(sign, metadataTypeName, encodedData);
+            }
+        }
+    }
+
     private static class MetadataHandlerEntry<T> {
         public final Class<T> metadataType;
         public final String metadataTypeName;
@@ -4,7 +4,6 @@ import com.bergerkiller.bukkit.common.utils.FaceUtil;
 import org.bukkit.block.BlockFace;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 
 public class PathConnection {
@@ -58,12 +57,4 @@ public class PathConnection {
     public String toString() {
         return "to " + destination.toString() + " going " + this.junctionName + " distance " + this.distance;
     }
-
-    public void writeTo(DataOutputStream stream) throws IOException {
-        stream.writeInt(this.destination.index);
-        stream.writeInt(Integer.MAX_VALUE); // Deprecated
-        stream.writeDouble(this.distance);
-        stream.writeByte(0xFF);
-        stream.writeUTF(this.junctionName);
-    }
 }
@@ -0,0 +1,337 @@
+package com.bergerkiller.bukkit.tc.pathfinding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.bergerkiller.bukkit.common.BlockLocation;
+
+/**
+ * Compact binary storage format of the path finding nodes and connections of all worlds.
+ * The file starts with a table of all strings used (world names, destination names and
+ * junction names) followed by a table of contents with a section for every world.<br>
+ * <br>
+ * Within a world section, nodes are sorted by coordinates and store their coordinates
+ * as a difference with the previous node. Connections refer to nodes by their index in
+ * the section. All integers are stored as variable-length integers. Connection distances
+ * are stored as doubles, so routes found after a reload are the same as before.<br>
+ * <br>
+ * The file is read into memory when opened, and the sections of worlds are only decoded
+ * when the world is first used by the {@link PathProvider}. The file is not kept open,
+ * so it can be replaced while the database is in use.
+ */
+final class PathDatabase {
+    private static final int MAGIC = 0x54435046; // 'TCPF'
+    private static final int VERSION = 3;
+    private static final int VERSION_FLOAT_DISTANCE = 2; // Older version that stored distances as floats
+    private static final int FLAG_SWITCHER = 0x1;
+    private final ByteBuffer buffer;
+    private final int version;
+    private final String[] strings;
+    private final Map<String, ByteBuffer> sections;
+
+    private PathDatabase(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a path finding database file");
+            }
+            this.version = readVarInt(buffer);
+            if (this.version != VERSION && this.version != VERSION_FLOAT_DISTANCE) {
+                throw new IOException("Unsupported path finding database version: " + this.version);
+            }
+
+            // String table
+            this.strings = new String[readVarInt(buffer)];
+            for (int i = 0; i < this.strings.length; i++) {
+                byte[] data = new byte[readVarInt(buffer)];
+                buffer.get(data);
+                this.strings[i] = new String(data, StandardCharsets.UTF_8);
+            }
+
+            // Table of contents, offsets are relative to the end of the table
+            int numWorlds = readVarInt(buffer);
+            String[] worldNames = new String[numWorlds];
+            int[] offsets = new int[numWorlds];
+            int[] lengths = new int[numWorlds];
+            for (int i = 0; i < numWorlds; i++) {
+                worldNames[i] = this.strings[readVarInt(buffer)];
+                offsets[i] = readVarInt(buffer);
+                lengths[i] = readVarInt(buffer);
+            }
+            int dataStart = buffer.position();
+            this.sections = new LinkedHashMap<>(numWorlds);
+            for (int i = 0; i < numWorlds; i++) {
+                ByteBuffer section = buffer.duplicate();
+                section.position(dataStart + offsets[i]);
+                section.limit(dataStart + offsets[i] + lengths[i]);
+                this.sections.put(worldNames[i], section.slice());
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("Path finding database is corrupted", ex);
+        }
+    }
+
+    /**
+     * Checks whether a file is stored in this compact database format. If not, it is
+     * a legacy file written using compressed data streams.
+     *
+     * @param file File to check
+     * @return True if the file exists and is a compact path finding database
+     */
+    public static boolean isDatabaseFile(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream stream = new DataInputStream(new FileInputStream(file))) {
+            return stream.readInt() == MAGIC;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a path finding database file. The file is read into memory, and only the string
+     * table and table of contents are decoded right away.
+     *
+     * @param file File to open
+     * @return opened database
+     * @throws IOException If the file could not be read or is corrupted
+     */
+    public static PathDatabase open(File file) throws IOException {
+        return new PathDatabase(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+    }
+
+    /**
+     * Gets the names of all worlds that have a section in this database
+     *
+     * @return world names
+     */
+    public Set<String> getWorldNames() {
+        return Collections.unmodifiableSet(this.sections.keySet());
+    }
+
+    /**
+     * Gets the total number of bytes of the database
+     *
+     * @return size in bytes
+     */
+    public int getSize() {
+        return this.buffer.capacity();
+    }
+
+    /**
+     * Decodes the nodes and connections stored for a world, and adds them to
+     * the world. Does nothing if no section exists for the world.
+     *
+     * @param world World to load
+     * @return True if the world section was found and loaded
+     * @throws IOException If the world section is corrupted
+     */
+    public boolean load(PathWorld world) throws IOException {
+        ByteBuffer section = this.sections.get(world.getName());
+        if (section == null) {
+            return false;
+        }
+        section = section.duplicate();
+
+        try {
+            // Nodes
+            PathNode[] nodes = new PathNode[readVarInt(section)];
+            int x = 0, y = 0, z = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                int flags = section.get() & 0xFF;
+                int numNames = readVarInt(section);
+                String[] names = new String[numNames];
+                for (int n = 0; n < numNames; n++) {
+                    names[n] = this.strings[readVarInt(section)];
+                }
+                x += readSignedVarInt(section);
+                y += readSignedVarInt(section);
+                z += readSignedVarInt(section);
+
+                PathNode node = world.loadNode(new BlockLocation(world.getName(), x, y, z));
+                if ((flags & FLAG_SWITCHER) != 0) {
+                    node.addSwitcher();
+                }
+                for (String name : names) {
+                    node.addName(name);
+                }
+                nodes[i] = node;
+            }
+
+            // Connections
+            for (PathNode node : nodes) {
+                int numConnections = readVarInt(section);
+                for (int c = 0; c < numConnections; c++) {
+                    PathNode destination = nodes[readVarInt(section)];
+                    String junctionName = this.strings[readVarInt(section)];
+                    double distance = (this.version == VERSION_FLOAT_DISTANCE) ? section.getFloat() : section.getDouble();
+                    node.addNeighbourFast(new PathConnection(destination, distance, junctionName));
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new IOException("Path finding nodes of world " + world.getName() + " are corrupted", ex);
+        }
+        return true;
+    }
+
+    /**
+     * Encodes all the nodes and connections of the worlds specified into the data
+     * of a file that can be opened with {@link #open(File)}
+     *
+     * @param worlds Worlds to encode
+     * @return Encoded file data
+     * @throws IOException If encoding fails
+     */
+    public static byte[] encode(Collection<PathWorld> worlds) throws IOException {
+        StringTable strings = new StringTable();
+
+        // Encode all world sections first, which fills the string table
+        List<String> worldNames = new ArrayList<>(worlds.size());
+        List<byte[]> sections = new ArrayList<>(worlds.size());
+        for (PathWorld world : worlds) {
+            PathRoutingGraph graph = world.getRoutingGraph();
+            List<PathNode> nodes = new ArrayList<>(world.getNodes());
+            if (nodes.isEmpty()) {
+                continue;
+            }
+            nodes.sort(Comparator.<PathNode>comparingInt(n -> n.location.x)
+                    .thenComparingInt(n -> n.location.z)
+                    .thenComparingInt(n -> n.location.y));
+
+            // Maps node index in the graph to the index of the node in the file
+            int[] fileIndices = new int[graph.getNodeCapacity()];
+            Arrays.fill(fileIndices, -1);
+            for (int i = 0; i < nodes.size(); i++) {
+                fileIndices[nodes.get(i).index] = i;
+            }
+
+            ByteArrayOutputStream sectionBytes = new ByteArrayOutputStream(nodes.size() * 16);
+            DataOutputStream stream = new DataOutputStream(sectionBytes);
+            writeVarInt(stream, nodes.size());
+            int x = 0, y = 0, z = 0;
+            for (PathNode node : nodes) {
+                stream.writeByte(node.containsSwitcher() ? FLAG_SWITCHER : 0);
+                writeVarInt(stream, node.getNames().size());
+                for (String name : node.getNames()) {
+                    writeVarInt(stream, strings.get(name));
+                }
+                writeSignedVarInt(stream, node.location.x - x);
+                writeSignedVarInt(stream, node.location.y - y);
+                writeSignedVarInt(stream, node.location.z - z);
+                x = node.location.x;
+                y = node.location.y;
+                z = node.location.z;
+            }
+            for (PathNode node : nodes) {
+                List<PathConnection> connections = new ArrayList<>(node.getNeighbours());
+                connections.removeIf(c -> !graph.contains(c.destination));
+                writeVarInt(stream, connections.size());
+                for (PathConnection connection : connections) {
+                    writeVarInt(stream, fileIndices[connection.destination.index]);
+                    writeVarInt(stream, strings.get(connection.junctionName));
+                    stream.writeDouble(connection.distance);
+                }
+            }
+            stream.flush();
+
+            strings.get(world.getName());
+            worldNames.add(world.getName());
+            sections.add(sectionBytes.toByteArray());
+        }
+
+        // Write the header, table of contents and world sections
+        int sectionsSize = 0;
+        for (byte[] section : sections) {
+            sectionsSize += section.length;
+        }
+        ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(sectionsSize + 1024);
+        try (DataOutputStream stream = new DataOutputStream(fileBytes)) {
+            stream.writeInt(MAGIC);
+            writeVarInt(stream, VERSION);
+            writeVarInt(stream, strings.values.size());
+            for (String value : strings.values) {
+                byte[] data = value.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(stream, data.length);
+                stream.write(data);
+            }
+            writeVarInt(stream, sections.size());
+            int offset = 0;
+            for (int i = 0; i < sections.size(); i++) {
+                writeVarInt(stream, strings.get(worldNames.get(i)));
+                writeVarInt(stream, offset);
+                writeVarInt(stream, sections.get(i).length);
+                offset += sections.get(i).length;
+            }
+            for (byte[] section : sections) {
+                stream.write(section);
+            }
+        }
+        return fileBytes.toByteArray();
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int readSignedVarInt(ByteBuffer buffer) {
+        int value = readVarInt(buffer);
+        return (value >>> 1) ^ -(value & 1); // zig-zag decoding
+    }
+
+    private static void writeVarInt(DataOutputStream stream, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            stream.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        stream.writeByte(value);
+    }
+
+    private static void writeSignedVarInt(DataOutputStream stream, int value) throws IOException {
+        writeVarInt(stream, (value << 1) ^ (value >> 31)); // zig-zag encoding
+    }
+
+    /**
+     * Assigns a unique index to every distinct String that is written
+     */
+    private static final class StringTable {
+        public final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        public int get(String value) {
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = values.size();
+                values.add(value);
+                indices.put(value, index);
+            }
+            return index.intValue();
+        }
+    }
+}
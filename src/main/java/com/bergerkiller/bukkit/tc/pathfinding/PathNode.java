@@ -1,6 +1,7 @@
 package com.bergerkiller.bukkit.tc.pathfinding;
 
 import com.bergerkiller.bukkit.common.BlockLocation;
+import com.bergerkiller.bukkit.tc.TCConfig;
 import com.bergerkiller.bukkit.tc.TrainCarts;
 import com.bergerkiller.bukkit.tc.events.SignActionEvent;
 
@@ -12,16 +13,16 @@ import java.util.logging.Level;
 public class PathNode {
     private final PathWorld world;
     public final BlockLocation location;
-    private final Set<String> names = new HashSet<>();
+    private static final String[] NO_NAMES = new String[0];
+    private String[] names = NO_NAMES; // Almost always 0 or 1 names, so an array uses less memory
     private final List<PathConnection> neighbors = new ArrayList<>(3);
     public int index;
-    private double lastDistance;
-    private PathConnection lastTaken;
     private boolean isRailSwitchable;
 
     protected PathNode(PathWorld world, BlockLocation location) {
         this.world = world;
         this.location = location;
+        this.index = -1;
         this.isRailSwitchable = false;
     }
 
@@ -90,31 +91,6 @@ public class PathNode {
         return TrainCarts.plugin.getPathProvider().getWorld(location.world).getOrCreateAtRail(location);
     }
 
-    private static double getDistanceTo(PathConnection from, PathConnection conn, double currentDistance, double maxDistance, PathNode destination) {
-        final PathNode node = conn.destination;
-        currentDistance += conn.distance;
-        // Consider taking turns as one distance longer
-        // This avoids the excessive use of turns in 2-way 'X' intersections
-        if (destination == node) {
-            return currentDistance;
-        }
-        // Initial distance check before continuing
-        if (node.lastDistance < currentDistance || currentDistance > maxDistance) {
-            return Double.MAX_VALUE;
-        }
-        node.lastDistance = currentDistance;
-        // Check all neighbors and obtain the lowest distance recursively
-        double distance;
-        for (PathConnection connection : node.neighbors) {
-            distance = getDistanceTo(conn, connection, currentDistance, maxDistance, destination);
-            if (distance < maxDistance) {
-                maxDistance = distance;
-                node.lastTaken = connection;
-            }
-        }
-        return maxDistance;
-    }
-
     /**
      * Gets the world which this node is part of
      * 
@@ -142,25 +118,11 @@ public class PathNode {
      * @return A connection, or null if none could be found
      */
     public PathConnection findConnection(PathNode destination) {
-        for (PathNode node : world.getNodes()) {
-            node.lastDistance = Double.MAX_VALUE;
-            node.lastTaken = null;
-        }
-        double minDistance = Double.MAX_VALUE;
-        double distance;
-        final PathConnection from = new PathConnection(this, 0, "");
-        for (PathConnection connection : this.neighbors) {
-            distance = getDistanceTo(from, connection, 0.0, minDistance, destination);
-            if (distance < minDistance) {
-                minDistance = distance;
-                this.lastTaken = connection;
-            }
-        }
-        if (this.lastTaken == null) {
-            return null;
-        } else {
-            return new PathConnection(destination, minDistance, this.lastTaken.junctionName);
+        PathRoutingTable table = world.getRoutingTable(destination);
+        if (table != null) {
+            return table.getConnection(this);
         }
+        return world.getRoutingGraph().findConnection(this, destination, TCConfig.pathFindingUseHeuristic);
     }
 
     /**
@@ -170,18 +132,7 @@ public class PathNode {
      * @return the route taken, or an empty array if none could be found
      */
     public PathConnection[] findRoute(PathNode destination) {
-        if (findConnection(destination) == null) {
-            return new PathConnection[0];
-        }
-        List<PathConnection> route = new ArrayList<>();
-        PathConnection conn = this.lastTaken;
-        while (conn != null) {
-            route.add(conn);
-            PathNode connDest = conn.destination;
-            conn = connDest.lastTaken;
-            connDest.lastTaken = null; // Avoid infinite loops
-        }
-        return route.toArray(new PathConnection[0]);
+        return world.getRoutingGraph().findRoute(this, destination, TCConfig.pathFindingUseHeuristic);
     }
 
     /**
@@ -212,12 +163,26 @@ public class PathNode {
         conn = new PathConnection(to, distance, junctionName);
         addNeighbourFast(conn);
         world.getProvider().scheduleNodeIfNotRecentlyRouted(to);
-        world.getProvider().markChanged();
         return conn;
     }
 
     protected void addNeighbourFast(PathConnection connection) {
+        world.invalidateRoutingTables(connection.destination);
         this.neighbors.add(connection);
+        world.markChanged();
+    }
+
+    /**
+     * Removes all connections from this node to other nodes that are reached
+     * by taking a particular junction.
+     *
+     * @param junctionName Name of the junction
+     */
+    public void removeNeighbours(String junctionName) {
+        world.invalidateRoutingTables(this);
+        if (this.neighbors.removeIf(conn -> conn.junctionName.equals(junctionName))) {
+            world.markChanged();
+        }
     }
 
     /**
@@ -225,6 +190,8 @@ public class PathNode {
      * connection from those other nodes to this node are forgotten too.
      */
     public void clear() {
+        world.invalidateRoutingTables(this);
+        world.removeWalkedRails(this);
         this.neighbors.clear();
         for (PathNode node : world.getNodes()) {
             Iterator<PathConnection> iter = node.neighbors.iterator();
@@ -234,7 +201,7 @@ public class PathNode {
                 }
             }
         }
-        world.getProvider().markChanged();
+        world.markChanged();
     }
 
     /**
@@ -244,18 +211,27 @@ public class PathNode {
      * @param name to remove
      */
     public void removeName(String name) {
-        if (!this.names.remove(name)) {
+        int nameIndex = Arrays.asList(this.names).indexOf(name);
+        if (nameIndex == -1) {
             return;
         }
+        if (this.names.length == 1) {
+            this.names = NO_NAMES;
+        } else {
+            String[] newNames = new String[this.names.length - 1];
+            System.arraycopy(this.names, 0, newNames, 0, nameIndex);
+            System.arraycopy(this.names, nameIndex + 1, newNames, nameIndex, newNames.length - nameIndex);
+            this.names = newNames;
+        }
         world.removeNodeName(this, name);
         if (PathProvider.DEBUG_MODE) {
             String dbg = "NODE " + location + " NO LONGER HAS NAME " + name;
-            if (this.names.isEmpty()) {
+            if (this.names.length == 0) {
                 dbg += " AND IS NOW BEING REMOVED (NO NAMES)";
             }
             world.getTrainCarts().log(Level.INFO, dbg);
         }
-        if (this.names.isEmpty() && !this.containsSwitcher()) {
+        if (this.names.length == 0 && !this.containsSwitcher()) {
             this.remove();
         }
     }
@@ -275,7 +251,12 @@ public class PathNode {
      * @return True if the name is contained, False if not
      */
     public boolean containsName(String name) {
-        return this.names.contains(name);
+        for (String n : this.names) {
+            if (n.equals(name)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -285,11 +266,11 @@ public class PathNode {
      * @return True if only a switcher sign is contained, False if not
      */
     public boolean containsOnlySwitcher() {
-        return this.names.isEmpty() && this.containsSwitcher();
+        return this.names.length == 0 && this.containsSwitcher();
     }
 
     public Collection<String> getNames() {
-        return this.names;
+        return Collections.unmodifiableList(Arrays.asList(this.names));
     }
 
     public Collection<PathConnection> getNeighbours() {
@@ -383,6 +364,8 @@ public class PathNode {
         // Remove all the reachable nodes we have collected, deleting the entire network
         // Schedule all these nodes for path finding
         for (PathNode node : reachable) {
+            world.invalidateRoutingTables(node);
+            world.removeWalkedRails(node);
             node.neighbors.clear();
             world.removeFromMapping(node);
             world.getProvider().discoverFromRail(node.location);
@@ -434,8 +417,8 @@ public class PathNode {
      * @return Reverse-lookup-able Node name
      */
     public String getName() {
-        if (!this.names.isEmpty()) {
-            return this.names.iterator().next();
+        if (this.names.length != 0) {
+            return this.names[0];
         } else if (this.containsSwitcher()) {
             return this.location.toString();
         } else {
@@ -451,16 +434,16 @@ public class PathNode {
      */
     public String getDisplayName() {
         // No name at all - use location as name
-        if (this.names.isEmpty()) {
+        if (this.names.length == 0) {
             return "[" + this.location.x + "/" + this.location.y + "/" + this.location.z + "]";
         }
 
-        if (this.names.size() == 1) {
+        if (this.names.length == 1) {
             // Show this one name
-            return this.names.iterator().next();
+            return this.names[0];
         } else {
             // Show a list of names
-            StringBuilder builder = new StringBuilder(this.names.size() * 15);
+            StringBuilder builder = new StringBuilder(this.names.length * 15);
             builder.append('{');
             for (String name : this.names) {
                 if (builder.length() > 1) {
@@ -479,7 +462,9 @@ public class PathNode {
     }
 
     public void addName(String name) {
-        if (this.names.add(name)) {
+        if (!this.containsName(name)) {
+            this.names = Arrays.copyOf(this.names, this.names.length + 1);
+            this.names[this.names.length - 1] = name;
             if (PathProvider.DEBUG_MODE) {
                 world.getTrainCarts().log(Level.INFO, "NODE AT " + this.location.toString() + " ADDED DESTINATION " + name);
             }
@@ -3,8 +3,6 @@ package com.bergerkiller.bukkit.tc.pathfinding;
 import com.bergerkiller.bukkit.common.BlockLocation;
 import com.bergerkiller.bukkit.common.Task;
 import com.bergerkiller.bukkit.common.config.CompressedDataReader;
-import com.bergerkiller.bukkit.common.config.CompressedDataWriter;
-import com.bergerkiller.bukkit.common.utils.StringUtil;
 import com.bergerkiller.bukkit.tc.TCConfig;
 import com.bergerkiller.bukkit.tc.TrainCarts;
 import com.bergerkiller.bukkit.tc.controller.components.RailJunction;
@@ -12,6 +10,7 @@ import com.bergerkiller.bukkit.tc.controller.components.RailPath;
 import com.bergerkiller.bukkit.tc.controller.components.RailPiece;
 import com.bergerkiller.bukkit.tc.controller.components.RailState;
 import com.bergerkiller.bukkit.tc.events.SignActionEvent;
+import com.bergerkiller.bukkit.tc.rails.BlockPositionHashMap;
 import com.bergerkiller.bukkit.tc.rails.RailLookup;
 import com.bergerkiller.bukkit.tc.rails.type.RailType;
 import com.bergerkiller.bukkit.tc.signactions.SignAction;
@@ -28,9 +27,10 @@ import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.entity.Player;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -80,6 +80,16 @@ public class PathProvider extends Task implements TrainCarts.Provider {
      */
     private Set<CommandSender> sendersToNotifyOfCompletion = new HashSet<>();
     private boolean hasChanges = false;
+    /**
+     * Path finding database file read into memory, of which the nodes of worlds are loaded
+     * when first used. Is null once all worlds are loaded.
+     */
+    private PathDatabase database = null;
+    /**
+     * Whether rail information was looked up while routing since the provider last fell idle.
+     * The rail cache is then refreshed once routing completes.
+     */
+    private boolean hasVisitedRails = false;
     private int maxProcessingPerTick = DEFAULT_MAX_PROCESSING_PER_TICK;
 
     public PathProvider(TrainCarts plugin) {
@@ -201,10 +211,33 @@ public class PathProvider extends Task implements TrainCarts.Provider {
     public void enable(String filename) {
         this.start(1, 1);
 
+        // clear all previous data by clearing the worlds mapping
+        this.worlds.clear();
+        this.database = null;
+
+        File file = new File(filename);
+        if (PathDatabase.isDatabaseFile(file)) {
+            // Compact format, the nodes of worlds are loaded when the world is first used
+            try {
+                this.database = PathDatabase.open(file);
+            } catch (IOException ex) {
+                getTrainCarts().getLogger().log(Level.SEVERE, "Failed to read path finding nodes from " + filename, ex);
+            }
+        } else {
+            enableLegacy(filename);
+        }
+
+        hasChanges = false;
+
+        if (TCConfig.rerouteOnStartup) {
+            reroute();
+        }
+    }
+
+    // Reads the legacy format, which was written using compressed data streams
+    private void enableLegacy(String filename) {
         new CompressedDataReader(filename) {
             public void read(DataInputStream stream) throws IOException {
-                // clear all previous data by clearing the worlds mapping
-                worlds.clear();
 
                 // Initializing the nodes
                 int count = stream.readInt();
@@ -241,72 +274,29 @@ public class PathProvider extends Task implements TrainCarts.Provider {
                 scheduledNodesSinceIdle.clear();
             }
         }.read();
-
-        hasChanges = false;
-
-        if (TCConfig.rerouteOnStartup) {
-            reroute();
-        }
     }
 
     public void disable() {
         this.stop();
 
-        for (PathWorld world : this.getWorlds()) {
+        for (PathWorld world : this.worlds.values()) {
             world.clearAll();
         }
+        this.database = null;
     }
 
     public void save(boolean autosave, String filename) {
         if (autosave && !hasChanges) {
             return;
         }
-        new CompressedDataWriter(filename) {
-            public void write(DataOutputStream stream) throws IOException {
-                // Compute and write total amount of nodes
-                int totalNodeCount = 0;
-                for (PathWorld world : getWorlds()) {
-                    totalNodeCount += world.getNodes().size();
-                }
-                stream.writeInt(totalNodeCount);
-
-                // Generate indices
-                int i = 0;
-                for (PathWorld world : getWorlds()) {
-                    for (PathNode node : world.getNodes()) {
-                        node.index = i;
-                        if (node.containsSwitcher()) {
-                            if (node.getNames().isEmpty()) {
-                                // Only switcher sign, write an empty String
-                                stream.writeUTF("");
-                            } else {
-                                // Switcher and destination sign are both at the same block
-                                // To indicate that, write the switcher name fallback in addition to the names
-                                stream.writeUTF(SWITCHER_NAME_FALLBACK + "\n" + StringUtil.join("\n", node.getNames()));
-                            }
-                        } else {
-                            // Only destination sign(s), write names
-                            stream.writeUTF(StringUtil.join("\n", node.getNames()));
-                        }
-                        stream.writeUTF(node.location.world);
-                        stream.writeInt(node.location.x);
-                        stream.writeInt(node.location.y);
-                        stream.writeInt(node.location.z);
-                        i++;
-                    }
-                }
-
-                // Write out connections
-                for (PathWorld world : getWorlds()) {
-                    for (PathNode node : world.getNodes()) {
-                        stream.writeInt(node.getNeighbours().size());
-                        for (PathConnection conn : node.getNeighbours()) {
-                            conn.writeTo(stream);
-                        }
-                    }
-                }
-            }
-        }.write();
+        try {
+            // Encoding is fast, but must be done while the nodes are not changing
+            final byte[] data = PathDatabase.encode(getWorlds());
+            getTrainCarts().getSaveWriter().write("path finding nodes", new File(filename), () -> data);
+        } catch (IOException ex) {
+            getTrainCarts().getLogger().log(Level.SEVERE, "Failed to encode path finding nodes for saving to " + filename, ex);
+            return;
+        }
         hasChanges = false;
     }
     
@@ -316,6 +306,14 @@ public class PathProvider extends Task implements TrainCarts.Provider {
      * @return worlds
      */
     public Collection<PathWorld> getWorlds() {
+        // Load the nodes of all worlds that have not been used yet
+        PathDatabase database = this.database;
+        if (database != null) {
+            for (String worldName : database.getWorldNames()) {
+                getWorld(worldName);
+            }
+            this.database = null; // Releases the file data, all worlds are decoded
+        }
         return this.worlds.values();
     }
 
@@ -326,7 +324,27 @@ public class PathProvider extends Task implements TrainCarts.Provider {
      * @return PathWorld instance for the world with worldName
      */
     public PathWorld getWorld(String worldName) {
-        return this.worlds.computeIfAbsent(worldName, name -> new PathWorld(this, name));
+        PathWorld world = this.worlds.get(worldName);
+        if (world == null) {
+            world = new PathWorld(this, worldName);
+            this.worlds.put(worldName, world);
+            if (this.database != null) {
+                loadWorld(this.database, world);
+            }
+        }
+        return world;
+    }
+
+    private void loadWorld(PathDatabase database, PathWorld world) {
+        // Loading nodes from file does not count as a change that must be saved
+        boolean hadChanges = this.hasChanges;
+        try {
+            database.load(world);
+        } catch (IOException ex) {
+            getTrainCarts().getLogger().log(Level.SEVERE, "Failed to read path finding nodes of world " + world.getName(), ex);
+            world.clearAll();
+        }
+        this.hasChanges = hadChanges;
     }
 
     /**
@@ -458,12 +476,22 @@ public class PathProvider extends Task implements TrainCarts.Provider {
     public void run() {
         if (this.pendingOperations.isEmpty() && !this.pendingDiscovery.isEmpty()) {
             addNewlyDiscovered();
+            this.hasVisitedRails = true;
         }
         if (this.pendingOperations.isEmpty()) {
             addPendingNodes();
         }
         if (this.pendingOperations.isEmpty()) {
             this.scheduledNodesSinceIdle.clear();
+
+            // Wipe any rail and sign caches we have polluted with temporary block data, once.
+            // Buckets that are no longer used by trains would expire on their own as well,
+            // but this makes sure rail information loaded while routing is not kept around.
+            if (this.hasVisitedRails) {
+                this.hasVisitedRails = false;
+                RailLookup.forceRecalculation();
+            }
+
             {
                 List<CommandSender> senders = new ArrayList<>(this.sendersToNotifyOfCompletion);
                 this.sendersToNotifyOfCompletion.clear();
@@ -477,10 +505,19 @@ public class PathProvider extends Task implements TrainCarts.Provider {
                     sender.sendMessage(ChatColor.GREEN + "Train rerouting completed!");
                 }
             }
+
+            // While idle, compute the routing tables of destinations that lack one
+            final long startTime = System.currentTimeMillis();
+            for (PathWorld world : this.worlds.values()) {
+                if (!world.computeRoutingTables(startTime, this.maxProcessingPerTick)) {
+                    break; // Ran out of time
+                }
+            }
             return;
         }
         boolean done;
         final long startTime = System.currentTimeMillis();
+        this.hasVisitedRails = true;
         while (!this.pendingOperations.isEmpty()) {
             PathFindOperation operation = this.pendingOperations.peek();
             done = false;
@@ -500,9 +537,9 @@ public class PathProvider extends Task implements TrainCarts.Provider {
             }
         }
 
-        // Important: wipe any rail and sign caches we have polluted with temporary block data
-        // This will momentarily cause the plugin to run slower, but we must do this or risk out of memory!
-        RailLookup.forceRecalculation();
+        // Note: rail and sign caches polluted with temporary block data are not wiped here.
+        // Unused cached rails expire within a few ticks by themselves, which keeps memory
+        // usage bounded, while trains keep using the cache during long reroutes.
     }
 
     // Discovers new switchers and destination signs. Stops upon the first new node found.
@@ -625,6 +662,8 @@ public class PathProvider extends Task implements TrainCarts.Provider {
         private final PathNode startNode;
         private final String junctionName;
         private final PathRoutingHandler.PathRouteEvent routeEvent; // re-used
+        private long[] walkedRails = new long[32];
+        private int walkedRailsCount = 0;
 
         public PathFindOperation(PathProvider provider, PathNode startNode, RailState state, RailJunction junction) {
             this.p = new TrackWalkingPoint(state);
@@ -652,8 +691,15 @@ public class PathProvider extends Task implements TrainCarts.Provider {
                 return true; // Abort. World not available.
             }
             if (!this.p.moveFull()) {
-                return true;
+                return finish();
+            }
+
+            // Remember the rails walked, so that a change to them re-routes this junction
+            Block railBlock = this.p.state.railBlock();
+            if (this.walkedRailsCount == this.walkedRails.length) {
+                this.walkedRails = Arrays.copyOf(this.walkedRails, this.walkedRailsCount * 2);
             }
+            this.walkedRails[this.walkedRailsCount++] = BlockPositionHashMap.key(railBlock.getX(), railBlock.getY(), railBlock.getZ());
 
             // Handle event
             routeEvent.reset(this.p.state);
@@ -678,16 +724,22 @@ public class PathProvider extends Task implements TrainCarts.Provider {
                     routeEvent.provider().getTrainCarts().log(Level.INFO, "MADE CONNECTION FROM " +
                             startNode.getDisplayName() + " TO " + foundNode.getDisplayName());
                 }
-                return true; // Finished
+                return finish();
             }
 
             // If route blocked, finish routing here
             if (routeEvent.isBlocked()) {
-                return true;
+                return finish();
             }
 
             return false;
         }
+
+        private boolean finish() {
+            this.startNode.getWorld().addWalkedRails(this.startNode, this.junctionName,
+                    Arrays.copyOf(this.walkedRails, this.walkedRailsCount));
+            return true;
+        }
     }
 
     /**
@@ -0,0 +1,438 @@
+package com.bergerkiller.bukkit.tc.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compact, immutable snapshot of all the nodes and connections of a {@link PathWorld}.
+ * Nodes are stored by their {@link PathNode#index}, which is assigned by the world and
+ * stays the same for as long as the node exists. Connections are stored as a flat
+ * int-indexed adjacency array. Route queries are performed using Dijkstra's
+ * algorithm with a binary heap, optionally guided by a block-distance (A*) heuristic.<br>
+ * <br>
+ * All the state used during a query is stored in a separate search instance, so the
+ * nodes themselves are never modified while searching. The graph must be compiled
+ * again when nodes or connections change.
+ */
+public final class PathRoutingGraph {
+    private static final int[] NO_ROUTE = new int[0];
+    private final PathNode[] nodes;
+    private final int[] nodeX, nodeY, nodeZ;
+    private final int[] edgeStart; // index of first edge of a node, length is nodes + 1
+    private final int[] reverseEdgeStart; // index of first incoming edge of a node, length is nodes + 1
+    private final int[] reverseEdges; // edges sorted by target node
+    private final int[] edgeSource;
+    private final int[] edgeTarget;
+    private final double[] edgeDistance;
+    private final PathConnection[] edgeConnections;
+    private Search cachedSearch = null;
+
+    private PathRoutingGraph(PathNode[] nodes) {
+        int numNodes = nodes.length;
+        this.nodes = nodes;
+        this.nodeX = new int[numNodes];
+        this.nodeY = new int[numNodes];
+        this.nodeZ = new int[numNodes];
+        this.edgeStart = new int[numNodes + 1];
+        this.reverseEdgeStart = new int[numNodes + 1];
+
+        // Collect all connections to nodes that are part of this graph
+        List<PathConnection> connections = new ArrayList<>(numNodes * 2);
+        IntArrayBuilder sources = new IntArrayBuilder(numNodes * 2);
+        for (int i = 0; i < numNodes; i++) {
+            edgeStart[i] = connections.size();
+            PathNode node = nodes[i];
+            if (node == null) {
+                continue; // Unused index
+            }
+            nodeX[i] = node.location.x;
+            nodeY[i] = node.location.y;
+            nodeZ[i] = node.location.z;
+            for (PathConnection connection : node.getNeighbours()) {
+                if (contains(connection.destination)) {
+                    connections.add(connection);
+                    sources.add(i);
+                }
+            }
+        }
+        edgeStart[numNodes] = connections.size();
+
+        int numEdges = connections.size();
+        this.edgeSource = sources.toArray();
+        this.edgeTarget = new int[numEdges];
+        this.edgeDistance = new double[numEdges];
+        this.edgeConnections = connections.toArray(new PathConnection[numEdges]);
+        for (int e = 0; e < numEdges; e++) {
+            PathConnection connection = edgeConnections[e];
+            edgeTarget[e] = connection.destination.index;
+            edgeDistance[e] = connection.distance;
+        }
+
+        // Counting sort of all edges by their target node, for searching in reverse
+        this.reverseEdges = new int[numEdges];
+        for (int e = 0; e < numEdges; e++) {
+            reverseEdgeStart[edgeTarget[e] + 1]++;
+        }
+        for (int i = 0; i < numNodes; i++) {
+            reverseEdgeStart[i + 1] += reverseEdgeStart[i];
+        }
+        int[] fill = Arrays.copyOf(reverseEdgeStart, numNodes);
+        for (int e = 0; e < numEdges; e++) {
+            reverseEdges[fill[edgeTarget[e]]++] = e;
+        }
+    }
+
+    /**
+     * Compiles a new routing graph from the nodes specified. Nodes are stored at
+     * their {@link PathNode#index}. Connections to nodes not part of the collection
+     * are omitted.
+     *
+     * @param nodes Nodes to compile
+     * @param capacity Number of node indices in use, must be larger than all node indices
+     * @return routing graph
+     */
+    public static PathRoutingGraph compile(Collection<PathNode> nodes, int capacity) {
+        PathNode[] nodesByIndex = new PathNode[capacity];
+        for (PathNode node : nodes) {
+            nodesByIndex[node.index] = node;
+        }
+        return new PathRoutingGraph(nodesByIndex);
+    }
+
+    /**
+     * Gets the number of node indices of this graph. Not all indices
+     * have to be in use by a node.
+     *
+     * @return node index capacity
+     */
+    public int getNodeCapacity() {
+        return nodes.length;
+    }
+
+    /**
+     * Gets the number of connections between nodes stored in this graph
+     *
+     * @return connection count
+     */
+    public int getConnectionCount() {
+        return edgeTarget.length;
+    }
+
+    /**
+     * Gets the node stored at a particular index
+     *
+     * @param index Index of the node, equal to {@link PathNode#index}
+     * @return node at this index, or null if the index is not in use
+     */
+    public PathNode getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * Checks whether a node is part of this graph
+     *
+     * @param node Node to check
+     * @return True if the node is part of this graph
+     */
+    public boolean contains(PathNode node) {
+        int index = node.index;
+        return index >= 0 && index < nodes.length && nodes[index] == node;
+    }
+
+    /**
+     * Finds the shortest connection from one node to another. The connection that is returned
+     * has the destination node, the total distance to that node, and the junction name
+     * that must be taken at the start node.
+     *
+     * @param from Start node
+     * @param destination Destination node to reach
+     * @param useHeuristic Whether to guide the search using the block distance to the destination.
+     *                     This is faster, but can pick a sub-optimal route when connections are
+     *                     shorter than the distance between the nodes, such as with teleporting rails.
+     * @return shortest connection, or null if the destination can not be reached
+     */
+    public PathConnection findConnection(PathNode from, PathNode destination, boolean useHeuristic) {
+        int[] route = findEdges(from, destination, useHeuristic);
+        if (route.length == 0) {
+            return null;
+        }
+        double totalDistance = 0.0;
+        for (int e : route) {
+            totalDistance += edgeDistance[e];
+        }
+        return new PathConnection(destination, totalDistance, edgeConnections[route[0]].junctionName);
+    }
+
+    /**
+     * Finds the exact route (all connections) to take to reach a destination from a start node
+     *
+     * @param from Start node
+     * @param destination Destination node to reach
+     * @param useHeuristic Whether to guide the search using the block distance to the destination
+     * @return the route taken, or an empty array if none could be found
+     * @see #findConnection(PathNode, PathNode, boolean)
+     */
+    public PathConnection[] findRoute(PathNode from, PathNode destination, boolean useHeuristic) {
+        int[] route = findEdges(from, destination, useHeuristic);
+        PathConnection[] result = new PathConnection[route.length];
+        for (int i = 0; i < route.length; i++) {
+            result[i] = edgeConnections[route[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Computes the junction to take and the distance to travel at every node of this graph,
+     * to reach a single destination node.
+     *
+     * @param destination Destination node to reach
+     * @return routing table for reaching the destination
+     */
+    public PathRoutingTable computeRoutingTable(PathNode destination) {
+        String[] junctions = new String[nodes.length];
+        double[] distances = new double[nodes.length];
+        if (contains(destination)) {
+            Search search = cachedSearch;
+            if (search == null) {
+                search = new Search(nodes.length);
+            } else {
+                cachedSearch = null;
+            }
+            try {
+                search.runReverse(destination.index, junctions, distances);
+            } finally {
+                cachedSearch = search;
+            }
+        }
+        return new PathRoutingTable(destination, junctions, distances);
+    }
+
+    private int[] findEdges(PathNode from, PathNode destination, boolean useHeuristic) {
+        if (!contains(from) || !contains(destination)) {
+            return NO_ROUTE;
+        }
+
+        // Re-use the same search state when not already in use. Queries can only
+        // be nested if done from within a routing handler, which is very rare.
+        Search search = cachedSearch;
+        if (search == null) {
+            search = new Search(nodes.length);
+        } else {
+            cachedSearch = null;
+        }
+        try {
+            return search.run(from.index, destination.index, useHeuristic);
+        } finally {
+            cachedSearch = search;
+        }
+    }
+
+    /**
+     * Per-query scratch state. Node distances are valid only when the stamp of a node
+     * matches the current generation, which avoids clearing all arrays for every query.
+     */
+    private final class Search {
+        private final double[] distance;
+        private final int[] previousEdge;
+        private final int[] stamp;
+        private final boolean[] closed;
+        private int generation = 0;
+        private int[] heapNodes = new int[16];
+        private double[] heapKeys = new double[16];
+        private int heapSize = 0;
+
+        public Search(int numNodes) {
+            this.distance = new double[numNodes];
+            this.previousEdge = new int[numNodes];
+            this.stamp = new int[numNodes];
+            this.closed = new boolean[numNodes];
+        }
+
+        public int[] run(int start, int goal, boolean useHeuristic) {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                generation = 1;
+            }
+            heapSize = 0;
+
+            // The start node is not marked visited, so that routes looping back
+            // to the start node can be found when the start is also the goal.
+            for (int e = edgeStart[start]; e < edgeStart[start + 1]; e++) {
+                relax(e, 0.0, goal, useHeuristic);
+            }
+
+            while (heapSize > 0) {
+                int node = poll();
+                if (closed[node]) {
+                    continue; // Stale heap entry
+                }
+                closed[node] = true;
+                if (node == goal) {
+                    return buildRoute(start, goal);
+                }
+
+                double nodeDistance = distance[node];
+                for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                    relax(e, nodeDistance, goal, useHeuristic);
+                }
+            }
+
+            return NO_ROUTE;
+        }
+
+        public void runReverse(int goal, String[] junctions, double[] distances) {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                generation = 1;
+            }
+            heapSize = 0;
+
+            // The goal is not marked visited, same as with a forward search, so that
+            // the shortest route looping back to the goal itself is found too.
+            for (int r = reverseEdgeStart[goal]; r < reverseEdgeStart[goal + 1]; r++) {
+                relaxReverse(reverseEdges[r], 0.0);
+            }
+
+            while (heapSize > 0) {
+                int node = poll();
+                if (closed[node]) {
+                    continue; // Stale heap entry
+                }
+                closed[node] = true;
+                junctions[node] = edgeConnections[previousEdge[node]].junctionName;
+                distances[node] = distance[node];
+
+                double nodeDistance = distance[node];
+                for (int r = reverseEdgeStart[node]; r < reverseEdgeStart[node + 1]; r++) {
+                    relaxReverse(reverseEdges[r], nodeDistance);
+                }
+            }
+        }
+
+        private void relaxReverse(int edge, double baseDistance) {
+            int source = edgeSource[edge];
+            double newDistance = baseDistance + edgeDistance[edge];
+            if (stamp[source] == generation) {
+                if (closed[source] || distance[source] <= newDistance) {
+                    return;
+                }
+            } else {
+                stamp[source] = generation;
+                closed[source] = false;
+            }
+            distance[source] = newDistance;
+            previousEdge[source] = edge;
+            offer(source, newDistance);
+        }
+
+        private void relax(int edge, double baseDistance, int goal, boolean useHeuristic) {
+            int target = edgeTarget[edge];
+            double newDistance = baseDistance + edgeDistance[edge];
+            if (stamp[target] == generation) {
+                if (closed[target] || distance[target] <= newDistance) {
+                    return;
+                }
+            } else {
+                stamp[target] = generation;
+                closed[target] = false;
+            }
+            distance[target] = newDistance;
+            previousEdge[target] = edge;
+            offer(target, useHeuristic ? (newDistance + heuristic(target, goal)) : newDistance);
+        }
+
+        private double heuristic(int node, int goal) {
+            double dx = nodeX[node] - nodeX[goal];
+            double dy = nodeY[node] - nodeY[goal];
+            double dz = nodeZ[node] - nodeZ[goal];
+            return Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+
+        private int[] buildRoute(int start, int goal) {
+            int length = 0;
+            int node = goal;
+            do {
+                node = edgeSource[previousEdge[node]];
+                length++;
+            } while (node != start);
+
+            int[] route = new int[length];
+            node = goal;
+            do {
+                int edge = previousEdge[node];
+                route[--length] = edge;
+                node = edgeSource[edge];
+            } while (node != start);
+            return route;
+        }
+
+        private void offer(int node, double key) {
+            if (heapSize == heapNodes.length) {
+                heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+                heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            }
+
+            // Sift up
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heapKeys[parent] <= key) {
+                    break;
+                }
+                heapNodes[i] = heapNodes[parent];
+                heapKeys[i] = heapKeys[parent];
+                i = parent;
+            }
+            heapNodes[i] = node;
+            heapKeys[i] = key;
+        }
+
+        private int poll() {
+            int result = heapNodes[0];
+            int lastNode = heapNodes[--heapSize];
+            double lastKey = heapKeys[heapSize];
+
+            // Sift down
+            int i = 0;
+            int half = heapSize >>> 1;
+            while (i < half) {
+                int child = (i << 1) + 1;
+                int right = child + 1;
+                if (right < heapSize && heapKeys[right] < heapKeys[child]) {
+                    child = right;
+                }
+                if (lastKey <= heapKeys[child]) {
+                    break;
+                }
+                heapNodes[i] = heapNodes[child];
+                heapKeys[i] = heapKeys[child];
+                i = child;
+            }
+            heapNodes[i] = lastNode;
+            heapKeys[i] = lastKey;
+            return result;
+        }
+    }
+
+    private static final class IntArrayBuilder {
+        private int[] values;
+        private int size = 0;
+
+        public IntArrayBuilder(int capacity) {
+            this.values = new int[Math.max(capacity, 4)];
+        }
+
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.bergerkiller.bukkit.tc.pathfinding;
+
+/**
+ * Stores the junction to take at every node of a {@link PathWorld} to reach
+ * a single destination node. Nodes are looked up by their {@link PathNode#index},
+ * so finding the connection to take is a single array read.<br>
+ * <br>
+ * Tables are computed using {@link PathRoutingGraph#computeRoutingTable(PathNode)}
+ * and are discarded by the world when connections change that could alter the
+ * routes to the destination.
+ */
+public final class PathRoutingTable {
+    private final PathNode destination;
+    private final String[] junctions;
+    private final double[] distances;
+
+    PathRoutingTable(PathNode destination, String[] junctions, double[] distances) {
+        this.destination = destination;
+        this.junctions = junctions;
+        this.distances = distances;
+    }
+
+    /**
+     * Gets the destination node all routes of this table lead to
+     *
+     * @return destination node
+     */
+    public PathNode getDestination() {
+        return this.destination;
+    }
+
+    /**
+     * Checks whether the destination of this table can be reached from a node.
+     * The destination node itself is always considered reachable.
+     *
+     * @param node Node to check
+     * @return True if the destination can be reached from the node
+     */
+    public boolean isReachableFrom(PathNode node) {
+        if (node == this.destination) {
+            return true;
+        }
+        int index = node.index;
+        return index >= 0 && index < junctions.length && junctions[index] != null;
+    }
+
+    /**
+     * Gets the connection to take at a node to reach the destination of this table.
+     * The connection stores the total distance to the destination, and the junction
+     * to take at the node.
+     *
+     * @param from Node to find the connection at
+     * @return connection, or null if the destination can not be reached from the node
+     */
+    public PathConnection getConnection(PathNode from) {
+        int index = from.index;
+        if (index < 0 || index >= junctions.length) {
+            return null;
+        }
+        String junctionName = junctions[index];
+        return (junctionName == null) ? null : new PathConnection(destination, distances[index], junctionName);
+    }
+}
@@ -1,7 +1,14 @@
 package com.bergerkiller.bukkit.tc.pathfinding;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -9,7 +16,9 @@ import org.bukkit.block.Block;
 
 import com.bergerkiller.bukkit.common.BlockLocation;
 import com.bergerkiller.bukkit.common.collections.BlockMap;
+import com.bergerkiller.bukkit.common.utils.LogicUtil;
 import com.bergerkiller.bukkit.tc.TrainCarts;
+import com.bergerkiller.bukkit.tc.rails.BlockPositionHashMap;
 
 /**
  * A single world on which path nodes are stored
@@ -18,13 +27,26 @@ public class PathWorld implements TrainCarts.Provider {
     private final PathProvider _provider;
     private final String _name;
     private final BlockMap<PathNode> _blockNodes;
+    // Values are a single WalkedJunction, or a WalkedJunction[] if more than one walked the rail
+    private final BlockPositionHashMap<Object> _walkedRails;
+    private final Map<PathNode, List<WalkedJunction>> _walkedJunctions;
     private final Map<String, PathNode> _nodes;
+    private final BitSet _nodeIndices;
+    private PathRoutingGraph _routingGraph;
+    private final Map<PathNode, PathRoutingTable> _routingTables;
+    private final Set<PathNode> _pendingRoutingTables;
 
     public PathWorld(PathProvider provider, String worldName) {
         _provider = provider;
         _name = worldName;
         _blockNodes = new BlockMap<>();
+        _walkedRails = new BlockPositionHashMap<>();
+        _walkedJunctions = new HashMap<>();
         _nodes = new HashMap<>();
+        _nodeIndices = new BitSet();
+        _routingGraph = null;
+        _routingTables = new HashMap<>();
+        _pendingRoutingTables = new LinkedHashSet<>();
     }
 
     @Override
@@ -70,6 +92,209 @@ public class PathWorld implements TrainCarts.Provider {
         return _blockNodes.values();
     }
 
+    /**
+     * Gets the compiled routing graph of all the nodes on this world. If nodes or
+     * connections changed since the last time it was compiled, it is compiled again.
+     *
+     * @return routing graph
+     */
+    public PathRoutingGraph getRoutingGraph() {
+        PathRoutingGraph graph = _routingGraph;
+        if (graph == null) {
+            _routingGraph = graph = PathRoutingGraph.compile(getNodes(), _nodeIndices.length());
+        }
+        return graph;
+    }
+
+    /**
+     * Gets the routing table with the junctions to take at every node to reach a
+     * destination node. Routing tables are computed while the path provider is idle,
+     * so this returns null if the table is not available yet.
+     *
+     * @param destination Destination node
+     * @return routing table, or null if not yet computed
+     */
+    public PathRoutingTable getRoutingTable(PathNode destination) {
+        return _routingTables.get(destination);
+    }
+
+    /**
+     * Computes the routing tables of destinations that do not have one yet.
+     * Stops when the maximum processing time elapses.
+     *
+     * @param startTime System time in milliseconds when processing started
+     * @param maxProcessingTime Maximum time in milliseconds to spend
+     * @return True if all routing tables are computed, False if more work remains
+     */
+    public boolean computeRoutingTables(long startTime, int maxProcessingTime) {
+        Iterator<PathNode> iter = _pendingRoutingTables.iterator();
+        while (iter.hasNext()) {
+            PathNode destination = iter.next();
+            iter.remove();
+
+            // Skip nodes that were removed or no longer are a destination
+            if (destination.index == -1 || destination.getNames().isEmpty()) {
+                continue;
+            }
+
+            _routingTables.put(destination, getRoutingGraph().computeRoutingTable(destination));
+            if ((System.currentTimeMillis() - startTime) > maxProcessingTime) {
+                return _pendingRoutingTables.isEmpty();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Discards all routing tables of destinations that can be reached from a node.
+     * Must be called before the connections of the node change, as that could alter
+     * the routes to these destinations. The routing tables of destinations that the
+     * node cannot reach stay valid.
+     *
+     * @param node Node whose connections are about to change
+     */
+    protected void invalidateRoutingTables(PathNode node) {
+        Iterator<PathRoutingTable> iter = _routingTables.values().iterator();
+        while (iter.hasNext()) {
+            PathRoutingTable table = iter.next();
+            if (table.isReachableFrom(node)) {
+                iter.remove();
+                _pendingRoutingTables.add(table.getDestination());
+            }
+        }
+    }
+
+    /**
+     * Stores the rail blocks that were walked, going from a node into the direction of a
+     * junction, to find the next node. Earlier stored rails of the same node junction are
+     * forgotten. When one of these rails changes, {@link #rerouteWalkedRail(BlockLocation)}
+     * discards the connections of that node junction and routes them again.
+     *
+     * @param node Node from which was walked
+     * @param junctionName Name of the junction of the node that was taken
+     * @param rails Packed coordinates of the rail blocks that were walked,
+     *              see {@link BlockPositionHashMap#key(int, int, int)}
+     */
+    public void addWalkedRails(PathNode node, String junctionName, long[] rails) {
+        if (node.index == -1) {
+            return; // Node was removed while routing
+        }
+        List<WalkedJunction> nodeJunctions = _walkedJunctions.computeIfAbsent(node, n -> new ArrayList<>(4));
+        for (Iterator<WalkedJunction> iter = nodeJunctions.iterator(); iter.hasNext();) {
+            WalkedJunction walked = iter.next();
+            if (walked.junctionName.equals(junctionName)) {
+                iter.remove();
+                removeWalkedRails(walked);
+            }
+        }
+
+        WalkedJunction walked = new WalkedJunction(node, junctionName, rails);
+        nodeJunctions.add(walked);
+        for (long rail : walked.rails) {
+            Object atRail = _walkedRails.get(rail);
+            if (atRail == null) {
+                _walkedRails.put(rail, walked);
+            } else if (atRail instanceof WalkedJunction) {
+                if (atRail != walked) {
+                    _walkedRails.put(rail, new WalkedJunction[] { (WalkedJunction) atRail, walked });
+                }
+            } else {
+                WalkedJunction[] atRailArr = (WalkedJunction[]) atRail;
+                if (!Arrays.asList(atRailArr).contains(walked)) {
+                    atRailArr = Arrays.copyOf(atRailArr, atRailArr.length + 1);
+                    atRailArr[atRailArr.length - 1] = walked;
+                    _walkedRails.put(rail, atRailArr);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets about all rail blocks that were walked starting at a node
+     *
+     * @param node Node
+     */
+    public void removeWalkedRails(PathNode node) {
+        List<WalkedJunction> nodeJunctions = _walkedJunctions.remove(node);
+        if (nodeJunctions != null) {
+            for (WalkedJunction walked : nodeJunctions) {
+                removeWalkedRails(walked);
+            }
+        }
+    }
+
+    private void removeWalkedRails(WalkedJunction walked) {
+        for (long rail : walked.rails) {
+            Object atRail = _walkedRails.get(rail);
+            if (atRail == walked) {
+                _walkedRails.remove(rail);
+            } else if (atRail instanceof WalkedJunction[]) {
+                WalkedJunction[] atRailArr = (WalkedJunction[]) atRail;
+                for (int i = 0; i < atRailArr.length; i++) {
+                    if (atRailArr[i] == walked) {
+                        atRailArr = LogicUtil.removeArrayElement(atRailArr, i);
+                        _walkedRails.put(rail, (atRailArr.length == 1) ? atRailArr[0] : atRailArr);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the connections of all nodes whose route to the next node walked over
+     * a rail block, and schedules those nodes for routing again. Connections that
+     * did not pass this rail block are kept. Should be called when rails or path finding
+     * signs change at the rail block.
+     *
+     * @param rail Rail block that changed
+     * @return True if connections were discarded, False if no route walked over the rail block
+     */
+    public boolean rerouteWalkedRail(BlockLocation rail) {
+        return rerouteWalkedRail(BlockPositionHashMap.key(rail.x, rail.y, rail.z));
+    }
+
+    private boolean rerouteWalkedRail(long rail) {
+        Object atRail = _walkedRails.get(rail);
+        if (atRail == null) {
+            return false;
+        }
+        WalkedJunction[] atRailArr = (atRail instanceof WalkedJunction)
+                ? new WalkedJunction[] { (WalkedJunction) atRail } : (WalkedJunction[]) atRail;
+        for (WalkedJunction walked : atRailArr) {
+            List<WalkedJunction> nodeJunctions = _walkedJunctions.get(walked.node);
+            if (nodeJunctions != null) {
+                nodeJunctions.remove(walked);
+            }
+            removeWalkedRails(walked);
+            if (walked.node.index != -1) {
+                walked.node.removeNeighbours(walked.junctionName);
+                _provider.scheduleNode(walked.node);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calls {@link #rerouteWalkedRail(BlockLocation)} for a rail block and all blocks
+     * around it. Should be used when new rails are placed, which could extend a route
+     * that ended at a neighbouring rail block.
+     *
+     * @param rail Rail block that changed
+     * @return True if connections were discarded, False if no route walked near the rail block
+     */
+    public boolean rerouteWalkedRailsNear(BlockLocation rail) {
+        boolean changed = false;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    changed |= rerouteWalkedRail(BlockPositionHashMap.key(rail.x + dx, rail.y + dy, rail.z + dz));
+                }
+            }
+        }
+        return changed;
+    }
+
     public PathNode removeAtRail(Block railBlock) {
         PathNode node = _blockNodes.remove(railBlock);
         if (node != null) node.remove();
@@ -92,6 +317,19 @@ public class PathWorld implements TrainCarts.Provider {
         return node;
     }
 
+    /**
+     * Adds a node that was loaded from file. Unlike {@link #addNode(BlockLocation)} the
+     * node is not scheduled for routing.
+     *
+     * @param location Rail block location of the node
+     * @return added node
+     */
+    protected PathNode loadNode(BlockLocation location) {
+        PathNode node = new PathNode(this, location);
+        addToMapping(node);
+        return node;
+    }
+
     public void rerouteAll() {
         for (BlockLocation location : getRailBlocks()) {
             _provider.discoverFromRail(location);
@@ -100,20 +338,40 @@ public class PathWorld implements TrainCarts.Provider {
     }
 
     public void clearAll() {
+        for (PathNode node : getNodes()) {
+            node.index = -1;
+        }
         _nodes.clear();
         _blockNodes.clear();
+        _walkedRails.clear();
+        _walkedJunctions.clear();
+        _nodeIndices.clear();
+        _routingTables.clear();
+        _pendingRoutingTables.clear();
+        markChanged();
+    }
+
+    /**
+     * Tells this world that node information has changed. The routing graph is
+     * compiled again the next time it is used, and the change is saved to file.
+     */
+    protected void markChanged() {
+        _routingGraph = null;
         _provider.markChanged();
     }
 
     protected void addNodeName(PathNode node, String name) {
         _nodes.put(name, node);
-        _provider.markChanged();
+        if (!_routingTables.containsKey(node)) {
+            _pendingRoutingTables.add(node);
+        }
+        markChanged();
     }
 
     protected void removeNodeName(PathNode node, String name) {
         PathNode removed = _nodes.remove(name);
         if (removed == node) {
-            _provider.markChanged();
+            markChanged();
         } else if (removed != null) {
             _nodes.put(name, removed); // restore
         }
@@ -123,9 +381,16 @@ public class PathWorld implements TrainCarts.Provider {
         for (String name : node.getNames()) {
             addNodeName(node, name);
         }
-        _blockNodes.put(node.location, node);
+        PathNode previous = _blockNodes.put(node.location, node);
+        if (previous != null && previous != node) {
+            releaseIndex(previous);
+        }
+        if (node.index == -1) {
+            node.index = _nodeIndices.nextClearBit(0);
+            _nodeIndices.set(node.index);
+        }
         _nodes.put(node.location.toString(), node);
-        _provider.markChanged();
+        markChanged();
     }
 
     protected void removeFromMapping(PathNode node) {
@@ -141,6 +406,29 @@ public class PathWorld implements TrainCarts.Provider {
         } else if (removed != null) {
             _nodes.remove(node.location.toString());
         }
-        _provider.markChanged();
+        releaseIndex(node);
+        markChanged();
+    }
+
+    private void releaseIndex(PathNode node) {
+        if (node.index != -1) {
+            _nodeIndices.clear(node.index);
+            node.index = -1;
+        }
+    }
+
+    /**
+     * The rail blocks walked from a node into the direction of a junction
+     */
+    private static final class WalkedJunction {
+        public final PathNode node;
+        public final String junctionName;
+        public final long[] rails;
+
+        public WalkedJunction(PathNode node, String junctionName, long[] rails) {
+            this.node = node;
+            this.junctionName = junctionName;
+            this.rails = rails;
+        }
     }
 }
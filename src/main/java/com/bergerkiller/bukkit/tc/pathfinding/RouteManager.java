@@ -1,10 +1,12 @@
 package com.bergerkiller.bukkit.tc.pathfinding;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import com.bergerkiller.bukkit.common.config.FileConfiguration;
+import com.bergerkiller.bukkit.tc.TrainCarts;
 
 /**
  * Saved destination route manager. Is used to save sequences of destinations
@@ -12,10 +14,12 @@ import com.bergerkiller.bukkit.common.config.FileConfiguration;
  */
 public class RouteManager {
     private final FileConfiguration config;
+    private final File configFile;
     private boolean changed;
 
     public RouteManager(String configFileName) {
         this.config = new FileConfiguration(configFileName);
+        this.configFile = new File(configFileName);
         this.changed = false;
     }
 
@@ -39,7 +43,7 @@ public class RouteManager {
     public void save(boolean autosave) {
         if (this.changed || !autosave) {
             this.changed = false;
-            this.config.save();
+            TrainCarts.plugin.getSaveWriter().write("routes", this.configFile, this.config);
         }
     }
 
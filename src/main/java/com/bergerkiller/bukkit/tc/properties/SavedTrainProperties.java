@@ -81,7 +81,7 @@ public class SavedTrainProperties {
         carts.forEach(StandardProperties::reverseSavedCart);
         Collections.reverse(carts);
         config.setNodeList("carts", carts);
-        module.changed = true;
+        module.markChanged();
     }
 
     /**
@@ -105,7 +105,7 @@ public class SavedTrainProperties {
             }
         }
         config.setNodeList("carts", carts);
-        module.changed = true;
+        module.markChanged();
     }
 
     /**
@@ -154,7 +154,7 @@ public class SavedTrainProperties {
         }
 
         // Mark changed
-        module.changed = true;
+        module.markChanged();
     }
 
     /**
@@ -29,6 +29,7 @@ import com.bergerkiller.bukkit.tc.attachments.config.ItemTransformType;
 import com.bergerkiller.bukkit.tc.attachments.control.CartAttachmentItem;
 import com.bergerkiller.bukkit.tc.attachments.control.CartAttachmentSeat;
 import com.bergerkiller.bukkit.tc.controller.MinecartGroup;
+import com.bergerkiller.bukkit.tc.controller.spawnable.SpawnTemplate;
 import com.bergerkiller.bukkit.tc.exception.IllegalNameException;
 
 /**
@@ -40,12 +41,16 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
 
     private final TrainCarts traincarts;
     private final FileConfiguration savedTrainsConfig;
+    private final File savedTrainsFile;
     private String name;
     private String modulesDirectory = "";
     private final List<String> names = new ArrayList<String>();
     private Map<String, SavedTrainPropertiesStore> modules = new HashMap<String, SavedTrainPropertiesStore>();;
     protected boolean changed = false;
+    private int revision = 0;
     private boolean allowModules;
+    private final Map<String, SpawnTemplate> spawnTemplates = new HashMap<String, SpawnTemplate>();
+    private int spawnTemplatesRevision = 0;
 
     public SavedTrainPropertiesStore(TrainCarts traincarts, String name, String filename) {
         this(traincarts, name, filename, true);
@@ -54,6 +59,7 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
     public SavedTrainPropertiesStore(TrainCarts traincarts, String name, String filename, boolean allowModules) {
         this.traincarts = traincarts;
         this.savedTrainsConfig = new FileConfiguration(filename);
+        this.savedTrainsFile = new File(filename);
         this.savedTrainsConfig.load();
         this.name = name;
         this.names.addAll(this.savedTrainsConfig.getKeys());
@@ -174,7 +180,7 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
             config = this.savedTrainsConfig.getNode(name).clone();
             this.savedTrainsConfig.remove(name);
             this.names.remove(name);
-            this.changed = true;
+            this.markChanged();
         } else {
             // Find it in an existing module
             for (Map.Entry<String, SavedTrainPropertiesStore> moduleEntry : this.modules.entrySet()) {
@@ -186,7 +192,7 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
                     config = moduleStore.savedTrainsConfig.getNode(name).clone();
                     moduleStore.savedTrainsConfig.remove(name);
                     moduleStore.names.remove(name);
-                    moduleStore.changed = true;
+                    moduleStore.markChanged();
                     break;
                 }
             }
@@ -212,7 +218,7 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
 
         moduleStore.savedTrainsConfig.set(name, config);
         moduleStore.names.add(name);
-        moduleStore.changed = true;
+        moduleStore.markChanged();
     }
 
     /**
@@ -306,7 +312,8 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
         if (autosave && !this.changed) {
             return;
         }
-        this.savedTrainsConfig.save();
+        this.traincarts.getSaveWriter().write((this.name == null) ? "saved trains" : ("saved trains module " + this.name),
+                this.savedTrainsFile, this.savedTrainsConfig);
         this.changed = false;
     }
 
@@ -374,7 +381,7 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
         }
 
         // Store in mapping
-        this.changed = true;
+        this.markChanged();
         this.savedTrainsConfig.set(name, newConfig);
         newConfig.set(KEY_SAVED_NAME, name);
         this.names.remove(name);
@@ -403,6 +410,55 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
         return SavedTrainProperties.of(this, name, this.savedTrainsConfig.getNode(name));
     }
 
+    /**
+     * Gets the template for spawning a saved train. Templates are cached,
+     * and are created again after saved trains are changed.
+     *
+     * @param name of the saved train
+     * @return spawn template, null if the train is not stored
+     */
+    public SpawnTemplate getSpawnTemplate(String name) {
+        int revision = this.getRevision();
+        if (this.spawnTemplatesRevision != revision) {
+            this.spawnTemplatesRevision = revision;
+            this.spawnTemplates.clear();
+        }
+
+        SpawnTemplate template = this.spawnTemplates.get(name);
+        if (template == null) {
+            ConfigurationNode config = this.getConfig(name);
+            if (config == null) {
+                return null;
+            }
+            template = SpawnTemplate.create(name, config);
+            this.spawnTemplates.put(name, template);
+        }
+        return template;
+    }
+
+    /**
+     * Gets a number that changes every time a saved train of this store,
+     * or of one of its modules, is changed.
+     *
+     * @return revision
+     */
+    public int getRevision() {
+        int revision = this.revision;
+        for (SavedTrainPropertiesStore module : this.modules.values()) {
+            revision += module.getRevision();
+        }
+        return revision;
+    }
+
+    /**
+     * Marks this store as changed, so that it is saved and that cached
+     * information about saved trains is refreshed
+     */
+    protected void markChanged() {
+        this.changed = true;
+        this.revision++;
+    }
+
     /**
      * Gets the configuration for a saved train
      * 
@@ -461,7 +517,7 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
         if (this.savedTrainsConfig.isNode(name)) {
             this.savedTrainsConfig.remove(name);
             this.names.remove(name);
-            this.changed = true;
+            this.markChanged();
             return true;
         } else {
             for (SavedTrainPropertiesStore module : this.modules.values()) {
@@ -494,7 +550,7 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
             this.savedTrainsConfig.set(newName, oldConfig);
             oldConfig.set(KEY_SAVED_NAME, newName);
             this.names.add(newName);
-            this.changed = true;
+            this.markChanged();
             return true;
         } else {
             for (SavedTrainPropertiesStore module : this.modules.values()) {
@@ -544,7 +600,7 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
      * of TC 1.12.2-v2 into that of TC 1.12.2-v3. No longer needed some time in the future.
      */
     public void upgradeSavedTrains(boolean undo) {
-        changed = true;
+        markChanged();
         for (ConfigurationNode node : savedTrainsConfig.getNodes()) {
             List<ConfigurationNode> carts = node.getNodeList("carts");
             for (ConfigurationNode cart : carts) {
@@ -583,7 +639,7 @@ public class SavedTrainPropertiesStore implements TrainCarts.Provider {
             }
 
             this.savedTrainsConfig.remove(name);
-            this.changed = true;
+            this.markChanged();
         }
     }
 
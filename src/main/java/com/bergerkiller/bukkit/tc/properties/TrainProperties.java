@@ -959,6 +959,14 @@ public class TrainProperties extends TrainPropertiesStore implements IProperties
         set(StandardProperties.COLLISION_DAMAGE, collisionDamage);
     }
 
+    public int getMaxSyncInterval() {
+        return get(StandardProperties.MAX_SYNC_INTERVAL);
+    }
+
+    public void setMaxSyncInterval(int interval) {
+        set(StandardProperties.MAX_SYNC_INTERVAL, interval);
+    }
+
     public CollisionMode getCollisionMode(Entity entity) {
         if (entity.isDead()) {
             return CollisionMode.CANCEL;
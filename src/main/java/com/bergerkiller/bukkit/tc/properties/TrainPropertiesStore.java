@@ -534,7 +534,8 @@ public class TrainPropertiesStore extends LinkedHashSet<CartProperties> {
             }
         }
 
-        config.save();
+        TrainCarts.plugin.getSaveWriter().write("train properties",
+                TrainCarts.plugin.getDataFile(propertiesFile), config);
         hasChanges = false;
     }
 
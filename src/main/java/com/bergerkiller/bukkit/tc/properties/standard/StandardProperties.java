@@ -9,6 +9,7 @@ import com.bergerkiller.bukkit.tc.Permission;
 import com.bergerkiller.bukkit.tc.Util;
 import com.bergerkiller.bukkit.tc.properties.api.ICartProperty;
 import com.bergerkiller.bukkit.tc.properties.api.ITrainProperty;
+import com.bergerkiller.bukkit.tc.properties.api.PropertyInvalidInputException;
 import com.bergerkiller.bukkit.tc.properties.api.PropertyParser;
 import com.bergerkiller.bukkit.tc.properties.api.context.PropertyParseContext;
 import com.bergerkiller.bukkit.tc.properties.standard.category.*;
@@ -190,6 +191,41 @@ public class StandardProperties {
         }
     };
 
+    /**
+     * The maximum number of ticks between sending the movement of the attachments of the
+     * carts to players. Carts that move slowly or that are far away from players are updated
+     * less often, up to this interval. A value of 1 updates all carts every tick, which is
+     * the default. Animated attachments of slow or stationary carts move less smoothly when
+     * this is raised, as their movement is sent less often than their pose.
+     */
+    public static final ITrainProperty<Integer> MAX_SYNC_INTERVAL = new ITrainProperty<Integer>() {
+        private final Integer DEFAULT = 1;
+
+        @PropertyParser("maxsyncinterval")
+        public int parseInterval(PropertyParseContext<Integer> context) {
+            int interval = context.inputInteger();
+            if (interval < 1) {
+                throw new PropertyInvalidInputException("Sync interval must be at least 1 tick");
+            }
+            return interval;
+        }
+
+        @Override
+        public Integer getDefault() {
+            return DEFAULT;
+        }
+
+        @Override
+        public Optional<Integer> readFromConfig(ConfigurationNode config) {
+            return Util.getConfigOptional(config, "maxSyncInterval", int.class);
+        }
+
+        @Override
+        public void writeToConfig(ConfigurationNode config, Optional<Integer> value) {
+            Util.setConfigOptional(config, "maxSyncInterval", value);
+        }
+    };
+
     /**
      * Configures train behavior for waiting on obstacles on the track ahead
      */
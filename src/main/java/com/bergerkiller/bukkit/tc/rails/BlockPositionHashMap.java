@@ -0,0 +1,269 @@
+package com.bergerkiller.bukkit.tc.rails;
+
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+
+/**
+ * Open-addressing hash map from block coordinates to values. The x/y/z coordinates
+ * are packed into a single long key, so lookups do not need an {@link IntVector3}
+ * instance and do not box anything. Keys and values are stored in two flat arrays,
+ * which are also iterated directly when sweeping the values.<br>
+ * <br>
+ * Removed entries leave a tombstone behind, so that values can be replaced or removed
+ * while iterating with {@link #replaceAll(UnaryOperator)}. Tombstones are cleaned up
+ * the next time the table is rehashed.<br>
+ * <br>
+ * Coordinates are packed as 26 bits x, 26 bits z and 12 bits y. This covers the full
+ * range of world coordinates Minecraft supports. This map is not multi-thread safe.
+ *
+ * @param <V> Value type
+ */
+public final class BlockPositionHashMap<V> {
+    private static final int MIN_CAPACITY = 16;
+    private static final Object REMOVED = new Object();
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int used; // size + tombstones
+    private int resizeThreshold;
+
+    public BlockPositionHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public BlockPositionHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Packs block coordinates into a single long key
+     *
+     * @param x Block X-coordinate
+     * @param y Block Y-coordinate
+     * @param z Block Z-coordinate
+     * @return packed key
+     */
+    public static long key(int x, int y, int z) {
+        return (((long) x & 0x3FFFFFFL) << 38) | (((long) z & 0x3FFFFFFL) << 12) | ((long) y & 0xFFFL);
+    }
+
+    /**
+     * Packs block coordinates into a single long key
+     *
+     * @param coordinates Block coordinates
+     * @return packed key
+     */
+    public static long key(IntVector3 coordinates) {
+        return key(coordinates.x, coordinates.y, coordinates.z);
+    }
+
+    /**
+     * Gets the number of values stored
+     *
+     * @return size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Gets the value mapped to a packed block key
+     *
+     * @param key Packed key, see {@link #key(int, int, int)}
+     * @return value, or null if none is stored
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = this.mask;
+        int slot = hash(key) & mask;
+        Object value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key && value != REMOVED) {
+                return (V) value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Stores a value at a packed block key, replacing any previous value
+     *
+     * @param key Packed key, see {@link #key(int, int, int)}
+     * @param value Value to store, can not be null
+     * @return previous value, or null if none was stored
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value can not be null");
+        }
+
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = this.mask;
+        int slot = hash(key) & mask;
+        int freeSlot = -1;
+        Object current;
+        while ((current = values[slot]) != null) {
+            if (current == REMOVED) {
+                if (freeSlot == -1) {
+                    freeSlot = slot;
+                }
+            } else if (keys[slot] == key) {
+                values[slot] = value;
+                return (V) current;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // Not found, re-use the first tombstone if one was passed
+        if (freeSlot != -1) {
+            keys[freeSlot] = key;
+            values[freeSlot] = value;
+            this.size++;
+        } else {
+            keys[slot] = key;
+            values[slot] = value;
+            this.size++;
+            if (++this.used > this.resizeThreshold) {
+                rehash(capacityFor(this.size));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the value mapped to a packed block key
+     *
+     * @param key Packed key, see {@link #key(int, int, int)}
+     * @return removed value, or null if none was stored
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = this.mask;
+        int slot = hash(key) & mask;
+        Object value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key && value != REMOVED) {
+                values[slot] = REMOVED;
+                this.size--;
+                return (V) value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Calls a consumer for every value stored
+     *
+     * @param consumer Consumer to call
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> consumer) {
+        final Object[] values = this.values;
+        for (Object value : values) {
+            if (value != null && value != REMOVED) {
+                consumer.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * Calls a function for every value stored, which returns the value to store
+     * in its place. If the function returns null, the value is removed. The function
+     * must not otherwise modify this map. Afterwards the table is shrunk if most values
+     * were removed.
+     *
+     * @param function Function that returns the new value, or null to remove it
+     */
+    @SuppressWarnings("unchecked")
+    public void replaceAll(UnaryOperator<V> function) {
+        final Object[] values = this.values;
+        for (int slot = 0; slot < values.length; slot++) {
+            Object value = values[slot];
+            if (value != null && value != REMOVED) {
+                V newValue = function.apply((V) value);
+                if (newValue == null) {
+                    values[slot] = REMOVED;
+                    this.size--;
+                } else if (newValue != value) {
+                    values[slot] = newValue;
+                }
+            }
+        }
+
+        // Shrink when the table is very sparse, or clean up when there are many tombstones
+        if ((values.length > MIN_CAPACITY && (this.size << 3) < values.length) ||
+            (this.used - this.size) > (values.length >> 2)
+        ) {
+            rehash(capacityFor(this.size));
+        }
+    }
+
+    /**
+     * Removes all values and frees the memory of the table
+     */
+    public void clear() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void rehash(int newCapacity) {
+        final long[] oldKeys = this.keys;
+        final Object[] oldValues = this.values;
+        allocate(newCapacity);
+
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = this.mask;
+        for (int i = 0; i < oldValues.length; i++) {
+            Object value = oldValues[i];
+            if (value != null && value != REMOVED) {
+                long key = oldKeys[i];
+                int slot = hash(key) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = value;
+                this.size++;
+            }
+        }
+        this.used = this.size;
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.size = 0;
+        this.used = 0;
+        this.resizeThreshold = (capacity >> 1) + (capacity >> 2); // 0.75 load factor
+    }
+
+    // Power of two capacity that keeps the load factor at or below 0.5 after rehashing
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < (size << 1)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
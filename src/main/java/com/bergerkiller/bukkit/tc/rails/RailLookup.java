@@ -30,6 +30,7 @@ import com.bergerkiller.bukkit.tc.detector.DetectorRegion;
 import com.bergerkiller.bukkit.tc.events.SignActionEvent;
 import com.bergerkiller.bukkit.tc.rails.type.RailType;
 import com.bergerkiller.bukkit.tc.signactions.SignAction;
+import com.bergerkiller.bukkit.tc.signactions.SignActionIndex;
 import com.bergerkiller.bukkit.tc.signactions.SignActionType;
 import com.bergerkiller.bukkit.tc.utils.FakeSign;
 
@@ -52,6 +53,8 @@ public final class RailLookup {
     static int lifeTimerAtPosition = LIFE_TIMER_START;
     /** Stores the (every tick incrementing) future tick when cached information expires */
     static int verifyTimer = LIFE_TIMER_START;
+    /** Incremented every time the layout of the track on all worlds changes, see {@link #notifyTrackChanged()} */
+    private static int trackChangeCounter = 0;
 
     // Constant arrays used for initialization checks
     static final DetectorRegion[] NO_DETECTOR_REGIONS = new DetectorRegion[0];
@@ -200,6 +203,86 @@ public final class RailLookup {
         lifeTimer = LIFE_TIMER_START + TCConfig.cacheExpireTicks + TCConfig.cacheVerificationTicks;
         lifeTimerAtPosition = LIFE_TIMER_START;
         verifyTimer = ++lifeTimer + TCConfig.cacheVerificationTicks;
+
+        // Paths walked ahead of trains might now be different
+        notifyTrackChanged();
+    }
+
+    /**
+     * Notifies that the layout of the track changed on all worlds. Information cached about
+     * the track ahead of all trains is then re-calculated. Use
+     * {@link #notifyTrackChanged(Block)} when the change is at a single block.
+     */
+    public static void notifyTrackChanged() {
+        ++trackChangeCounter;
+    }
+
+    /**
+     * Notifies that the layout of the track changed at a block. This should be called when
+     * rails are placed, broken or altered by physics, when a junction is switched, or when
+     * signs are changed or change redstone power. Information cached about the track near
+     * this block is then re-calculated.
+     *
+     * @param block Block that changed
+     */
+    public static void notifyTrackChanged(Block block) {
+        notifyTrackChanged(block.getWorld(), block.getX(), block.getZ(), block.getX(), block.getZ());
+    }
+
+    /**
+     * Notifies that the layout of the track changed within an area of blocks, such as
+     * when a mutex zone is added or removed. Information cached about the track within
+     * this area is then re-calculated.
+     *
+     * @param world World the track changed on
+     * @param minX Minimum block x-coordinate of the area
+     * @param minZ Minimum block z-coordinate of the area
+     * @param maxX Maximum block x-coordinate of the area
+     * @param maxZ Maximum block z-coordinate of the area
+     */
+    public static void notifyTrackChanged(World world, int minX, int minZ, int maxX, int maxZ) {
+        WorldRailLookupImpl lookup = byWorld.get(world);
+        if (lookup != null) {
+            lookup.getTrackChanges().add(minX, minZ, maxX, maxZ);
+        }
+    }
+
+    /**
+     * Notifies that the layout of the track changed on an entire world. Information cached
+     * about the track ahead of all trains on this world is then re-calculated.
+     *
+     * @param world World the track changed on
+     */
+    public static void notifyTrackChanged(World world) {
+        WorldRailLookupImpl lookup = byWorld.get(world);
+        if (lookup != null) {
+            lookup.getTrackChanges().addAll();
+        }
+    }
+
+    /**
+     * Gets a counter that is incremented every time {@link #notifyTrackChanged()} is called.
+     * Information cached about the track can be compared against this counter to check
+     * whether it is still valid.
+     *
+     * @return track change counter
+     */
+    public static int getTrackChangeCounter() {
+        return trackChangeCounter;
+    }
+
+    /**
+     * Gets the log of the areas of a world in which the track recently changed, see
+     * {@link #notifyTrackChanged(World, int, int, int, int)}. A new log is used when
+     * the rail lookup of a world is re-created, in which case all information cached
+     * about the track of that world should be discarded.
+     *
+     * @param world World
+     * @return track change log of the world, or null if the world has no rail lookup
+     */
+    public static TrackChangeLog getTrackChangeLog(World world) {
+        WorldRailLookupImpl lookup = byWorld.get(world);
+        return (lookup == null) ? null : lookup.getTrackChanges();
     }
 
     /**
@@ -422,6 +505,7 @@ public final class RailLookup {
         private SignActionHeader cachedHeader = null;
         private boolean cachedActionSet = false;
         private SignAction cachedAction = null;
+        private SignActionIndex.Candidates cachedActionCandidates = null;
 
         TrackedSign(Sign sign, Block signBlock, RailPiece rail) {
             if (sign == null) {
@@ -551,6 +635,27 @@ public final class RailLookup {
          */
         public void setCachedHeader(SignActionHeader header) {
             this.cachedHeader = header;
+            this.cachedActionCandidates = null;
+        }
+
+        /**
+         * Gets the sign actions that could match this sign, as last found by
+         * {@link SignAction#getSignAction(SignActionEvent)}.
+         *
+         * @return cached sign action candidates, null if not cached
+         */
+        public SignActionIndex.Candidates getCachedActionCandidates() {
+            return this.cachedActionCandidates;
+        }
+
+        /**
+         * Sets the sign actions that could match this sign. Used by
+         * {@link SignAction#getSignAction(SignActionEvent)}.
+         *
+         * @param candidates Candidates to cache
+         */
+        public void setCachedActionCandidates(SignActionIndex.Candidates candidates) {
+            this.cachedActionCandidates = candidates;
         }
 
         /**
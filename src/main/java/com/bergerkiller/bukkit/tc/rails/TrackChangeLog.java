@@ -0,0 +1,79 @@
+package com.bergerkiller.bukkit.tc.rails;
+
+/**
+ * Remembers the areas of a world in which the track recently changed. Information cached
+ * about a stretch of track can check whether any change since it was cached touched the
+ * area of that track, so that changes elsewhere on the world do not invalidate it.<br>
+ * <br>
+ * Only the most recent {@link #CAPACITY} changes are remembered. Information cached before
+ * that must be assumed to have changed. This log is not multi-thread safe.
+ */
+public final class TrackChangeLog {
+    /** Number of changes that are remembered */
+    public static final int CAPACITY = 64;
+    private final int[] areas = new int[CAPACITY * 4];
+    private long counter = 0;
+
+    /**
+     * Gets the number of changes added to this log so far. Pass this to
+     * {@link #hasChangedSince(long, int, int, int, int)} to check for changes
+     * made after this call.
+     *
+     * @return change counter
+     */
+    public long getCounter() {
+        return this.counter;
+    }
+
+    /**
+     * Adds a change of the track within an area of blocks
+     *
+     * @param minX Minimum block x-coordinate of the area
+     * @param minZ Minimum block z-coordinate of the area
+     * @param maxX Maximum block x-coordinate of the area
+     * @param maxZ Maximum block z-coordinate of the area
+     */
+    public void add(int minX, int minZ, int maxX, int maxZ) {
+        int index = (int) (this.counter % CAPACITY) * 4;
+        this.areas[index] = minX;
+        this.areas[index + 1] = minZ;
+        this.areas[index + 2] = maxX;
+        this.areas[index + 3] = maxZ;
+        this.counter++;
+    }
+
+    /**
+     * Adds a change of the track that affects the entire world
+     */
+    public void addAll() {
+        add(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks whether the track changed within an area of blocks since a previous
+     * {@link #getCounter()} value. If more changes were made since than are
+     * remembered, returns true.
+     *
+     * @param since Value of {@link #getCounter()} to check for changes after
+     * @param minX Minimum block x-coordinate of the area
+     * @param minZ Minimum block z-coordinate of the area
+     * @param maxX Maximum block x-coordinate of the area
+     * @param maxZ Maximum block z-coordinate of the area
+     * @return True if the track changed within the area
+     */
+    public boolean hasChangedSince(long since, int minX, int minZ, int maxX, int maxZ) {
+        if ((this.counter - since) > CAPACITY) {
+            return true;
+        }
+        final int[] areas = this.areas;
+        for (long c = since; c < this.counter; c++) {
+            int index = (int) (c % CAPACITY) * 4;
+            if (areas[index] <= maxX && areas[index + 2] >= minX &&
+                areas[index + 1] <= maxZ && areas[index + 3] >= minZ
+            ) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
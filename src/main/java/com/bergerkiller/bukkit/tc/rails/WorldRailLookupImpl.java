@@ -6,11 +6,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -76,20 +73,20 @@ final class WorldRailLookupImpl implements WorldRailLookup {
     private final TrainCarts traincarts;
     private World world;
     private OfflineWorld offlineWorld;
-    private Map<IntVector3, Bucket> cache;
-    private List<Bucket> cacheValues;
+    private final BlockPositionHashMap<Bucket> cache;
     private MutexZoneCacheWorld mutexZones;
     private SignControllerWorld signController;
+    private final TrackChangeLog trackChanges;
     private int ticksWithEmptyCache;
 
     WorldRailLookupImpl(TrainCarts traincarts, World world) {
         this.traincarts = traincarts;
         this.offlineWorld = OfflineWorld.of(world);
         this.world = world;
-        this.cache = new HashMap<>();
-        this.cacheValues = new ArrayList<>();
+        this.cache = new BlockPositionHashMap<>();
         this.mutexZones = MutexZoneCache.forWorld(this.offlineWorld);
         this.signController = traincarts.getSignController().forWorldSkipInitialization(this.world);
+        this.trackChanges = new TrackChangeLog();
         this.ticksWithEmptyCache = 0;
     }
 
@@ -120,6 +117,15 @@ final class WorldRailLookupImpl implements WorldRailLookup {
         return this.mutexZones;
     }
 
+    /**
+     * Gets the log of the areas of this world in which the track recently changed
+     *
+     * @return track change log
+     */
+    TrackChangeLog getTrackChanges() {
+        return this.trackChanges;
+    }
+
     @Override
     public SignControllerWorld getSignController() {
         return this.signController;
@@ -164,34 +170,31 @@ final class WorldRailLookupImpl implements WorldRailLookup {
     void close() {
         if (!cache.isEmpty()) {
             forAllBuckets(b -> b.rail_life = RailLookup.LIFE_TIMER_DELETED);
-            cache.clear();
-            cacheValues.clear();
         }
-        cache = Collections.emptyMap(); // Free memory
-        cacheValues = Collections.emptyList(); // Free memory
+        cache.clear(); // Free memory
         world = null; // Forces errors / checking
     }
 
     @Override
     public RailPiece[] findAtStatePosition(RailState state) {
-        IntVector3 coordinates;
+        int x, y, z;
         {
             RailPath.Position pos = state.position();
+            x = MathUtil.floor(pos.posX);
+            y = MathUtil.floor(pos.posY);
+            z = MathUtil.floor(pos.posZ);
             if (pos.relative) {
                 // This is practically not used!
-                coordinates = state.railPiece().blockPosition().add(MathUtil.floor(pos.posX),
-                                                                    MathUtil.floor(pos.posY),
-                                                                    MathUtil.floor(pos.posZ));
-            } else {
-                coordinates = new IntVector3(MathUtil.floor(pos.posX),
-                                             MathUtil.floor(pos.posY),
-                                             MathUtil.floor(pos.posZ));
+                IntVector3 railPosition = state.railPiece().blockPosition();
+                x += railPosition.x;
+                y += railPosition.y;
+                z += railPosition.z;
             }
         }
 
         // If already in the cache, compute/return it right-away
         // During computation the original bucket may get deleted (if rail type was NONE)
-        IntVector3 cacheKey = createCacheKey(coordinates);
+        long cacheKey = BlockPositionHashMap.key(x, y, z);
         Bucket inCache = cache.get(cacheKey);
         if (inCache != null) {
             return inCache.getRailsAtPosition();
@@ -201,14 +204,14 @@ final class WorldRailLookupImpl implements WorldRailLookup {
         // with rail type NONE and proceed from there, it results in a bucket to be created
         // that is then just thrown away again. It's better to do an at-position search first,
         // and if any of the found rails match with the position block, we use that one.
-        return discoverBucketsAtPositionBlock(cacheKey, offlineWorld.getBlockAt(coordinates));
+        return discoverBucketsAtPositionBlock(cacheKey, offlineWorld.getBlockAt(x, y, z));
     }
 
     @Override
     public RailPiece[] findAtBlockPosition(OfflineBlock positionBlock) {
         // If already in the cache, compute/return it right-away
         // During computation the original bucket may get deleted (if rail type was NONE)
-        IntVector3 cacheKey = createCacheKey(positionBlock);
+        long cacheKey = createCacheKey(positionBlock);
         Bucket inCache = cache.get(cacheKey);
         if (inCache != null) {
             return inCache.getRailsAtPosition();
@@ -225,7 +228,7 @@ final class WorldRailLookupImpl implements WorldRailLookup {
     public RailLookup.CachedRailPiece lookupCachedRailPieceIfCached(final OfflineBlock railOfflineBlock,
                                                                     final RailType railType
     ) {
-        IntVector3 cacheKey = createCacheKey(railOfflineBlock);
+        long cacheKey = createCacheKey(railOfflineBlock);
         Bucket inCache = cache.get(cacheKey);
         if (inCache != null) {
             RailType inCacheType = inCache.type();
@@ -246,7 +249,7 @@ final class WorldRailLookupImpl implements WorldRailLookup {
 
     @Override
     public List<RailLookup.CachedRailPiece> lookupCachedRailPieces(final OfflineBlock railOfflineBlock) {
-        IntVector3 cacheKey = createCacheKey(railOfflineBlock);
+        long cacheKey = createCacheKey(railOfflineBlock);
         Bucket inCache = cache.get(cacheKey);
         if (inCache == null) {
             return Collections.emptyList();
@@ -275,7 +278,7 @@ final class WorldRailLookupImpl implements WorldRailLookup {
                                     final RailType railType
     ) {
         // First try to find it in the cache, and if none exists, initialize a new one.
-        IntVector3 cacheKey = createCacheKey(railOfflineBlock);
+        long cacheKey = createCacheKey(railOfflineBlock);
         Bucket inCache = cache.get(cacheKey);
         if (inCache == null) {
             if (!railType.isRegistered()) {
@@ -399,11 +402,11 @@ final class WorldRailLookupImpl implements WorldRailLookup {
     }
 
     private void forAllBuckets(Consumer<Bucket> callback) {
-        for (Bucket bucket : cacheValues) {
+        cache.forEachValue(bucket -> {
             for (Bucket next = bucket; next != null; next = next.next) {
                 callback.accept(next);
             }
-        }
+        });
     }
 
     /**
@@ -436,32 +439,28 @@ final class WorldRailLookupImpl implements WorldRailLookup {
     }
 
     private void refreshBuckets(Predicate<Bucket> validChecker, boolean ignoreCanBePurged) {
-        for (ListIterator<Bucket> iter = cacheValues.listIterator(); iter.hasNext();) {
-            Bucket bucket = iter.next();
+        // Buckets are replaced or removed in-place in the cache table
+        cache.replaceAll(bucket -> {
             if (validChecker.test(bucket) || (!ignoreCanBePurged && !bucket.canBePurged(bucket.next == null))) {
                 // Only remove invalid buckets from the next chain
                 bucket.removeInvalidBucketsFromChain(validChecker, ignoreCanBePurged);
-            } else {
-                // If bucket has a next value, put that one in instead. Remove if all dead.
-                IntVector3 cacheKey = createCacheKey(bucket.blockPosition());
-                while (true) {
-                    bucket.rail_life = RailLookup.LIFE_TIMER_DELETED;
-                    bucket = bucket.next;
-                    if (bucket == null) {
-                        // No more buckets, remove entirely
-                        iter.remove();
-                        cache.remove(cacheKey);
-                        break;
-                    } else if (validChecker.test(bucket) || (!ignoreCanBePurged && !bucket.canBePurged(true))) {
-                        // Set this one, instead. Do remove further next entries that aren't valid
-                        bucket.removeInvalidBucketsFromChain(validChecker, ignoreCanBePurged);
-                        iter.set(bucket);
-                        cache.put(cacheKey, bucket);
-                        break;
-                    }
+                return bucket;
+            }
+
+            // If bucket has a next value, put that one in instead. Remove if all dead.
+            while (true) {
+                bucket.rail_life = RailLookup.LIFE_TIMER_DELETED;
+                bucket = bucket.next;
+                if (bucket == null) {
+                    // No more buckets, remove entirely
+                    return null;
+                } else if (validChecker.test(bucket) || (!ignoreCanBePurged && !bucket.canBePurged(true))) {
+                    // Set this one, instead. Do remove further next entries that aren't valid
+                    bucket.removeInvalidBucketsFromChain(validChecker, ignoreCanBePurged);
+                    return bucket;
                 }
             }
-        }
+        });
     }
 
     @Override
@@ -479,7 +478,9 @@ final class WorldRailLookupImpl implements WorldRailLookup {
 
     @Override
     public Collection<IntVector3> getBlockIndex() {
-        return this.cache.keySet();
+        List<IntVector3> blocks = new ArrayList<>(this.cache.size());
+        this.cache.forEachValue(bucket -> blocks.add(bucket.blockPosition()));
+        return blocks;
     }
 
     /**
@@ -491,13 +492,12 @@ final class WorldRailLookupImpl implements WorldRailLookup {
      * @return Bucket
      */
     private Bucket getOrCreateAtCoordinates(IntVector3 coordinates) {
-        IntVector3 cacheKey = createCacheKey(coordinates);
+        long cacheKey = createCacheKey(coordinates);
         Bucket bucket = this.cache.get(cacheKey);
         if (bucket == null) {
             bucket = new Bucket(this.offlineWorld.getBlockAt(coordinates),
                                  BlockUtil.getBlock(this.world, coordinates));
             this.cache.put(cacheKey, bucket);
-            this.cacheValues.add(bucket);
         }
         return bucket;
     }
@@ -513,7 +513,7 @@ final class WorldRailLookupImpl implements WorldRailLookup {
      * @param positionOfflineBlock
      * @return List of buckets of rails at this block position
      */
-    private Bucket[] discoverBucketsAtPositionBlock(IntVector3 cacheKey, OfflineBlock positionOfflineBlock) {
+    private Bucket[] discoverBucketsAtPositionBlock(long cacheKey, OfflineBlock positionOfflineBlock) {
         // Query the registered Rail Types for whether they exist at this position
         Block positionBlock = positionOfflineBlock.getLoadedBlock();
         if (positionBlock == null) {
@@ -580,9 +580,8 @@ final class WorldRailLookupImpl implements WorldRailLookup {
         return NO_RAILS_AT_POSITION;
     }
 
-    private void addToCache(IntVector3 cacheKey, Bucket bucket) {
+    private void addToCache(long cacheKey, Bucket bucket) {
         cache.put(cacheKey, bucket);
-        cacheValues.add(bucket);
     }
 
     /**
@@ -591,8 +590,8 @@ final class WorldRailLookupImpl implements WorldRailLookup {
      * @param block Offline Block
      * @return Cache lookup key
      */
-    private static IntVector3 createCacheKey(OfflineBlock block) {
-        return block.getPosition();
+    private static long createCacheKey(OfflineBlock block) {
+        return BlockPositionHashMap.key(block.getPosition());
     }
 
     /**
@@ -601,8 +600,8 @@ final class WorldRailLookupImpl implements WorldRailLookup {
      * @param coordinates Block Coordinates
      * @return Cache lookup key
      */
-    private static IntVector3 createCacheKey(IntVector3 coordinates) {
-        return coordinates;
+    private static long createCacheKey(IntVector3 coordinates) {
+        return BlockPositionHashMap.key(coordinates);
     }
 
     /**
@@ -734,20 +733,7 @@ final class WorldRailLookupImpl implements WorldRailLookup {
                 newBucket.next = this;
             }
 
-            // Replace or add to cache values mapping
-            {
-                boolean found = false;
-                for (ListIterator<Bucket> iter = cacheValues.listIterator(); iter.hasNext();) {
-                    if (iter.next() == this) {
-                        iter.set(newBucket);
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
-                    cacheValues.add(newBucket);
-                }
-            }
+            // Replace or add to cache
             cache.put(createCacheKey(newBucket.blockPosition()), newBucket);
 
             return newBucket;
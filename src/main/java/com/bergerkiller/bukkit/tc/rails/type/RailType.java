@@ -45,6 +45,7 @@ public abstract class RailType {
     public static final RailTypePowered BOOST = new RailTypePowered(true);
     public static final RailTypeNone NONE = new RailTypeNone();
     private static List<RailType> values = new ArrayList<RailType>();
+    private static RailTypeDispatchTable dispatchTable;
     private final boolean _isComplexRailBlock;
     private final boolean _isHandlingPhysics;
     private boolean _registered = false;
@@ -56,6 +57,7 @@ public abstract class RailType {
                 values.add(type);
             }
         }
+        dispatchTable = new RailTypeDispatchTable(values);
     }
 
     /**
@@ -97,6 +99,7 @@ public abstract class RailType {
         ArrayList<RailType> newValues = new ArrayList<RailType>(values);
         if (newValues.remove(type)) {
             values = newValues;
+            dispatchTable = new RailTypeDispatchTable(newValues);
             type._registered = false;
             RailLookup.forceUnloadRail(type);
         }
@@ -116,6 +119,7 @@ public abstract class RailType {
             newValues.add(type);
         }
         values = newValues;
+        dispatchTable = new RailTypeDispatchTable(newValues);
         type._registered = true;
         RailLookup.forceRecalculation();
     }
@@ -148,6 +152,10 @@ public abstract class RailType {
      * Tries to find the Rail Type a specific rails block represents.
      * If none is identified, NONE is returned.<br>
      * <br>
+     * The rail type matching the BlockData is remembered for rail types that are not
+     * complex (see {@link #isComplexRailBlock()}). Only complex rail types are checked
+     * every time.<br>
+     * <br>
      * Null input arguments are not allowed.
      *
      * @param railsBlock to get the RailType of
@@ -155,12 +163,7 @@ public abstract class RailType {
      * @return the RailType, or NONE if not found
      */
     public static RailType getType(Block railsBlock, BlockData railsBlockData) {
-        for (RailType type : values()) {
-            if (checkRailTypeIsAt(type, railsBlock, railsBlockData)) {
-                return type;
-            }
-        }
-        return NONE;
+        return dispatchTable.getType(railsBlock, railsBlockData);
     }
 
     /**
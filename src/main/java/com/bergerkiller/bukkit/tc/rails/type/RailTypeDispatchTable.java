@@ -0,0 +1,122 @@
+package com.bergerkiller.bukkit.tc.rails.type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.block.Block;
+
+import com.bergerkiller.bukkit.common.wrappers.BlockData;
+
+/**
+ * Finds the rail type of a rails block. For rail types that are not complex
+ * (see {@link RailType#isComplexRailBlock()}), whether it is the rail type only
+ * depends on the BlockData of the block. The rail type that matches is stored
+ * by the BlockData's combined id, so that it only has to be found once.<br>
+ * <br>
+ * Complex rail types must still be checked every time. Only the complex rail types
+ * registered with a higher priority than the matched rail type are checked.<br>
+ * <br>
+ * A new table is created every time rail types are registered or unregistered.
+ * This class is multi-thread safe.
+ */
+final class RailTypeDispatchTable {
+    /** Combined ids beyond this value are not stored, to limit memory usage */
+    private static final int MAX_COMBINED_ID = 1 << 17;
+    private final RailType[] types;
+    private final RailType[] complexTypes;
+    private final int[] complexTypeIndices;
+    private final Entry none;
+    private volatile Entry[] entries = new Entry[0];
+
+    public RailTypeDispatchTable(List<RailType> values) {
+        this.types = values.toArray(new RailType[values.size()]);
+        this.none = new Entry(RailType.NONE, this.types.length);
+
+        List<RailType> complexTypes = new ArrayList<RailType>();
+        List<Integer> complexTypeIndices = new ArrayList<Integer>();
+        for (int i = 0; i < this.types.length; i++) {
+            if (this.types[i].isComplexRailBlock()) {
+                complexTypes.add(this.types[i]);
+                complexTypeIndices.add(i);
+            }
+        }
+        this.complexTypes = complexTypes.toArray(new RailType[complexTypes.size()]);
+        this.complexTypeIndices = complexTypeIndices.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Finds the Rail Type a rails block represents
+     *
+     * @param railsBlock Rails block
+     * @param railsBlockData BlockData of the rails block
+     * @return the RailType, or NONE if not found
+     */
+    public RailType getType(Block railsBlock, BlockData railsBlockData) {
+        Entry entry = this.getEntry(railsBlockData);
+
+        // Complex rail types registered with a higher priority are checked first
+        final RailType[] complexTypes = this.complexTypes;
+        final int[] complexTypeIndices = this.complexTypeIndices;
+        for (int i = 0; i < complexTypes.length && complexTypeIndices[i] < entry.index; i++) {
+            RailType type = complexTypes[i];
+            if (RailType.checkRailTypeIsAt(type, railsBlock, railsBlockData)) {
+                return type;
+            }
+        }
+
+        return entry.type;
+    }
+
+    private Entry getEntry(BlockData blockData) {
+        int id = blockData.getCombinedId();
+        if (id < 0 || id >= MAX_COMBINED_ID) {
+            return this.findEntry(blockData);
+        }
+
+        Entry[] entries = this.entries;
+        Entry entry;
+        if (id < entries.length && (entry = entries[id]) != null) {
+            return entry;
+        }
+
+        // Find it and store it. If another thread stores an entry at the same time,
+        // one of the two is lost, which only means it has to be found again.
+        entry = this.findEntry(blockData);
+        synchronized (this) {
+            entries = this.entries;
+            if (id >= entries.length) {
+                int newLength = Math.max(256, entries.length);
+                while (newLength <= id) {
+                    newLength <<= 1;
+                }
+                Entry[] newEntries = new Entry[newLength];
+                System.arraycopy(entries, 0, newEntries, 0, entries.length);
+                entries = newEntries;
+            }
+            entries[id] = entry;
+            this.entries = entries;
+        }
+        return entry;
+    }
+
+    private Entry findEntry(BlockData blockData) {
+        final RailType[] types = this.types;
+        for (int i = 0; i < types.length; i++) {
+            RailType type = types[i];
+            if (!type.isComplexRailBlock() && RailType.checkRailTypeIsAt(type, null, blockData)) {
+                return new Entry(type, i);
+            }
+        }
+        return this.none;
+    }
+
+    private static final class Entry {
+        public final RailType type;
+        public final int index;
+
+        public Entry(RailType type, int index) {
+            this.type = type;
+            this.index = index;
+        }
+    }
+}
@@ -35,6 +35,7 @@ import java.util.logging.Level;
 public abstract class SignAction {
     private static List<SignAction> actions = Collections.emptyList();
     private static List<SignAction> actionsWithLoadedChangedHandler = Collections.emptyList();
+    private static SignActionIndex actionIndex = SignActionIndex.EMPTY;
 
     public static void init() {
         actions = new ArrayList<>();
@@ -72,21 +73,27 @@ public abstract class SignAction {
     public static void deinit() {
         actions = Collections.emptyList();
         actionsWithLoadedChangedHandler = Collections.emptyList();
+        actionIndex = SignActionIndex.EMPTY;
     }
 
     /**
-     * Obtains the SignAction meant for a SignActionEvent
+     * Obtains the SignAction meant for a SignActionEvent. Only sign actions that declared
+     * a {@link #getSignTypes() sign type} the sign matches, and sign actions that declared
+     * none, are checked. Which sign actions those are is remembered by the TrackedSign
+     * until the second line of the sign changes.
      *
      * @param event to check
      * @return sign action, or null if not found
      */
     public static SignAction getSignAction(SignActionEvent event) {
-        for (SignAction action : actions) {
-            if (action.match(event) && action.verify(event)) {
-                return action;
-            }
+        SignActionIndex index = actionIndex;
+        TrackedSign sign = event.getTrackedSign();
+        SignActionIndex.Candidates candidates = sign.getCachedActionCandidates();
+        if (candidates == null || !candidates.isValid(index, sign.getLine(1))) {
+            candidates = index.findCandidates(event);
+            sign.setCachedActionCandidates(candidates);
         }
-        return null;
+        return candidates.find(event);
     }
 
     /**
@@ -131,6 +138,8 @@ public abstract class SignAction {
                 }
             }
 
+            actionIndex = new SignActionIndex(actions);
+
             // TrackedSign stores a SignAction too - make sure this is wiped
             RailLookup.forceRecalculation();
         }
@@ -141,6 +150,7 @@ public abstract class SignAction {
         if (actions.isEmpty()) return;
         actions.remove(action);
         actionsWithLoadedChangedHandler.remove(action);
+        actionIndex = new SignActionIndex(actions);
     }
 
     /**
@@ -259,6 +269,12 @@ public abstract class SignAction {
                     }
                 }
 
+                // Connections of path finding nodes passing this rail must be routed again
+                if (info.hasRails() && (destinationName != null || action.isRailSwitcher(info))) {
+                    info.getTrainCarts().getPathProvider().getWorld(info.getWorld())
+                            .rerouteWalkedRail(new BlockLocation(info.getRails()));
+                }
+
                 // Tell train above to update signs, if available
                 if (info.hasRails()) {
                     for (MinecartMember<?> member : info.getRailPiece().members()) {
@@ -304,6 +320,12 @@ public abstract class SignAction {
             String destinationName = action.getRailDestinationName(info);
             action.destroy(info);
 
+            // Connections of path finding nodes passing this rail must be routed again
+            if ((switchable || destinationName != null) && info.hasRails()) {
+                info.getTrainCarts().getPathProvider().getWorld(info.getWorld())
+                        .rerouteWalkedRail(new BlockLocation(info.getRails()));
+            }
+
             // Remove (invalidate) the rails block, if part of path finding logic
             if (destinationName != null) {
                 PathNode node = info.getTrainCarts().getPathProvider().getWorld(info.getWorld()).getNodeByName(destinationName);
@@ -437,6 +459,21 @@ public abstract class SignAction {
      */
     public abstract boolean match(SignActionEvent info);
 
+    /**
+     * Gets the sign types this sign action handles. If this returns one or more sign types,
+     * then {@link #match(SignActionEvent)} is only called for signs whose second line starts
+     * with one of them. The result of it is then remembered for that sign, so match() must
+     * only depend on the text of the sign. Sign types should be specified in lower-case.<br>
+     * <br>
+     * By default returns no sign types, which means match() is called for all signs.
+     *
+     * @return sign types matched by this sign action
+     * @see SignActionEvent#isType(String...)
+     */
+    public String[] getSignTypes() {
+        return new String[0];
+    }
+
     /**
      * Fired when this sign is being executed for a certain event
      *
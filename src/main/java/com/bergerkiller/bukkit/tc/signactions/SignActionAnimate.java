@@ -17,6 +17,11 @@ public class SignActionAnimate extends SignAction {
         return info.isType("animate");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "animate" };
+    }
+
     public void animate(SignActionEvent info) {
         AnimationOptions options = new AnimationOptions();
         options.loadFromSign(info);
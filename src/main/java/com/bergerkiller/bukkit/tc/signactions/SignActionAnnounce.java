@@ -35,6 +35,11 @@ public class SignActionAnnounce extends SignAction {
         return info.isType("announce");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "announce" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         String message = getMessage(info);
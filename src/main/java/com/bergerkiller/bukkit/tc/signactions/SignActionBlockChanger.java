@@ -64,6 +64,11 @@ public class SignActionBlockChanger extends SignAction {
         return info.isType("blockchanger", "setblock", "changeblock");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "blockchanger", "setblock", "changeblock" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (!info.isPowered()) {
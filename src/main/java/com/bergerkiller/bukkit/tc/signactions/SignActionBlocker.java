@@ -20,6 +20,11 @@ public class SignActionBlocker extends SignAction {
         return info.isType("blocker");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "blocker" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (info.getMode() != SignActionMode.NONE && info.hasRailedMember()) {
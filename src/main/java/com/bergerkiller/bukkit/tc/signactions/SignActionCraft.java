@@ -30,6 +30,11 @@ public class SignActionCraft extends SignAction {
         return info.isType("craft");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "craft" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         //parse the sign
@@ -14,6 +14,11 @@ public class SignActionDestroy extends SignAction {
         return info.isType("destroy");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "destroy" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (!info.isPowered()) return;
@@ -36,6 +36,11 @@ public class SignActionEffect extends SignAction {
         return info.isType("effect", "meffect", "peffect");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "effect", "meffect", "peffect" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         boolean move = info.isType("meffect");
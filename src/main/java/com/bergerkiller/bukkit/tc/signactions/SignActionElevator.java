@@ -77,6 +77,11 @@ public class SignActionElevator extends SignAction {
         return info.isType("elevator");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "elevator" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (info.getMode() == SignActionMode.NONE || !info.hasRailedMember() || !info.isPowered()) {
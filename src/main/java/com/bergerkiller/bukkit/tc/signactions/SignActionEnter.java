@@ -38,6 +38,11 @@ public class SignActionEnter extends SignAction {
         return info.getMode() != SignActionMode.NONE && info.isType("enter");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "enter" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         // If triggered by redstone, always activate
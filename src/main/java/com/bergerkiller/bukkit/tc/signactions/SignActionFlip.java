@@ -16,6 +16,11 @@ public class SignActionFlip extends SignAction {
         return info.isType("flip");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "flip" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (!info.isPowered()) {
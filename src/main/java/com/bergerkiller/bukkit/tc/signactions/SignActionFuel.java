@@ -28,6 +28,11 @@ public class SignActionFuel extends SignAction {
         return info.isType("fuel");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "fuel" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (!info.isAction(SignActionType.MEMBER_ENTER, SignActionType.REDSTONE_ON, SignActionType.GROUP_ENTER)) {
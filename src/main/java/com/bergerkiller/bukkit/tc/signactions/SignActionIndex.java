@@ -0,0 +1,163 @@
+package com.bergerkiller.bukkit.tc.signactions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.bergerkiller.bukkit.tc.Util;
+import com.bergerkiller.bukkit.tc.events.SignActionEvent;
+
+/**
+ * Finds the sign actions that could match a sign, using the sign types declared by
+ * sign actions with {@link SignAction#getSignTypes()}. Only the sign actions that
+ * declared a sign type the second line of the sign starts with are matched, as well
+ * as all sign actions that did not declare any sign types.<br>
+ * <br>
+ * A new index is created every time sign actions are registered or unregistered.
+ * The candidates found for a sign are stored with the
+ * {@link com.bergerkiller.bukkit.tc.rails.RailLookup.TrackedSign TrackedSign},
+ * and are used until the second line of the sign changes or a different index is used.
+ */
+public final class SignActionIndex {
+    static final SignActionIndex EMPTY = new SignActionIndex(new ArrayList<SignAction>(0));
+    private final SignAction[] actions;
+    private final boolean[] declared;
+    private final Map<String, int[]> byType = new HashMap<String, int[]>();
+    private final int[] typeLengths;
+
+    SignActionIndex(List<SignAction> actions) {
+        this.actions = actions.toArray(new SignAction[actions.size()]);
+        this.declared = new boolean[this.actions.length];
+
+        Map<String, List<Integer>> indicesByType = new HashMap<String, List<Integer>>();
+        for (int i = 0; i < this.actions.length; i++) {
+            String[] types = getDeclaredTypes(this.actions[i]);
+            this.declared[i] = (types.length > 0);
+            for (String type : types) {
+                List<Integer> indices = indicesByType.computeIfAbsent(type.toLowerCase(Locale.ENGLISH), t -> new ArrayList<Integer>());
+                if (indices.isEmpty() || indices.get(indices.size() - 1) != i) {
+                    indices.add(i);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : indicesByType.entrySet()) {
+            this.byType.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        this.typeLengths = this.byType.keySet().stream().mapToInt(String::length).distinct().sorted().toArray();
+    }
+
+    /**
+     * Finds the sign actions that could match a sign. The sign actions that declared sign
+     * types are only included if they match the sign. The other sign actions are always
+     * included, and must still be matched.
+     *
+     * @param event Event with the sign to find sign actions for
+     * @return Candidates
+     */
+    Candidates findCandidates(SignActionEvent event) {
+        String line = event.getTrackedSign().getLine(1);
+        String lowerLine = Util.cleanSignLine(line).toLowerCase(Locale.ENGLISH);
+
+        // Select all actions whose sign type the second line starts with
+        boolean[] selected = new boolean[this.actions.length];
+        for (int length : this.typeLengths) {
+            if (length > lowerLine.length()) {
+                break;
+            }
+            int[] indices = this.byType.get(lowerLine.substring(0, length));
+            if (indices != null) {
+                for (int index : indices) {
+                    selected[index] = true;
+                }
+            }
+        }
+
+        // Keep them in the order they were registered
+        int count = 0;
+        SignAction[] candidates = new SignAction[this.actions.length];
+        boolean[] matched = new boolean[this.actions.length];
+        for (int i = 0; i < this.actions.length; i++) {
+            if (!this.declared[i]) {
+                candidates[count++] = this.actions[i];
+            } else if (selected[i] && this.actions[i].match(event)) {
+                matched[count] = true;
+                candidates[count++] = this.actions[i];
+            }
+        }
+        return new Candidates(this, line,
+                Arrays.copyOf(candidates, count),
+                Arrays.copyOf(matched, count));
+    }
+
+    /**
+     * Gets the sign types declared by a sign action. If a subclass overrides
+     * {@link SignAction#match(SignActionEvent)} without also overriding
+     * {@link SignAction#getSignTypes()}, the declared sign types can not be trusted.
+     */
+    private static String[] getDeclaredTypes(SignAction action) {
+        String[] types = action.getSignTypes();
+        if (types == null || types.length == 0) {
+            return new String[0];
+        }
+        try {
+            Class<?> matchClass = action.getClass().getMethod("match", SignActionEvent.class).getDeclaringClass();
+            Class<?> typesClass = action.getClass().getMethod("getSignTypes").getDeclaringClass();
+            if (matchClass != typesClass && typesClass.isAssignableFrom(matchClass)) {
+                return new String[0];
+            }
+        } catch (NoSuchMethodException ex) {
+            return new String[0];
+        }
+        return types;
+    }
+
+    /**
+     * The sign actions that could match a particular sign
+     */
+    public static final class Candidates {
+        private final SignActionIndex index;
+        private final String line;
+        private final SignAction[] actions;
+        private final boolean[] matched;
+
+        private Candidates(SignActionIndex index, String line, SignAction[] actions, boolean[] matched) {
+            this.index = index;
+            this.line = line;
+            this.actions = actions;
+            this.matched = matched;
+        }
+
+        /**
+         * Gets whether these candidates can be used for a sign
+         *
+         * @param index The current sign action index
+         * @param line The current second line of the sign
+         * @return True if these candidates are still valid
+         */
+        boolean isValid(SignActionIndex index, String line) {
+            return this.index == index && this.line.equals(line);
+        }
+
+        /**
+         * Finds the first sign action that matches and verifies the event
+         *
+         * @param event Event
+         * @return sign action, or null if none matched
+         */
+        SignAction find(SignActionEvent event) {
+            final SignAction[] actions = this.actions;
+            final boolean[] matched = this.matched;
+            for (int i = 0; i < actions.length; i++) {
+                SignAction action = actions[i];
+                if ((matched[i] || action.match(event)) && action.verify(event)) {
+                    return action;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -23,6 +23,11 @@ public class SignActionJumper extends SignAction {
         return info.isType("jump") && info.getMode() != SignActionMode.NONE;
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "jump" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (!info.isPowered() || !info.hasMember()) {
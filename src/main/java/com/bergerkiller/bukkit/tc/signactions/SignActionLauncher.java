@@ -21,6 +21,11 @@ public class SignActionLauncher extends SignAction {
         return info.isType("launch");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "launch" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (!info.isAction(SignActionType.GROUP_ENTER, SignActionType.REDSTONE_ON) || !info.isPowered()) {
@@ -23,6 +23,11 @@ public class SignActionMutex extends SignAction {
         return info.isType("mutex", "smartmutex", "smutex");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "mutex", "smartmutex", "smutex" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
     }
@@ -23,6 +23,11 @@ public class SignActionSkip extends SignAction {
         return info.isType("skip");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "skip" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (!info.isPowered()) return;
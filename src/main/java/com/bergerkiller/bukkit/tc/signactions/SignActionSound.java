@@ -23,6 +23,11 @@ public class SignActionSound extends SignAction {
         return info.isType("sound", "msound");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "sound", "msound" };
+    }
+
     public ResourceKey<SoundEffect> getSound(SignActionEvent info) {
         try {
             return SoundEffect.fromName(info.getLine(2) + info.getLine(3));
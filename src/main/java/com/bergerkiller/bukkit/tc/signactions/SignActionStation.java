@@ -19,6 +19,11 @@ public class SignActionStation extends SignAction {
         return info.isType("station") && info.getMode() != SignActionMode.NONE;
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "station" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (!info.isAction(SignActionType.REDSTONE_CHANGE, SignActionType.GROUP_ENTER, SignActionType.GROUP_LEAVE)) {
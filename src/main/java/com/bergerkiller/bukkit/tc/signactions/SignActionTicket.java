@@ -29,6 +29,11 @@ public class SignActionTicket extends SignAction {
         return info.isType("ticket");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "ticket" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         Economy economy = info.getTrainCarts().getEconomy();
@@ -13,6 +13,11 @@ public class SignActionTrigger extends SignAction {
         return info.isType("trigger");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "trigger" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (info.isAction(SignActionType.REDSTONE_ON, SignActionType.GROUP_ENTER, SignActionType.REDSTONE_OFF)) {
@@ -24,6 +24,11 @@ public class SignActionWait extends SignAction {
         return info.isType("wait");
     }
 
+    @Override
+    public String[] getSignTypes() {
+        return new String[] { "wait" };
+    }
+
     @Override
     public void execute(SignActionEvent info) {
         if (info.isAction(SignActionType.GROUP_ENTER) && info.isPowered()) {
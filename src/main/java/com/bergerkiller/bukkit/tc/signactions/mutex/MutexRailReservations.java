@@ -0,0 +1,85 @@
+package com.bergerkiller.bukkit.tc.signactions.mutex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+import com.bergerkiller.bukkit.tc.rails.BlockPositionHashMap;
+
+/**
+ * Maps the rail blocks within a mutex zone slot to the groups that reserved them.
+ * This finds the groups that could be using a rail block with a single lookup, rather
+ * than checking every group that entered the slot.<br>
+ * <br>
+ * Reservations are not removed when a group stops using a rail block. Instead, every
+ * lookup checks whether the groups found still reserve the rail block, and removes
+ * the reservations that are no longer valid. When a group leaves the slot, all its
+ * reservations are removed with {@link #remove(Object)}. This map is not multi-thread safe.
+ *
+ * @param <G> Group type
+ */
+final class MutexRailReservations<G> {
+    private final BlockPositionHashMap<ArrayList<G>> reservations = new BlockPositionHashMap<>();
+
+    /**
+     * Gets the number of rail blocks that have reservations
+     *
+     * @return number of rail blocks
+     */
+    public int size() {
+        return reservations.size();
+    }
+
+    /**
+     * Reserves a rail block for a group. Does nothing if the group already
+     * reserved the rail block.
+     *
+     * @param rail Rail block coordinates
+     * @param group Group that reserves the rail block
+     */
+    public void reserve(IntVector3 rail, G group) {
+        long key = BlockPositionHashMap.key(rail);
+        ArrayList<G> groups = reservations.get(key);
+        if (groups == null) {
+            groups = new ArrayList<>(2);
+            reservations.put(key, groups);
+        } else if (groups.contains(group)) {
+            return;
+        }
+        groups.add(group);
+    }
+
+    /**
+     * Finds the groups that reserved a rail block. Groups for which the predicate
+     * returns false no longer reserve the rail block, and are removed.
+     *
+     * @param rail Rail block coordinates
+     * @param isReserved Checks whether a group still reserves the rail block
+     * @param result List to add the groups that reserved the rail block to
+     */
+    public void find(IntVector3 rail, Predicate<G> isReserved, List<G> result) {
+        long key = BlockPositionHashMap.key(rail);
+        ArrayList<G> groups = reservations.get(key);
+        if (groups != null) {
+            groups.removeIf(isReserved.negate());
+            if (groups.isEmpty()) {
+                reservations.remove(key);
+            } else {
+                result.addAll(groups);
+            }
+        }
+    }
+
+    /**
+     * Removes all the reservations of a group
+     *
+     * @param group Group whose reservations to remove
+     */
+    public void remove(G group) {
+        reservations.replaceAll(groups -> {
+            groups.remove(group);
+            return groups.isEmpty() ? null : groups;
+        });
+    }
+}
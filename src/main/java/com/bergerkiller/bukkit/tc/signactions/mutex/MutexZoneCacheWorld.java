@@ -15,6 +15,7 @@ import com.bergerkiller.bukkit.common.utils.LogicUtil;
 import com.bergerkiller.bukkit.common.utils.MathUtil;
 import com.bergerkiller.bukkit.common.wrappers.LongHashMap;
 import com.bergerkiller.bukkit.tc.controller.components.RailPath;
+import com.bergerkiller.bukkit.tc.rails.RailLookup;
 import com.bergerkiller.bukkit.tc.utils.TrackWalkingPoint;
 
 /**
@@ -25,6 +26,8 @@ public class MutexZoneCacheWorld {
     private final OfflineWorld world;
     private final Map<IntVector3, MutexZone> bySignPosition = new HashMap<>();
     private final LongHashMap<MutexZone[]> byChunk = new LongHashMap<>();
+    // Incremented every time zones are added or removed, invalidates MovingPoint caches
+    private int revision = 0;
 
     public MutexZoneCacheWorld(OfflineWorld world) {
         this.world = world;
@@ -42,6 +45,25 @@ public class MutexZoneCacheWorld {
         return new MovingPoint(blockPosition.getChunkX(), blockPosition.getChunkZ());
     }
 
+    /**
+     * Tracks the mutex zones starting at a block position. If the previous moving point
+     * was created for this world, it is moved to the new position and re-used, so that
+     * the mutex zones it found before don't have to be looked up again.
+     *
+     * @param previous Previous moving point returned by this method or {@link #track(IntVector3)},
+     *                 can be null
+     * @param blockPosition Block position to move to
+     * @return moving point at the block position
+     */
+    public MovingPoint track(MovingPoint previous, IntVector3 blockPosition) {
+        if (previous != null && previous.getCache() == this) {
+            previous.moveTo(blockPosition.getChunkX(), blockPosition.getChunkZ());
+            return previous;
+        } else {
+            return track(blockPosition);
+        }
+    }
+
     public MutexZone find(IntVector3 position) {
         MutexZone[] inChunk = byChunk.get(position.getChunkX(), position.getChunkZ());
         if (inChunk != null) {
@@ -100,6 +122,8 @@ public class MutexZoneCacheWorld {
 
     public void add(MutexZone zone) {
         bySignPosition.put(zone.signBlock.getPosition(), zone);
+        notifyTrackChanged(zone);
+        revision++;
 
         // Usually only one zone sits in a chunk. This optimizes that case.
         MutexZone[] singleZone = new MutexZone[] {zone};
@@ -128,6 +152,9 @@ public class MutexZoneCacheWorld {
     public MutexZone removeAtSign(IntVector3 signPosition) {
         MutexZone zone = bySignPosition.remove(signPosition);
         if (zone != null) {
+            notifyTrackChanged(zone);
+            revision++;
+
             // De-register in all the chunks
             int chunkMinX = zone.start.getChunkX();
             int chunkMaxX = zone.end.getChunkX();
@@ -152,7 +179,19 @@ public class MutexZoneCacheWorld {
         return zone;
     }
 
+    private void notifyTrackChanged(MutexZone zone) {
+        World world = getWorld();
+        if (world != null) {
+            RailLookup.notifyTrackChanged(world, zone.start.x, zone.start.z, zone.end.x, zone.end.z);
+        }
+    }
+
     public void clear() {
+        World world = getWorld();
+        if (world != null) {
+            RailLookup.notifyTrackChanged(world);
+        }
+        revision++;
         bySignPosition.clear();
         byChunk.clear();
     }
@@ -160,14 +199,34 @@ public class MutexZoneCacheWorld {
     /**
      * Tracks the mutex zones at given block positions. Automatically retrieves the mutex zones
      * at chunk boundaries. Should be used when querying the mutex zones along a trail of rail
-     * blocks that don't change chunk coordinates often.
+     * blocks that don't change chunk coordinates often.<br>
+     * <br>
+     * The mutex zones found in the last chunk, and in the last range of chunks crossed by a
+     * ray, are remembered. As long as queries stay within the same chunks, and no mutex zones
+     * are added or removed, the chunks are not looked up again. A moving point can be kept
+     * around and moved using {@link MutexZoneCacheWorld#track(MovingPoint, IntVector3)} to
+     * keep these between ticks.
      */
     public final class MovingPoint {
+        private int revision;
+        // Chunk the point was moved to, and whether zones are nearby it
+        private int nearChunkX;
+        private int nearChunkZ;
+        private boolean near;
+        private boolean nearValid;
+        // Last single chunk queried
         private int chunkX;
         private int chunkZ;
         private MutexZone[] chunkZones;
+        // Last range of chunks queried, with the mutex zones inside (de-duplicated)
+        private int rangeMinX, rangeMinZ, rangeMaxX, rangeMaxZ;
+        private MutexZone[] rangeZones = null;
 
         private MovingPoint(int chunkX, int chunkZ) {
+            this.revision = MutexZoneCacheWorld.this.revision;
+            this.nearChunkX = chunkX;
+            this.nearChunkZ = chunkZ;
+            this.nearValid = false;
             this.chunkX = chunkX;
             this.chunkZ = chunkZ;
 
@@ -175,6 +234,30 @@ public class MutexZoneCacheWorld {
             this.chunkZones = (zones == null) ? NO_ZONES : zones;
         }
 
+        private MutexZoneCacheWorld getCache() {
+            return MutexZoneCacheWorld.this;
+        }
+
+        private void moveTo(int chunkX, int chunkZ) {
+            if (chunkX != this.nearChunkX || chunkZ != this.nearChunkZ) {
+                this.nearChunkX = chunkX;
+                this.nearChunkZ = chunkZ;
+                this.nearValid = false;
+            }
+        }
+
+        private void checkRevision() {
+            int currentRevision = MutexZoneCacheWorld.this.revision;
+            if (this.revision != currentRevision) {
+                // Zones were added or removed, forget everything that was found before
+                this.revision = currentRevision;
+                this.nearValid = false;
+                this.rangeZones = null;
+                MutexZone[] zones = byChunk.get(this.chunkX, this.chunkZ);
+                this.chunkZones = (zones == null) ? NO_ZONES : zones;
+            }
+        }
+
         /**
          * Gets the mutex zones that exist crossing a ray between the current
          * position on a track walking point path and the final position of the
@@ -204,52 +287,23 @@ public class MutexZoneCacheWorld {
         public MutexZoneResult get(RailPath.Position p1, RailPath.Position p2) {
             p1.assertAbsolute();
             p2.assertAbsolute();
+            checkRevision();
 
             int cx1 = MathUtil.toChunk(p1.posX);
             int cz1 = MathUtil.toChunk(p1.posZ);
             int cx2 = MathUtil.toChunk(p2.posX);
             int cz2 = MathUtil.toChunk(p2.posZ);
 
-            // Iterate the chunks visited from p1 to p2
             // If same chunk, skip some special logic that combines mutex zones together
-            List<MutexZone> zones;
+            MutexZone[] zones;
             if (cx1 == cx2 && cz1 == cz2) {
-                zones = Arrays.asList(findZonesInChunk(cx1, cz1));
+                zones = findZonesInChunk(cx1, cz1);
             } else {
-                zones = Collections.emptyList();
-
-                final int cx_step = (cx1 > cx2) ? -1 : 1;
-                final int cz_step = (cz1 > cz2) ? -1 : 1;
-                int cz = cz1;
-                while (true) {
-                    int cx = cx1;
-                    while (true) {
-                        // Loops from cx1/cz1 -> cx2/cz2
-                        {
-                            for (MutexZone zone : findZonesInChunk(cx, cz)) {
-                                if (zones.isEmpty()) {
-                                    zones = new ArrayList<>(4);
-                                    zones.add(zone);
-                                } else if (!zones.contains(zone)) {
-                                    zones.add(zone);
-                                }
-                            }
-                        }
-
-                        if (cx == cx2)
-                            break;
-                        else
-                            cx += cx_step;
-                    }
-
-                    if (cz == cz2)
-                        break;
-                    else
-                        cz += cz_step;
-                }
+                zones = findZonesInRange(Math.min(cx1, cx2), Math.min(cz1, cz2),
+                                         Math.max(cx1, cx2), Math.max(cz1, cz2));
             }
 
-            if (zones.isEmpty()) {
+            if (zones.length == 0) {
                 return null;
             }
 
@@ -306,21 +360,62 @@ public class MutexZoneCacheWorld {
             }
         }
 
+        private MutexZone[] findZonesInRange(int minX, int minZ, int maxX, int maxZ) {
+            // Re-use the zones found last time when crossing the same chunks
+            if (this.rangeZones != null &&
+                    minX == this.rangeMinX && minZ == this.rangeMinZ &&
+                    maxX == this.rangeMaxX && maxZ == this.rangeMaxZ)
+            {
+                return this.rangeZones;
+            }
+
+            // Iterate the chunks and combine the mutex zones found in them
+            List<MutexZone> zones = Collections.emptyList();
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                for (int cx = minX; cx <= maxX; cx++) {
+                    MutexZone[] zonesAtChunk = byChunk.get(cx, cz);
+                    if (zonesAtChunk != null) {
+                        for (MutexZone zone : zonesAtChunk) {
+                            if (zones.isEmpty()) {
+                                zones = new ArrayList<>(4);
+                                zones.add(zone);
+                            } else if (!zones.contains(zone)) {
+                                zones.add(zone);
+                            }
+                        }
+                    }
+                }
+            }
+
+            this.rangeMinX = minX;
+            this.rangeMinZ = minZ;
+            this.rangeMaxX = maxX;
+            this.rangeMaxZ = maxZ;
+            this.rangeZones = zones.isEmpty() ? NO_ZONES : zones.toArray(NO_ZONES);
+            return this.rangeZones;
+        }
+
         /**
-         * Checks whether there are any mutex zones nearby the current chunk
-         * this moving point is tracking. This checks whether there are mutex
-         * zones in this current chunk, or any of the neighbouring chunks.
+         * Checks whether there are any mutex zones nearby the chunk this
+         * moving point was created or last moved at. This checks whether there
+         * are mutex zones in this chunk, or any of the neighbouring chunks.
+         * The result is remembered until the point moves into another chunk.
          *
          * @return True if there are mutex zones nearby
          */
         public boolean isNear() {
-            if (chunkZones != NO_ZONES) {
-                return true;
+            checkRevision();
+            if (!this.nearValid) {
+                this.near = computeIsNear();
+                this.nearValid = true;
             }
+            return this.near;
+        }
 
+        private boolean computeIsNear() {
             for (int cz = -1; cz <= 1; cz++) {
                 for (int cx = -1; cx <= 1; cx++) {
-                    if ((cx != 0 || cz != 0) && byChunk.contains(this.chunkX + cx, this.chunkZ + cz)) {
+                    if (byChunk.contains(this.nearChunkX + cx, this.nearChunkZ + cz)) {
                         return true;
                     }
                 }
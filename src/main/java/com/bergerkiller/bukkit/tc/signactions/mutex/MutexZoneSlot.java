@@ -31,6 +31,13 @@ public class MutexZoneSlot {
     private static final int TICK_DELAY_CLEAR_AUTOMATIC = 6; // Tick delay until a group is fully cleared from a mutex (and lever toggles up)
     private final String name;
     private final List<EnteredGroup> entered = new ArrayList<>(2);
+    /** Rail blocks stored by the entered groups, to find groups that might conflict with a rail block */
+    private final MutexRailReservations<EnteredGroup> railReservations = new MutexRailReservations<>();
+    /** Entered groups that might lock the full slot. Can contain groups that no longer do. */
+    private final ArrayList<EnteredGroup> fullLockingGroups = new ArrayList<>(2);
+    /** Re-used by findConflictCandidates() */
+    private final ArrayList<EnteredGroup> conflictCandidates = new ArrayList<>();
+    private int enteredCounter = 0;
     private List<MutexZone> zones;
     private List<String> statements;
     private int tickLastHardEntered = 0;
@@ -115,6 +122,7 @@ public class MutexZoneSlot {
                 EnteredGroup enteredGroup = iter.next();
                 if (!enteredGroup.refresh()) {
                     iter.remove();
+                    this.releaseRailReservations(enteredGroup);
                     trainsHaveLeft = true;
                 } else if (enteredGroup.hardEnter) {
                     hasHardEnteredGroup = true;
@@ -126,6 +134,44 @@ public class MutexZoneSlot {
         }
     }
 
+    /**
+     * Marks an entered group that was removed from this slot as removed, and drops
+     * all the rail blocks it reserved right away
+     *
+     * @param enteredGroup Entered group that was removed
+     */
+    private void releaseRailReservations(EnteredGroup enteredGroup) {
+        enteredGroup.removed = true;
+        this.railReservations.remove(enteredGroup);
+        this.fullLockingGroups.remove(enteredGroup);
+    }
+
+    /**
+     * Finds the entered groups that might have stored a rail block, or that lock the
+     * full slot. Other entered groups can not conflict with the rail block.
+     * The groups are returned in the same order as they entered.
+     *
+     * @param railBlock Rail block
+     * @return entered groups that might conflict with the rail block
+     */
+    private List<EnteredGroup> findConflictCandidates(final IntVector3 railBlock) {
+        ArrayList<EnteredGroup> candidates = this.conflictCandidates;
+        candidates.clear();
+        this.railReservations.find(railBlock, g -> !g.removed && g.occupiedRails.contains(railBlock), candidates);
+        for (Iterator<EnteredGroup> iter = this.fullLockingGroups.iterator(); iter.hasNext();) {
+            EnteredGroup enteredGroup = iter.next();
+            if (enteredGroup.removed || !enteredGroup.occupiedRails.isFullLocking()) {
+                iter.remove();
+            } else if (!candidates.contains(enteredGroup)) {
+                candidates.add(enteredGroup);
+            }
+        }
+        if (candidates.size() > 1) {
+            candidates.sort((a, b) -> Integer.compare(a.order, b.order));
+        }
+        return candidates;
+    }
+
     /**
      * Looks up the EnteredGroup of a MinecartGroup, if it had
      * (tried to) enter in the recent past.
@@ -174,6 +220,7 @@ public class MutexZoneSlot {
                         EnteredGroup entered = iter.next();
                         if (entered.group == group) {
                             iter.remove();
+                            this.releaseRailReservations(entered);
                             wasGroupHardEntered = entered.hardEnter;
                         } else if (entered.hardEnter) {
                             hasHardEnteredGroup = true;
@@ -342,9 +389,14 @@ public class MutexZoneSlot {
          */
         private final ArrayList<EnteredGroup> groupsDeactivatingMe = new ArrayList<>(2);
         private IntVector3 groupsDeactivatingMeConflictRail = null;
+        /** Order in which groups were entered into the slot */
+        private final int order;
+        /** Set once this group is removed from the slot */
+        private boolean removed = false;
 
         public EnteredGroup(MinecartGroup group, double distanceToMutex, int nowTicks) {
             this.group = group;
+            this.order = ++enteredCounter;
             this.probeTick = this.creationTick = nowTicks;
             this.occupiedTick = nowTicks; // Not set
             this.distanceToMutex = distanceToMutex;
@@ -441,6 +493,12 @@ public class MutexZoneSlot {
                 // This is important when resolving the order of restoring trains when a train
                 // leaves the mutex zone, and the zone contains smart mutexes.
                 boolean addedNewSlot = this.occupiedRails.add(type, railBlock, this.probeTick);
+                if (addedNewSlot) {
+                    railReservations.reserve(railBlock, this);
+                }
+                if (!wasFullyLocked && occupiedRails.isFullLocking() && !fullLockingGroups.contains(this)) {
+                    fullLockingGroups.add(this);
+                }
 
                 // If already occupied fully a previous tick/previous update, and this was not
                 // cancelled by deactivate(), then we can skip all the expensive logic down below.
@@ -460,7 +518,8 @@ public class MutexZoneSlot {
 
             // Remove all soft-entered groups that share rails in common (or if null, any and all)
             // If we find another group that already hard-entered the mutex, cancel.
-            for (EnteredGroup enteredGroup : MutexZoneSlot.this.entered) {
+            // Only groups that stored this rail block, or lock the full slot, can share rails.
+            for (EnteredGroup enteredGroup : findConflictCandidates(railBlock)) {
                 if (enteredGroup == this) {
                     continue;
                 }
@@ -660,6 +719,17 @@ public class MutexZoneSlot {
             }
         }
 
+        /**
+         * Gets whether a rail block is currently stored. Does not verify that the rail
+         * block is still used.
+         *
+         * @param railBlock Rail block
+         * @return True if stored
+         */
+        public boolean contains(IntVector3 railBlock) {
+            return rails.containsKey(railBlock);
+        }
+
         public boolean add(MutexZoneSlotType type, IntVector3 railBlock, int nowTicks) {
             Map<IntVector3, RailSlot> currRails = this.rails;
             if (currRails == INITIAL_RAILS) {
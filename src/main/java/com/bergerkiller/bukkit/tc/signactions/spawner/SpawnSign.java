@@ -36,6 +36,7 @@ public class SpawnSign {
     private String spawnFormat;
     private LongHashMap<SignSpawnChunk> chunks = new LongHashMap<SignSpawnChunk>();
     private int num_chunks_loaded = 0;
+    SpawnSignManager.WakeUp wakeUp = null; // Set while waiting in the queue of the manager
 
     SpawnSign(TrainCarts plugin, OfflineSignStore store, OfflineSign sign, SpawnSignManager.SpawnSignMetadata metadata) {
         this.plugin = plugin;
@@ -230,6 +231,15 @@ public class SpawnSign {
         }
     }
 
+    /**
+     * Gets whether the chunks kept loaded for spawning will be freed in a few ticks
+     *
+     * @return True if chunks are being freed
+     */
+    boolean isFreeingChunks() {
+        return this.ticksUntilFreeing > 0;
+    }
+
     /**
      * Removes this spawn sign from the spawn sign manager
      */
@@ -5,9 +5,11 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 import org.bukkit.block.Block;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -23,7 +25,11 @@ import com.bergerkiller.bukkit.tc.offline.sign.OfflineSignStore;
 /**
  * Tracks all the spawn signs globally on the server, and tracks the regular
  * interval of spawning trains at them. Every tick new chunks are routinely loaded
- * asynchronously prior to new spawns to minimize performance problems.
+ * asynchronously prior to new spawns to minimize performance problems.<br>
+ * <br>
+ * Spawn signs that are not close to spawning are put in a queue sorted by the time
+ * their warmup starts, and are not looked at until then. Only the signs that are
+ * warming up, spawning, or freeing their chunks after spawning are updated every tick.
  */
 public class SpawnSignManager {
     public static final long SPAWN_WARMUP_TIME = 10000; // give 10 seconds time to load chunks
@@ -32,6 +38,8 @@ public class SpawnSignManager {
     private final UpdateTask updateTask;
     private final Map<OfflineBlock, SpawnSign> signs = new HashMap<OfflineBlock, SpawnSign>();
     private List<SpawnSign> cachedSortedSigns = null; // when null, is re-sorted
+    private final PriorityQueue<WakeUp> wakeUpQueue = new PriorityQueue<WakeUp>();
+    private final LinkedHashSet<SpawnSign> tickedSigns = new LinkedHashSet<SpawnSign>();
 
     public SpawnSignManager(TrainCarts plugin) {
         this.plugin = plugin;
@@ -45,6 +53,7 @@ public class SpawnSignManager {
                 SpawnSign spawnSign = signs.get(sign.getBlock());
                 if (spawnSign != null) {
                     spawnSign.updateState(sign, newValue);
+                    scheduleUpdate(spawnSign);
                     notifyChanged();
                 }
             }
@@ -53,6 +62,7 @@ public class SpawnSignManager {
             public void onAdded(OfflineSignStore store, OfflineSign sign, SpawnSignMetadata metadata) {
                 SpawnSign newSpawnSign = new SpawnSign(plugin, store, sign, metadata);
                 signs.put(sign.getBlock(), newSpawnSign);
+                scheduleUpdate(newSpawnSign);
                 notifyChanged();
             }
 
@@ -61,6 +71,7 @@ public class SpawnSignManager {
                 SpawnSign removedSign = signs.remove(sign.getBlock());
                 if (removedSign != null) {
                     removedSign.loadChunksAsyncReset();
+                    unschedule(removedSign);
                 }
                 notifyChanged();
             }
@@ -121,6 +132,8 @@ public class SpawnSignManager {
         }
         this.signs.clear();
         this.cachedSortedSigns = null;
+        this.wakeUpQueue.clear();
+        this.tickedSigns.clear();
     }
 
     /**
@@ -204,6 +217,58 @@ public class SpawnSignManager {
         this.cachedSortedSigns = null;
     }
 
+    /**
+     * Makes sure a spawn sign is updated next tick, after which it is scheduled
+     * again based on the time remaining until it spawns.
+     *
+     * @param sign Spawn sign to update
+     */
+    private void scheduleUpdate(SpawnSign sign) {
+        sign.wakeUp = null;
+        this.tickedSigns.add(sign);
+    }
+
+    private void unschedule(SpawnSign sign) {
+        sign.wakeUp = null;
+        this.tickedSigns.remove(sign);
+    }
+
+    private void scheduleWakeUp(SpawnSign sign, long time) {
+        WakeUp wakeUp = new WakeUp(sign, time);
+        sign.wakeUp = wakeUp;
+        this.tickedSigns.remove(sign);
+        this.wakeUpQueue.add(wakeUp);
+    }
+
+    /**
+     * Updates a single spawn sign that is ticked
+     *
+     * @param sign Spawn sign to update
+     * @param previousTime Time of the previous tick
+     * @param currentTime Time of the current tick
+     */
+    private void updateSign(SpawnSign sign, long previousTime, long currentTime) {
+        long remainingMillis = sign.getRemaining(previousTime, currentTime);
+        if (remainingMillis > SPAWN_LOAD_DEBOUNCE) {
+            sign.loadChunksAsyncResetAuto();
+            if (!sign.isFreeingChunks()) {
+                if (remainingMillis == Long.MAX_VALUE) {
+                    unschedule(sign); // Inactive, updated again when it changes
+                } else {
+                    scheduleWakeUp(sign, currentTime + remainingMillis - SPAWN_WARMUP_TIME);
+                }
+            }
+        } else if (remainingMillis == 0) {
+            // Stays ticked. Spawning may remove the sign, which un-schedules it.
+            sign.spawn();
+        } else if (remainingMillis <= SPAWN_WARMUP_TIME) {
+            // Warmup! How many chunks are loaded versus should be loaded by now?
+            sign.loadChunksAsync(1.0 - ((double) (remainingMillis-1000) / (double) SPAWN_WARMUP_TIME));
+        } else {
+            scheduleWakeUp(sign, currentTime + remainingMillis - SPAWN_WARMUP_TIME);
+        }
+    }
+
     private class UpdateTask extends Task {
         private long previousTime = Long.MAX_VALUE;
 
@@ -215,15 +280,22 @@ public class SpawnSignManager {
         public void run() {
             long currentTime = System.currentTimeMillis();
             if (previousTime != Long.MAX_VALUE) {
-                for (SpawnSign pending : getSigns()) {
-                    long remainingMillis = pending.getRemaining(previousTime, currentTime);
-                    if (remainingMillis > SPAWN_LOAD_DEBOUNCE) {
-                        pending.loadChunksAsyncResetAuto();
-                    } else if (remainingMillis == 0) {
-                        pending.spawn();
-                    } else if (remainingMillis <= SPAWN_WARMUP_TIME) {
-                        // Warmup! How many chunks are loaded versus should be loaded by now?
-                        pending.loadChunksAsync(1.0 - ((double) (remainingMillis-1000) / (double) SPAWN_WARMUP_TIME));
+                // Signs whose warmup starts now are ticked from now on
+                WakeUp wakeUp;
+                while ((wakeUp = wakeUpQueue.peek()) != null && wakeUp.time <= currentTime) {
+                    wakeUpQueue.poll();
+                    if (wakeUp.sign.wakeUp == wakeUp) {
+                        wakeUp.sign.wakeUp = null;
+                        tickedSigns.add(wakeUp.sign);
+                    }
+                }
+
+                // Spawning trains can add or remove spawn signs, so iterate a copy
+                if (!tickedSigns.isEmpty()) {
+                    for (SpawnSign pending : tickedSigns.toArray(new SpawnSign[tickedSigns.size()])) {
+                        if (tickedSigns.contains(pending)) {
+                            updateSign(pending, previousTime, currentTime);
+                        }
                     }
                 }
             }
@@ -232,6 +304,25 @@ public class SpawnSignManager {
 
     }
 
+    /**
+     * A spawn sign waiting in the queue until its warmup starts.
+     * Is discarded when the sign is scheduled again before then.
+     */
+    static final class WakeUp implements Comparable<WakeUp> {
+        public final SpawnSign sign;
+        public final long time;
+
+        public WakeUp(SpawnSign sign, long time) {
+            this.sign = sign;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(WakeUp other) {
+            return Long.compare(this.time, other.time);
+        }
+    }
+
     public static final class SpawnSignMetadata {
         public final long intervalMillis;
         public final long autoSpawnStartTime;
@@ -0,0 +1,162 @@
+package com.bergerkiller.bukkit.tc.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import com.bergerkiller.bukkit.common.config.BasicConfiguration;
+import com.bergerkiller.bukkit.common.config.ConfigurationNode;
+import com.bergerkiller.bukkit.tc.TCConfig;
+import com.bergerkiller.bukkit.tc.TrainCarts;
+
+/**
+ * Writes the save files of TrainCarts on a small pool of background threads.
+ * The state to save is copied on the main thread, which is much cheaper than
+ * encoding it. Encoding the copy into YAML or bytes and writing it to disk
+ * is then done in the background, with different files written in parallel.<br>
+ * <br>
+ * Every file is first written to a temporary file, which then replaces the file.
+ * A file that is saved again while a previous save of it has not completed is
+ * written after that previous save, so the newest state always ends up on disk.
+ */
+public class AsyncSaveWriter {
+    private final TrainCarts plugin;
+    private final ConcurrentHashMap<File, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor = null;
+
+    public AsyncSaveWriter(TrainCarts plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Saves a YAML configuration to a file. A copy of the configuration is made
+     * right away, so it can be changed again once this method returns.
+     *
+     * @param name Name of the store being saved, used when logging
+     * @param file File to write to
+     * @param config Configuration to save
+     */
+    public void write(String name, File file, ConfigurationNode config) {
+        final BasicConfiguration snapshot = new BasicConfiguration();
+        config.cloneInto(snapshot);
+        snapshot.setHeader(config.getHeader());
+        write(name, file, () -> snapshot.saveToString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Saves data to a file. The data is encoded on a background thread, so
+     * the supplier must only use state that is not changed anymore.
+     *
+     * @param name Name of the store being saved, used when logging
+     * @param file File to write to
+     * @param encoder Encodes the data to write to the file
+     */
+    public synchronized void write(String name, File file, Supplier<byte[]> encoder) {
+        ThreadPoolExecutor executor = this.executor;
+        if (executor == null) {
+            this.executor = executor = createExecutor();
+        }
+
+        final ThreadPoolExecutor writeExecutor = executor;
+        final Runnable task = () -> writeFile(name, file, encoder);
+        final CompletableFuture<Void> future = pending.compute(file, (f, previous) -> (previous == null)
+                ? CompletableFuture.runAsync(task, writeExecutor)
+                : previous.thenRunAsync(task, writeExecutor));
+        future.whenComplete((unused, t) -> pending.remove(file, future));
+    }
+
+    /**
+     * Waits until all files that are being saved have been written
+     */
+    public void flush() {
+        CompletableFuture<?>[] futures = pending.values().toArray(new CompletableFuture<?>[0]);
+        try {
+            CompletableFuture.allOf(futures).get(60, TimeUnit.SECONDS);
+        } catch (Throwable t) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to wait for all files to be saved", t);
+        }
+    }
+
+    /**
+     * Waits until all files have been saved, and then stops the background threads.
+     * A new pool of threads is started when files are saved again.
+     */
+    public void shutdown() {
+        flush();
+        ThreadPoolExecutor executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) { /* ignore */ }
+        }
+    }
+
+    private void writeFile(String name, File file, Supplier<byte[]> encoder) {
+        long startTime = System.nanoTime();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            byte[] data = encoder.get();
+            long encodeTime = System.nanoTime();
+
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                dir.mkdirs();
+            }
+            try (OutputStream stream = new FileOutputStream(tmpFile)) {
+                stream.write(data);
+            }
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException | UnsupportedOperationException ex) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            if (TCConfig.logAutoSave) {
+                long endTime = System.nanoTime();
+                plugin.log(Level.INFO, "Saved " + name + " (" + data.length + " bytes) in " +
+                        ((endTime - startTime) / 1000000.0) + "ms (encoding " +
+                        ((encodeTime - startTime) / 1000000.0) + "ms)");
+            }
+        } catch (IOException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to save " + name + " to " + file, ex);
+            tmpFile.delete();
+        } catch (Throwable t) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to encode " + name + " for saving", t);
+        }
+    }
+
+    private ThreadPoolExecutor createExecutor() {
+        int numThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "TC-SaveWriterThread-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
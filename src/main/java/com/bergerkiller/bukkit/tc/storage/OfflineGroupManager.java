@@ -22,22 +22,38 @@ import org.bukkit.Chunk;
 import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Minecart;
+import org.bukkit.entity.Player;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
+/**
+ * Stores the trains that are not loaded, and restores them when the chunks they are in load.
+ * The map of trains of every world is guarded by its own lock. The map of worlds to these
+ * maps is guarded by a separate lock, which is only held while looking up or changing
+ * which worlds have a map.<br>
+ * <br>
+ * Trains are only stored and restored on the main thread. Unloading a world or refreshing
+ * its trains holds the lock of its map while trains are stored, which takes the lock of the
+ * map of worlds. Other threads must therefore not hold the lock of the map of worlds while
+ * waiting for the lock of a map of trains. Trains waiting to be restored are restored
+ * without holding the lock of their map.
+ */
 public class OfflineGroupManager {
     public static Long lastUnloadChunk = null;
     private static boolean chunkLoadReq = false;
     private static boolean isRefreshingGroups = false;
-    private static Map<String, OfflineGroup> containedTrains = new HashMap<>();
-    private static HashSet<UUID> containedMinecarts = new HashSet<>();
+    private static Map<String, OfflineGroup> containedTrains = new ConcurrentHashMap<>();
+    private static Set<UUID> containedMinecarts = ConcurrentHashMap.newKeySet();
     private static final OfflineWorldMap<OfflineGroupMapImpl> managers = new OfflineWorldMap<OfflineGroupMapImpl>();
+    private static int lastRestoredCount = 0;
+    private static long lastRestoreTime = 0L;
 
     private static OfflineGroupMapImpl get(OfflineWorld world) {
         // Note: computeIfAbsent bug!
@@ -59,6 +75,30 @@ public class OfflineGroupManager {
         return map;
     }
 
+    private static OfflineGroupMapImpl getOrCreate(World world) {
+        synchronized (managers) {
+            return get(world);
+        }
+    }
+
+    private static OfflineGroupMapImpl getIfExists(World world) {
+        synchronized (managers) {
+            return managers.get(world);
+        }
+    }
+
+    private static OfflineGroupMapImpl getIfExists(OfflineWorld world) {
+        synchronized (managers) {
+            return managers.get(world);
+        }
+    }
+
+    private static List<OfflineGroupMapImpl> getAllMaps() {
+        synchronized (managers) {
+            return new ArrayList<>(managers.values());
+        }
+    }
+
     public static void unloadWorld(World world) {
         ArrayList<MinecartGroup> groupsOnWorld = new ArrayList<>();
         for (MinecartGroup group : MinecartGroup.getGroups().cloneAsIterable()) {
@@ -67,9 +107,8 @@ public class OfflineGroupManager {
             }
         }
 
-        synchronized (managers) {
-            final OfflineGroupMapImpl map = get(world);
-
+        final OfflineGroupMapImpl map = getOrCreate(world);
+        synchronized (map) {
             // Mark as handling the world unload event
             // This makes sure it doesn't try to restore the trains we are
             // trying to unload, or miscalculate the number of unloaded chunks.
@@ -77,6 +116,9 @@ public class OfflineGroupManager {
             try {
                 groupsOnWorld.forEach(MinecartGroup::unload);
 
+                // Trains waiting to be restored can no longer be restored
+                map.cancelRestores();
+
                 // Reset loaded chunk count for OfflineGroups to 0
                 map.values().forEach(group -> group.updateLoadedChunks(map));
             } finally {
@@ -91,23 +133,22 @@ public class OfflineGroupManager {
         if (isRefreshingGroups) {
             return;
         }
-        synchronized (managers) {
-            OfflineGroupMapImpl map = managers.get(chunk.getWorld());
-            if (map != null && map.canRestoreGroups()) {
-                if (map.isEmpty()) {
-                    managers.remove(chunk.getWorld());
-                } else {
-                    Set<OfflineGroup> groups = map.removeFromChunk(chunk);
-                    if (groups != null) {
-                        for (OfflineGroup group : groups) {
-                            if (group.testFullyLoaded()) {
-                                //a participant to be restored
-                                if (group.updateLoadedChunks(map)) {
-                                    map.restoreGroup(plugin, group);
-                                } else {
-                                    //add it again
-                                    map.add(group);
-                                }
+        OfflineGroupMapImpl map = getIfExists(chunk.getWorld());
+        if (map == null) {
+            return;
+        }
+        synchronized (map) {
+            if (map.canRestoreGroups() && !map.isEmpty()) {
+                Set<OfflineGroup> groups = map.removeFromChunk(chunk);
+                if (groups != null) {
+                    for (OfflineGroup group : groups) {
+                        if (group.testFullyLoaded()) {
+                            //a participant to be restored
+                            if (group.updateLoadedChunks(map)) {
+                                map.queueRestore(plugin, group);
+                            } else {
+                                //add it again
+                                map.add(group);
                             }
                         }
                     }
@@ -116,18 +157,110 @@ public class OfflineGroupManager {
         }
     }
 
+    /**
+     * Restores the trains waiting to be restored since the chunks they are in loaded.
+     * Trains nearest to players are restored first. Stops once the time configured with
+     * {@link TCConfig#restoreTrainsTimePerTick} has passed, leaving the remaining trains
+     * for the next tick. Should be called every tick.
+     *
+     * @param plugin TrainCarts plugin instance
+     */
+    public static void restoreQueuedGroups(TrainCarts plugin) {
+        long startTime = System.nanoTime();
+        long deadline = startTime + (long) (TCConfig.restoreTrainsTimePerTick * 1000000.0);
+        int restoredCount = 0;
+        restoreMaps:
+        for (OfflineGroupMapImpl map : getAllMaps()) {
+            List<OfflineGroup> groups;
+            synchronized (map) {
+                if (!map.hasQueuedRestores()) {
+                    continue;
+                }
+                groups = map.getQueuedRestoresNearestFirst();
+            }
+
+            // Restoring a train can store other trains, so do not hold the lock of the map
+            // Restores at least one train, even if the deadline already passed
+            for (OfflineGroup group : groups) {
+                try {
+                    boolean canRestore;
+                    synchronized (map) {
+                        canRestore = map.takeQueuedRestore(group);
+                    }
+                    if (canRestore) {
+                        group.create(plugin, group.world.getLoadedWorld());
+                        restoredCount++;
+                    }
+                } catch (Throwable t) {
+                    plugin.getLogger().log(Level.SEVERE, "Unhandled error restoring train " + group.name, t);
+                }
+                if (System.nanoTime() >= deadline) {
+                    break restoreMaps;
+                }
+            }
+        }
+        lastRestoredCount = restoredCount;
+        lastRestoreTime = (restoredCount == 0) ? 0L : (System.nanoTime() - startTime);
+    }
+
+    /**
+     * Gets the number of trains whose chunks are loaded, that are waiting to be restored
+     *
+     * @return number of trains waiting to be restored
+     */
+    public static int getRestoreBacklog() {
+        int count = 0;
+        for (OfflineGroupMapImpl map : getAllMaps()) {
+            synchronized (map) {
+                count += map.getQueuedRestoreCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of trains waiting to be restored on every world that has any
+     *
+     * @return map of world to the number of trains waiting to be restored
+     */
+    public static Map<OfflineWorld, Integer> getRestoreBacklogByWorld() {
+        Map<OfflineWorld, Integer> result = new LinkedHashMap<>();
+        for (OfflineGroupMapImpl map : getAllMaps()) {
+            synchronized (map) {
+                if (map.hasQueuedRestores()) {
+                    result.put(map.getWorld(), map.getQueuedRestoreCount());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of trains restored by the last call to {@link #restoreQueuedGroups(TrainCarts)}
+     *
+     * @return number of restored trains
+     */
+    public static int getLastRestoredCount() {
+        return lastRestoredCount;
+    }
+
+    /**
+     * Gets the time the last call to {@link #restoreQueuedGroups(TrainCarts)} spent restoring trains
+     *
+     * @return time in nanoseconds
+     */
+    public static long getLastRestoreTime() {
+        return lastRestoreTime;
+    }
+
     public static void unloadChunk(Chunk chunk) {
-        synchronized (managers) {
-            OfflineGroupMap map = managers.get(chunk.getWorld());
-            if (map != null) {
-                if (map.isEmpty()) {
-                    managers.remove(chunk.getWorld());
-                } else {
-                    Set<OfflineGroup> groupset = map.getFromChunk(chunk);
-                    if (groupset != null) {
-                        for (OfflineGroup group : groupset) {
-                            group.loadedChunks.remove(MathUtil.longHashToLong(chunk.getX(), chunk.getZ()));
-                        }
+        OfflineGroupMap map = getIfExists(chunk.getWorld());
+        if (map != null) {
+            synchronized (map) {
+                Set<OfflineGroup> groupset = map.getFromChunk(chunk);
+                if (groupset != null) {
+                    for (OfflineGroup group : groupset) {
+                        group.loadedChunks.remove(MathUtil.longHashToLong(chunk.getX(), chunk.getZ()));
                     }
                 }
             }
@@ -140,13 +273,26 @@ public class OfflineGroupManager {
         }
     }
 
+    /**
+     * Restores all trains on a world whose chunks are loaded right away, including
+     * the trains waiting to be restored
+     *
+     * @param traincarts TrainCarts plugin instance
+     * @param world World to restore trains on
+     */
     public static void refresh(TrainCarts traincarts, World world) {
         synchronized (managers) {
             OfflineGroupMapImpl map = managers.get(world);
-            if (map != null) {
-                if (map.isEmpty()) {
-                    managers.remove(world);
-                } else if (map.canRestoreGroups()) {
+            if (map != null && map.isEmpty()) {
+                managers.remove(world);
+                return;
+            }
+        }
+
+        OfflineGroupMapImpl map = getIfExists(world);
+        if (map != null) {
+            synchronized (map) {
+                if (map.canRestoreGroups()) {
                     map.refreshGroups(traincarts);
                 }
             }
@@ -179,9 +325,12 @@ public class OfflineGroupManager {
      */
     public static Map<OfflineGroup, List<ForcedChunk>> getForceLoadedChunks(World world) {
         Map<OfflineGroup, List<ForcedChunk>> chunks = new HashMap<>();
-        synchronized (managers) {
-            OfflineGroupMap map = managers.get(world);
-            if (map != null && !map.isEmpty() && map.canRestoreGroups()) {
+        OfflineGroupMap map = getIfExists(world);
+        if (map == null) {
+            return chunks;
+        }
+        synchronized (map) {
+            if (!map.isEmpty() && map.canRestoreGroups()) {
                 for (OfflineGroup group : map.values()) {
                     TrainProperties prop = TrainProperties.get(group.name);
                     if (prop == null || !prop.isKeepingChunksLoaded()) {
@@ -198,7 +347,8 @@ public class OfflineGroupManager {
     }
 
     public static boolean isDestroyingGroupOf(Minecart minecart) {
-        return get(minecart.getWorld()).isDestroyingMinecart(minecart.getUniqueId());
+        OfflineGroupMap map = getIfExists(minecart.getWorld());
+        return map != null && map.isDestroyingMinecart(minecart.getUniqueId());
     }
 
     /**
@@ -224,12 +374,9 @@ public class OfflineGroupManager {
         }
 
         // Find the group manager for this world
-        OfflineGroupMap map;
-        synchronized (managers) {
-            map = managers.get(group.world);
-            if (map == null) {
-                return CompletableFuture.completedFuture(Boolean.FALSE);
-            }
+        OfflineGroupMap map = getIfExists(group.world);
+        if (map == null) {
+            return CompletableFuture.completedFuture(Boolean.FALSE);
         }
 
         // Remove asynchronously
@@ -277,12 +424,11 @@ public class OfflineGroupManager {
 
         // Get a list of all offline groups on this world
         final List<OfflineGroup> offlineGroups;
-        final OfflineGroupMap map;
-        synchronized (managers) {
-            map = managers.get(world);
-            if (map == null) {
-                offlineGroups = Collections.emptyList();
-            } else {
+        final OfflineGroupMap map = getIfExists(world);
+        if (map == null) {
+            offlineGroups = Collections.emptyList();
+        } else {
+            synchronized (map) {
                 offlineGroups = new ArrayList<>(map.values());
             }
         }
@@ -456,28 +602,31 @@ public class OfflineGroupManager {
      * @param filename - The groupdata file to write to
      */
     public static void save(String filename) {
+        //clear empty worlds
         synchronized (managers) {
-            new DataWriter(filename) {
-                public void write(DataOutputStream stream) throws IOException {
-                    //clear empty worlds
-                    Iterator<OfflineGroupMapImpl> iter = managers.values().iterator();
-                    while (iter.hasNext()) {
-                        if (iter.next().isEmpty()) {
-                            iter.remove();
-                        }
-                    }
+            Iterator<OfflineGroupMapImpl> iter = managers.values().iterator();
+            while (iter.hasNext()) {
+                if (iter.next().isEmpty()) {
+                    iter.remove();
+                }
+            }
+        }
 
-                    //Write it
-                    stream.writeInt(managers.size());
-                    for (Map.Entry<OfflineWorld, OfflineGroupMapImpl> entry : managers.entrySet()) {
-                        StreamUtil.writeUUID(stream, entry.getKey().getUniqueId());
+        // Do not hold the lock of the map of worlds while waiting for the lock of each map
+        final List<OfflineGroupMapImpl> maps = getAllMaps();
+        new DataWriter(filename) {
+            public void write(DataOutputStream stream) throws IOException {
+                stream.writeInt(maps.size());
+                for (OfflineGroupMapImpl map : maps) {
+                    StreamUtil.writeUUID(stream, map.getWorld().getUniqueId());
 
-                        stream.writeInt(entry.getValue().size());
-                        for (OfflineGroup wg : entry.getValue()) wg.writeTo(stream);
+                    synchronized (map) {
+                        stream.writeInt(map.size());
+                        for (OfflineGroup wg : map) wg.writeTo(stream);
                     }
                 }
-            }.write();
-        }
+            }
+        }.write();
     }
 
     /**
@@ -493,9 +642,9 @@ public class OfflineGroupManager {
         if (world == null) {
             return;
         }
-        synchronized (managers) {
-            OfflineGroup wg = new OfflineGroup(group);
-            OfflineGroupMapImpl map = get(world);
+        OfflineGroup wg = new OfflineGroup(group);
+        OfflineGroupMapImpl map = getOrCreate(world);
+        synchronized (map) {
             wg.updateLoadedChunks(map);
             map.add(wg);
         }
@@ -517,8 +666,8 @@ public class OfflineGroupManager {
 
     public static int getStoredCountInLoadedWorlds() {
         int count = 0;
-        synchronized (managers) {
-            for (OfflineGroupMapImpl map : managers.values()) {
+        for (OfflineGroupMapImpl map : getAllMaps()) {
+            synchronized (map) {
                 if (map.canRestoreGroups()) {
                     count += map.size();
                 }
@@ -537,8 +686,8 @@ public class OfflineGroupManager {
     }
 
     public static void rename(String oldtrainname, String newtrainname) {
-        synchronized (managers) {
-            for (OfflineGroupMap map : managers.values()) {
+        for (OfflineGroupMap map : getAllMaps()) {
+            synchronized (map) {
                 for (OfflineGroup group : map) {
                     if (group.name.equals(oldtrainname)) {
                         group.name = newtrainname;
@@ -552,9 +701,9 @@ public class OfflineGroupManager {
     }
 
     public static void removeMember(UUID memberUUID) {
-        synchronized (managers) {
-            if (containedMinecarts.remove(memberUUID)) {
-                for (OfflineGroupMap map : managers.values()) {
+        if (containedMinecarts.remove(memberUUID)) {
+            for (OfflineGroupMap map : getAllMaps()) {
+                synchronized (map) {
                     if (map.removeCart(memberUUID)) {
                         break;
                     }
@@ -564,8 +713,8 @@ public class OfflineGroupManager {
     }
 
     public static void removeGroup(String groupName) {
-        synchronized (managers) {
-            for (OfflineGroupMap map : managers.values()) {
+        for (OfflineGroupMap map : getAllMaps()) {
+            synchronized (map) {
                 OfflineGroup group = map.remove(groupName);
                 if (group != null) {
                     break;
@@ -575,8 +724,8 @@ public class OfflineGroupManager {
     }
 
     public static OfflineGroup findGroup(String groupName) {
-        synchronized (managers) {
-            for (OfflineGroupMap map : managers.values()) {
+        for (OfflineGroupMap map : getAllMaps()) {
+            synchronized (map) {
                 for (OfflineGroup group : map.values()) {
                     if (group.name.equals(groupName)) {
                         return group;
@@ -600,6 +749,8 @@ public class OfflineGroupManager {
     }
 
     private static final class OfflineGroupMapImpl extends OfflineGroupMap {
+        // Groups whose chunks are all loaded, waiting to be restored
+        private final LinkedHashSet<OfflineGroup> restoreQueue = new LinkedHashSet<>();
 
         public OfflineGroupMapImpl(OfflineWorld world) {
             super(world);
@@ -610,7 +761,107 @@ public class OfflineGroupManager {
             group.create(plugin, group.world.getLoadedWorld());
         }
 
+        /**
+         * Restores a group whose chunks are all loaded during a later tick, or right away
+         * if restoring is not spread out over multiple ticks
+         *
+         * @param plugin TrainCarts plugin instance
+         * @param group Group to restore
+         */
+        public void queueRestore(TrainCarts plugin, OfflineGroup group) {
+            if (TCConfig.restoreTrainsTimePerTick <= 0.0) {
+                restoreGroup(plugin, group);
+            } else {
+                restoreQueue.add(group);
+            }
+        }
+
+        public boolean hasQueuedRestores() {
+            return !restoreQueue.isEmpty();
+        }
+
+        public int getQueuedRestoreCount() {
+            return restoreQueue.size();
+        }
+
+        /**
+         * Gets the groups waiting to be restored, sorted so that the groups
+         * nearest to players come first
+         *
+         * @return Groups waiting to be restored
+         */
+        public List<OfflineGroup> getQueuedRestoresNearestFirst() {
+            List<OfflineGroup> groups = new ArrayList<>(restoreQueue);
+            if (groups.size() > 1) {
+                World world = getWorld().getLoadedWorld();
+                List<Player> players = (world == null) ? Collections.emptyList() : world.getPlayers();
+                if (!players.isEmpty()) {
+                    Map<OfflineGroup, Long> distances = new HashMap<>(groups.size());
+                    for (OfflineGroup group : groups) {
+                        distances.put(group, getChunkDistanceSquared(group, players));
+                    }
+                    groups.sort(Comparator.comparingLong(distances::get));
+                }
+            }
+            return groups;
+        }
+
+        /**
+         * Takes a group out of the queue of groups waiting to be restored. If all its chunks
+         * are still loaded, it is removed from this map so that it can be restored.
+         * Otherwise it waits for its chunks to load again.
+         *
+         * @param group Group waiting to be restored
+         * @return True if the group can be restored now
+         */
+        public boolean takeQueuedRestore(OfflineGroup group) {
+            // Could have been restored or removed while restoring other groups
+            if (!restoreQueue.remove(group)) {
+                return false;
+            }
+            if (group.updateLoadedChunks(this)) {
+                this.remove(group);
+                return true;
+            } else {
+                // Chunks unloaded again, wait for them to load again
+                add(group);
+                return false;
+            }
+        }
+
+        /**
+         * Stops restoring the groups waiting to be restored. They will be restored
+         * again once their chunks load again.
+         */
+        public void cancelRestores() {
+            if (!restoreQueue.isEmpty()) {
+                List<OfflineGroup> groups = new ArrayList<>(restoreQueue);
+                restoreQueue.clear();
+                for (OfflineGroup group : groups) {
+                    group.updateLoadedChunks(this);
+                    add(group);
+                }
+            }
+        }
+
+        private static long getChunkDistanceSquared(OfflineGroup group, List<Player> players) {
+            long minDistSq = Long.MAX_VALUE;
+            for (Player player : players) {
+                int pcx = MathUtil.toChunk(player.getLocation().getX());
+                int pcz = MathUtil.toChunk(player.getLocation().getZ());
+                for (OfflineMember member : group.members) {
+                    long dx = member.cx - pcx;
+                    long dz = member.cz - pcz;
+                    minDistSq = Math.min(minDistSq, dx * dx + dz * dz);
+                }
+            }
+            return minDistSq;
+        }
+
         public void refreshGroups(TrainCarts traincarts) {
+            // Groups waiting to be restored are restored right away if they can be
+            cancelRestores();
+
             // While refreshing, ignore incoming Chunk Load events
             // We do not want the group map to change concurrently!
             isRefreshingGroups = true;
@@ -648,6 +899,7 @@ public class OfflineGroupManager {
         @Override
         public void remove(OfflineGroup group) {
             super.remove(group);
+            restoreQueue.remove(group);
             containedTrains.remove(group.name);
             for (OfflineMember member : group.members) {
                 containedMinecarts.remove(member.entityUID);
@@ -476,7 +476,7 @@ public class TicketStore {
         for (Ticket ticket : ticketMap.values()) {
             ticket.save(config.getNode(ticket.getName()));
         }
-        config.save();
+        traincarts.getSaveWriter().write("tickets", traincarts.getDataFile(saveFileName), config);
         hasChanges = false;
     }
 }
@@ -0,0 +1,296 @@
+package com.bergerkiller.bukkit.tc.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Implementation of the CircularFIFOQueue with a maximum size, that replaces values
+ * that were not taken yet with newer values. Uses synchronized methods for both put
+ * and take, like {@link CircularFIFOQueueSynchronized}. Which values are replaced
+ * or dropped is decided by a {@link Policy}.<br>
+ * <br>
+ * Values are grouped by a key. When a value is put that can replace the value last
+ * put with the same key, and that value was not taken yet, the older value is replaced.
+ * The newer value keeps the place of the older value in the queue.<br>
+ * <br>
+ * When the queue holds the maximum number of values, values that the policy permits
+ * dropping are not put at all. Other values are always put, even if this exceeds
+ * the maximum size.
+ *
+ * @param <E> Element type stored in the queue
+ */
+public class CircularFIFOQueueCoalescing<E> implements CircularFIFOQueue<E> {
+    private final Policy<E> policy;
+    private final int maxSize;
+    private final Map<Object, Slot<E>> lastByKey = new HashMap<>();
+    private Slot<E>[] buffer;
+    private int readPos;
+    private int size;
+    private long coalescedCount = 0;
+    private long droppedCount = 0;
+    // Is set when abort() is called
+    private boolean aborted = false;
+    // Is set to true while wait() is busy (synchronized)
+    private boolean waiting = false;
+    // Callback is called when a put() is done on an empty queue
+    // Can be used to kick-start a reading operation on another thread
+    private Runnable wakeCallback = () -> {};
+
+    /**
+     * Creates a new coalescing queue
+     *
+     * @param policy Policy that decides which values are replaced or dropped
+     * @param maxSize Maximum number of values above which values are dropped.
+     *                Use 0 or less for no maximum.
+     */
+    public CircularFIFOQueueCoalescing(Policy<E> policy, int maxSize) {
+        this(policy, maxSize, 64);
+    }
+
+    @SuppressWarnings("unchecked")
+    public CircularFIFOQueueCoalescing(Policy<E> policy, int maxSize, int initialCapacity) {
+        this.policy = policy;
+        this.maxSize = (maxSize <= 0) ? Integer.MAX_VALUE : maxSize;
+        this.buffer = new Slot[Math.max(1, initialCapacity)];
+        this.readPos = 0;
+        this.size = 0;
+    }
+
+    @Override
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Gets the number of values currently in the queue that have not been taken yet
+     *
+     * @return size
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the total number of values that replaced an older value in the queue
+     *
+     * @return coalesced value count
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Gets the total number of values that were not put because the queue was full
+     *
+     * @return dropped value count
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    public synchronized void abort() {
+        aborted = true;
+        notifyAll();
+    }
+
+    @Override
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    @Override
+    public synchronized void setWakeCallback(Runnable callback) {
+        wakeCallback = callback;
+    }
+
+    @Override
+    public synchronized boolean runIfEmpty(Runnable runnable) {
+        if (size == 0) {
+            runnable.run();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized E take(long timeoutMillis) throws EmptyQueueException {
+        if (this.size == 0) {
+            if (timeoutMillis <= 0 || this.aborted) {
+                throw EmptyQueueException.INSTANCE;
+            }
+
+            if (timeoutMillis == Long.MAX_VALUE) {
+                try {
+                    waiting = true;
+                    do {
+                        if (this.aborted) {
+                            throw EmptyQueueException.INSTANCE;
+                        }
+                        try {
+                            this.wait();
+                        } catch (InterruptedException e) {}
+                    } while (this.size == 0);
+                } finally {
+                    waiting = false;
+                }
+            } else {
+                try {
+                    waiting = true;
+                    long deadline = System.currentTimeMillis() + timeoutMillis;
+                    long remaining = timeoutMillis;
+                    while (true) {
+                        if (this.aborted) {
+                            throw EmptyQueueException.INSTANCE;
+                        }
+                        try {
+                            this.wait(remaining);
+                        } catch (InterruptedException e) {}
+                        if (this.size != 0) {
+                            break;
+                        } else if ((remaining = (deadline - System.currentTimeMillis())) < 0) {
+                            throw EmptyQueueException.INSTANCE;
+                        }
+                    }
+                } finally {
+                    waiting = false;
+                }
+            }
+        }
+
+        Slot<E>[] buffer = this.buffer;
+        int rpos = this.readPos;
+        Slot<E> slot = buffer[rpos];
+        buffer[rpos] = null;
+        if (++rpos == buffer.length) {
+            rpos = 0;
+        }
+        this.readPos = rpos;
+        this.size--;
+
+        // Newer values with the same key can no longer replace this one
+        if (slot.key != null && this.lastByKey.get(slot.key) == slot) {
+            this.lastByKey.remove(slot.key);
+        }
+        return slot.value;
+    }
+
+    @Override
+    public void put(E value) {
+        offer(value);
+    }
+
+    /**
+     * Puts a value into this FIFO queue, and returns whether it was added as a new value.
+     * Is multithread-safe.
+     *
+     * @param value Value to put
+     * @return True if the value was added to the queue. False if it replaced an older value,
+     *         or was dropped because the queue is full.
+     */
+    public synchronized boolean offer(E value) {
+        Object key = this.policy.getKey(value);
+        if (key != null) {
+            Slot<E> last = this.lastByKey.get(key);
+            if (last != null && this.policy.canReplace(last.value, value)) {
+                last.value = value;
+                this.coalescedCount++;
+                return false;
+            }
+        } else if (this.policy.isBarrier(value)) {
+            // Values put before can no longer be replaced, as that would change their order
+            this.lastByKey.clear();
+        }
+
+        if (this.size >= this.maxSize && this.policy.canDrop(value)) {
+            this.droppedCount++;
+            return false;
+        }
+
+        Slot<E> slot = new Slot<E>(value, key);
+        if (key != null) {
+            this.lastByKey.put(key, slot);
+        }
+
+        Slot<E>[] buffer = this.buffer;
+        if (this.size == buffer.length) {
+            // Grow the buffer to add more elements, keeping them in the same order
+            @SuppressWarnings("unchecked")
+            Slot<E>[] new_buffer = new Slot[buffer.length * 2];
+            int tail = buffer.length - this.readPos;
+            System.arraycopy(buffer, this.readPos, new_buffer, 0, tail);
+            System.arraycopy(buffer, 0, new_buffer, tail, this.readPos);
+            this.buffer = buffer = new_buffer;
+            this.readPos = 0;
+        }
+
+        int wpos = this.readPos + this.size;
+        if (wpos >= buffer.length) {
+            wpos -= buffer.length;
+        }
+        buffer[wpos] = slot;
+        if (++this.size == 1) {
+            if (this.waiting) {
+                this.notifyAll();
+            } else {
+                this.wakeCallback.run();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decides which values put into a {@link CircularFIFOQueueCoalescing} replace older
+     * values, and which values are dropped when the queue is full.
+     *
+     * @param <E> Element type stored in the queue
+     */
+    public static interface Policy<E> {
+        /**
+         * Gets the key of a value. Only the value last put with the same key can be
+         * replaced by a newer value.
+         *
+         * @param value Value
+         * @return key of the value, or null if the value can not replace or be replaced
+         */
+        Object getKey(E value);
+
+        /**
+         * Gets whether a newer value can replace an older value with the same key,
+         * that was not taken yet
+         *
+         * @param older Older value put before
+         * @param newer Newer value being put
+         * @return True if the older value is replaced by the newer value
+         */
+        boolean canReplace(E older, E newer);
+
+        /**
+         * Gets whether a value without a key, once put, stops all values put before
+         * it from being replaced
+         *
+         * @param value Value without a key
+         * @return True if the value is a barrier
+         */
+        boolean isBarrier(E value);
+
+        /**
+         * Gets whether a value can be dropped when the queue is full
+         *
+         * @param value Value
+         * @return True if the value can be dropped
+         */
+        boolean canDrop(E value);
+    }
+
+    private static final class Slot<E> {
+        public E value;
+        public final Object key;
+
+        public Slot(E value, Object key) {
+            this.value = value;
+            this.key = key;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.bergerkiller.bukkit.tc.controller.components.RailPath;
 import com.bergerkiller.bukkit.tc.controller.components.RailPiece;
 import com.bergerkiller.bukkit.tc.controller.components.RailState;
 import com.bergerkiller.bukkit.tc.controller.components.RailTracker.TrackedRail;
+import com.bergerkiller.bukkit.tc.rails.RailLookup;
 import org.bukkit.block.Block;
 
 /**
@@ -57,6 +58,7 @@ public class RailJunctionSwitcher {
         // Switch the rails, permanently altering the logic
         // Also notify a physics change, so trains recalculate things
         MinecartGroupStore.notifyPhysicsChange();
+        RailLookup.notifyTrackChanged(this.rail.block());
         this.rail.type().switchJunction(this.rail.block(), from, to);
 
         // Move all minecarts that are currently on this rail to the new junction path.
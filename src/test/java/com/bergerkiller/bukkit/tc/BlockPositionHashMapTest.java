@@ -0,0 +1,167 @@
+package com.bergerkiller.bukkit.tc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+import com.bergerkiller.bukkit.tc.rails.BlockPositionHashMap;
+
+/**
+ * Tests the block position hash map used by the rail cache, and compares
+ * its performance with the HashMap and values list that were used before.
+ */
+public class BlockPositionHashMapTest {
+
+    @Test
+    public void testKeyPacking() {
+        assertNotEquals(BlockPositionHashMap.key(1, 2, 3), BlockPositionHashMap.key(3, 2, 1));
+        assertNotEquals(BlockPositionHashMap.key(-1, 0, 0), BlockPositionHashMap.key(0, -1, 0));
+        assertNotEquals(BlockPositionHashMap.key(-30000000, -2048, 30000000),
+                        BlockPositionHashMap.key(30000000, 2047, -30000000));
+        assertEquals(BlockPositionHashMap.key(5, -64, -7),
+                     BlockPositionHashMap.key(new IntVector3(5, -64, -7)));
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(1234);
+        BlockPositionHashMap<Integer> map = new BlockPositionHashMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int n = 0; n < 200000; n++) {
+            long key = BlockPositionHashMap.key(random.nextInt(100) - 50, random.nextInt(40) - 20, random.nextInt(100) - 50);
+            int op = random.nextInt(10);
+            if (op < 4) {
+                assertEquals(expected.put(key, n), map.put(key, n));
+            } else if (op < 7) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else if (op < 9) {
+                assertEquals(expected.get(key), map.get(key));
+            } else if (random.nextInt(500) == 0) {
+                // Sweep: remove even values, increment the others
+                map.replaceAll(v -> ((v & 1) == 0) ? null : v + 1);
+                expected.values().removeIf(v -> (v & 1) == 0);
+                expected.replaceAll((k, v) -> v + 1);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        List<Integer> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertEquals(expected.size(), values.size());
+        assertTrue(values.containsAll(expected.values()));
+    }
+
+    @Ignore
+    @Test
+    public void testPerformance() {
+        for (int count : new int[] { 10000, 100000, 1000000 }) {
+            IntVector3[] blocks = createBlocks(count);
+            for (int run = 0; run < 3; run++) {
+                System.out.println("Blocks: " + count);
+                testHashMapPerformance(blocks);
+                testBlockPositionHashMapPerformance(blocks);
+            }
+        }
+    }
+
+    private static void testHashMapPerformance(IntVector3[] blocks) {
+        long start = System.nanoTime();
+        Map<IntVector3, Object> cache = new HashMap<>();
+        List<Object> cacheValues = new ArrayList<>();
+        for (IntVector3 block : blocks) {
+            Object value = new Object();
+            cache.put(block, value);
+            cacheValues.add(value);
+        }
+        long insertTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int found = 0;
+        for (int n = 0; n < 10; n++) {
+            for (IntVector3 block : blocks) {
+                // The rail cache created a new IntVector3 for every lookup
+                if (cache.get(new IntVector3(block.x, block.y, block.z)) != null) {
+                    found++;
+                }
+            }
+        }
+        long lookupTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int index = 0;
+        for (ListIterator<Object> iter = cacheValues.listIterator(); iter.hasNext();) {
+            iter.next();
+            if ((index & 1) == 0) {
+                iter.remove();
+                cache.remove(blocks[index]);
+            }
+            index++;
+        }
+        long sweepTime = System.nanoTime() - start;
+
+        print("HashMap", insertTime, lookupTime, sweepTime, found);
+    }
+
+    private static void testBlockPositionHashMapPerformance(IntVector3[] blocks) {
+        long start = System.nanoTime();
+        BlockPositionHashMap<Object> cache = new BlockPositionHashMap<>();
+        for (IntVector3 block : blocks) {
+            cache.put(BlockPositionHashMap.key(block), new Object());
+        }
+        long insertTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int found = 0;
+        for (int n = 0; n < 10; n++) {
+            for (IntVector3 block : blocks) {
+                if (cache.get(BlockPositionHashMap.key(block.x, block.y, block.z)) != null) {
+                    found++;
+                }
+            }
+        }
+        long lookupTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final int[] index = new int[1];
+        cache.replaceAll(v -> ((index[0]++ & 1) == 0) ? null : v);
+        long sweepTime = System.nanoTime() - start;
+
+        print("BlockPositionHashMap", insertTime, lookupTime, sweepTime, found);
+    }
+
+    private static IntVector3[] createBlocks(int count) {
+        // Rails are mostly laid out in lines, so generate lines of rails in random directions
+        Random random = new Random(count);
+        IntVector3[] blocks = new IntVector3[count];
+        int x = 0, y = 64, z = 0;
+        for (int i = 0; i < count; i++) {
+            if ((i % 64) == 0) {
+                x = random.nextInt(20000) - 10000;
+                y = random.nextInt(200);
+                z = random.nextInt(20000) - 10000;
+            }
+            if (random.nextBoolean()) {
+                x++;
+            } else {
+                z++;
+            }
+            blocks[i] = new IntVector3(x, y, z);
+        }
+        return blocks;
+    }
+
+    private static void print(String name, long insertTime, long lookupTime, long sweepTime, int found) {
+        System.out.println("  " + name + ": insert " + (insertTime / 1000000.0) + " ms, " +
+                "lookup " + (lookupTime / 1000000.0) + " ms, sweep " + (sweepTime / 1000000.0) + " ms" +
+                " (" + found + " found)");
+    }
+}
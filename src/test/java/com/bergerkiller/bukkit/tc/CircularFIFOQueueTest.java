@@ -8,10 +8,13 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
+import org.junit.Ignore;
 import org.junit.Test;
 
 import com.bergerkiller.bukkit.tc.utils.CircularFIFOQueue;
 import com.bergerkiller.bukkit.tc.utils.CircularFIFOQueue.EmptyQueueException;
+import com.bergerkiller.bukkit.tc.utils.CircularFIFOQueueCoalescing;
+import com.bergerkiller.bukkit.tc.utils.CircularFIFOQueueStampedRW;
 import com.bergerkiller.bukkit.tc.utils.CircularFIFOQueueSynchronized;
 
 public class CircularFIFOQueueTest {
@@ -62,6 +65,58 @@ public class CircularFIFOQueueTest {
         } catch (InterruptedException e) {}
     }
 
+    @Ignore
+    @Test
+    public void testCompareImplementations() {
+        // Runs the same benchmark for every implementation, so the fastest can be chosen
+        compareImplementation("Synchronized", new CircularFIFOQueueSynchronized<String>());
+        compareImplementation("StampedRW", new CircularFIFOQueueStampedRW<String>());
+        compareImplementation("Coalescing", new CircularFIFOQueueCoalescing<String>(new TestPolicy() {
+            @Override
+            public boolean canReplace(String older, String newer) {
+                return false; // Measure the overhead of the keys, not fewer values being taken
+            }
+        }, 0));
+    }
+
+    private void compareImplementation(String name, final CircularFIFOQueue<String> queue) {
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                while (true) {
+                    String value;
+                    try {
+                        value = queue.take();
+                    } catch (EmptyQueueException e) {
+                        break;
+                    }
+                    busy(value);
+                }
+            }
+        };
+        reader.start();
+
+        final int putCount = 1000;
+
+        // Heat up
+        for (int n = 0; n < 5; n++) {
+            writeToQueue(queue, putCount);
+        }
+
+        long total = 0;
+        for (int n = 0; n < 20; n++) {
+            total += writeToQueue(queue, putCount);
+        }
+
+        System.out.println(name + " TOOK: " + ((double) total / 1000000.0) + "ms");
+
+        // Shut down the reader
+        queue.abort();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {}
+    }
+
     private long writeToQueue(final CircularFIFOQueue<String> queue, final int putCount) {
         List<? extends Thread> threads = IntStream.range(0, 10).mapToObj(i -> new Thread() {
             @Override
@@ -287,4 +342,87 @@ public class CircularFIFOQueueTest {
         queue.put("c");
         assertEquals(2, wakeCounter.get());
     }
+
+    @Test
+    public void testCoalescing() throws CircularFIFOQueue.EmptyQueueException {
+        CircularFIFOQueueCoalescing<String> queue = new CircularFIFOQueueCoalescing<>(new TestPolicy(), 0);
+        assertTrue(queue.offer("a1"));
+        assertTrue(queue.offer("b1"));
+        assertFalse(queue.offer("a2")); // Replaces a1
+        assertTrue(queue.offer("c1"));
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.getCoalescedCount());
+        assertEquals("a2", queue.take());
+
+        // a2 was taken, so a3 must be put again
+        assertTrue(queue.offer("a3"));
+        assertEquals("b1", queue.take());
+        assertEquals("c1", queue.take());
+        assertEquals("a3", queue.take());
+
+        // Barriers stop older values from being replaced
+        assertTrue(queue.offer("a4"));
+        assertTrue(queue.offer("!"));
+        assertTrue(queue.offer("a5"));
+        assertEquals("a4", queue.take());
+        assertEquals("!", queue.take());
+        assertEquals("a5", queue.take());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testCoalescingDrop() throws CircularFIFOQueue.EmptyQueueException {
+        CircularFIFOQueueCoalescing<String> queue = new CircularFIFOQueueCoalescing<>(new TestPolicy(), 2, 2);
+        assertTrue(queue.offer("a1"));
+        assertTrue(queue.offer("b1"));
+        assertFalse(queue.offer("dropme")); // Full, and can be dropped
+        assertTrue(queue.offer("c1")); // Full, but can not be dropped
+        assertFalse(queue.offer("b2")); // Replaces b1, does not grow the queue
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals("a1", queue.take());
+        assertEquals("b2", queue.take());
+        assertEquals("c1", queue.take());
+    }
+
+    @Test
+    public void testCoalescingOverflow() throws CircularFIFOQueue.EmptyQueueException {
+        CircularFIFOQueueCoalescing<String> queue = new CircularFIFOQueueCoalescing<>(new TestPolicy(), 0, 4);
+        for (int w = 0; w < 10; w++) {
+            // Run 10x to make sure things don't corrupt after the overflow
+            int capacity = queue.capacity() + 5;
+            for (int n = 0; n < capacity; n++) {
+                queue.put("v" + n);
+            }
+            for (int n = 0; n < capacity; n++) {
+                assertEquals("v" + n, queue.take());
+            }
+        }
+    }
+
+    /**
+     * Values are keyed by their first character. Only values starting with a, b or c
+     * can be replaced. Values starting with ! are barriers.
+     */
+    private static class TestPolicy implements CircularFIFOQueueCoalescing.Policy<String> {
+        @Override
+        public Object getKey(String value) {
+            return (value.startsWith("!") || value.startsWith("dropme")) ? null : value.substring(0, 1);
+        }
+
+        @Override
+        public boolean canReplace(String older, String newer) {
+            return "abc".indexOf(newer.charAt(0)) != -1;
+        }
+
+        @Override
+        public boolean isBarrier(String value) {
+            return value.startsWith("!");
+        }
+
+        @Override
+        public boolean canDrop(String value) {
+            return value.startsWith("dropme");
+        }
+    }
 }
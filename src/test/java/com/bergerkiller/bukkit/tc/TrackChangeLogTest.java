@@ -0,0 +1,52 @@
+package com.bergerkiller.bukkit.tc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.bergerkiller.bukkit.tc.rails.TrackChangeLog;
+
+/**
+ * Tests the log of areas in which the track changed, used to keep information
+ * cached about track that did not change
+ */
+public class TrackChangeLogTest {
+
+    @Test
+    public void testChangedInArea() {
+        TrackChangeLog log = new TrackChangeLog();
+        long since = log.getCounter();
+        assertFalse(log.hasChangedSince(since, 0, 0, 100, 100));
+
+        log.add(200, 50, 200, 50);
+        assertFalse(log.hasChangedSince(since, 0, 0, 100, 100));
+        assertTrue(log.hasChangedSince(since, 150, 0, 250, 100));
+
+        log.add(100, 100, 110, 110);
+        assertTrue(log.hasChangedSince(since, 0, 0, 100, 100));
+        assertFalse(log.hasChangedSince(log.getCounter(), 0, 0, 100, 100));
+    }
+
+    @Test
+    public void testChangedAll() {
+        TrackChangeLog log = new TrackChangeLog();
+        long since = log.getCounter();
+        log.addAll();
+        assertTrue(log.hasChangedSince(since, -5000, -5000, -4000, -4000));
+    }
+
+    @Test
+    public void testTooManyChanges() {
+        TrackChangeLog log = new TrackChangeLog();
+        long since = log.getCounter();
+        for (int i = 0; i < TrackChangeLog.CAPACITY; i++) {
+            log.add(1000, 1000, 1000, 1000);
+        }
+        assertFalse(log.hasChangedSince(since, 0, 0, 100, 100));
+
+        // Changes that are no longer remembered must be assumed to be in the area
+        log.add(1000, 1000, 1000, 1000);
+        assertTrue(log.hasChangedSince(since, 0, 0, 100, 100));
+        assertFalse(log.hasChangedSince(since + 1, 0, 0, 100, 100));
+    }
+}
@@ -0,0 +1,178 @@
+package com.bergerkiller.bukkit.tc.signactions.mutex;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+
+/**
+ * Tests the rail reservations of mutex zone slots, and compares their performance
+ * with checking every entered group, which was done before.
+ */
+public class MutexRailReservationsTest {
+
+    @Test
+    public void testReserveAndFind() {
+        MutexRailReservations<String> reservations = new MutexRailReservations<>();
+        IntVector3 railA = new IntVector3(1, 64, 1);
+        IntVector3 railB = new IntVector3(-1, 64, 1);
+        reservations.reserve(railA, "train1");
+        reservations.reserve(railA, "train2");
+        reservations.reserve(railA, "train1"); // Duplicate, ignored
+        reservations.reserve(railB, "train2");
+        assertEquals(2, reservations.size());
+
+        List<String> found = new ArrayList<>();
+        reservations.find(railA, g -> true, found);
+        assertEquals(Arrays.asList("train1", "train2"), found);
+
+        // Reservations that are no longer valid are removed
+        found.clear();
+        reservations.find(railA, g -> g.equals("train2"), found);
+        assertEquals(Collections.singletonList("train2"), found);
+        found.clear();
+        reservations.find(railA, g -> true, found);
+        assertEquals(Collections.singletonList("train2"), found);
+
+        found.clear();
+        reservations.find(railB, g -> false, found);
+        assertTrue(found.isEmpty());
+        assertEquals(1, reservations.size());
+
+        found.clear();
+        reservations.find(new IntVector3(1, 65, 1), g -> true, found);
+        assertTrue(found.isEmpty());
+    }
+
+    @Test
+    public void testRemoveGroup() {
+        MutexRailReservations<String> reservations = new MutexRailReservations<>();
+        IntVector3 railA = new IntVector3(1, 64, 1);
+        IntVector3 railB = new IntVector3(-1, 64, 1);
+        reservations.reserve(railA, "train1");
+        reservations.reserve(railA, "train2");
+        reservations.reserve(railB, "train1");
+        reservations.remove("train1");
+        assertEquals(1, reservations.size());
+
+        List<String> found = new ArrayList<>();
+        reservations.find(railA, g -> true, found);
+        assertEquals(Collections.singletonList("train2"), found);
+        found.clear();
+        reservations.find(railB, g -> true, found);
+        assertTrue(found.isEmpty());
+    }
+
+    @Ignore
+    @Test
+    public void testJunctionPerformance() {
+        // 50 trains driving through a junction complex where many paths cross
+        for (int run = 0; run < 5; run++) {
+            List<SimulatedTrain> trains = createTrains(50, new Random(run));
+            long scanTime = 0, tableTime = 0;
+            int scanConflicts = 0, tableConflicts = 0;
+            for (int tick = 0; tick < 200; tick++) {
+                for (SimulatedTrain train : trains) {
+                    train.move(tick);
+                }
+
+                long start = System.nanoTime();
+                scanConflicts += simulateScan(trains);
+                scanTime += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                tableConflicts += simulateReservations(trains);
+                tableTime += System.nanoTime() - start;
+            }
+            assertEquals(scanConflicts, tableConflicts);
+            System.out.println("Scan over all entered groups: " + (scanTime / 1000000.0) + "ms");
+            System.out.println("Rail reservations: " + (tableTime / 1000000.0) + "ms" +
+                    " (" + scanConflicts + " conflicts)");
+        }
+    }
+
+    private static int simulateScan(List<SimulatedTrain> trains) {
+        int conflicts = 0;
+        for (SimulatedTrain train : trains) {
+            for (IntVector3 rail : train.rails) {
+                for (SimulatedTrain other : trains) {
+                    if (other != train && other.rails.contains(rail)) {
+                        conflicts++;
+                    }
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    private static int simulateReservations(List<SimulatedTrain> trains) {
+        MutexRailReservations<SimulatedTrain> reservations = trains.get(0).reservations;
+        List<SimulatedTrain> found = new ArrayList<>();
+        int conflicts = 0;
+        for (SimulatedTrain train : trains) {
+            for (IntVector3 rail : train.rails) {
+                found.clear();
+                reservations.find(rail, g -> g.rails.contains(rail), found);
+                for (SimulatedTrain other : found) {
+                    if (other != train) {
+                        conflicts++;
+                    }
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    private static List<SimulatedTrain> createTrains(int count, Random random) {
+        MutexRailReservations<SimulatedTrain> reservations = new MutexRailReservations<>();
+        List<SimulatedTrain> trains = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            // Straight paths along x or z through a 64x64 area, so that they cross
+            IntVector3[] path = new IntVector3[256];
+            int offset = random.nextInt(64);
+            boolean alongX = random.nextBoolean();
+            for (int i = 0; i < path.length; i++) {
+                int p = i - 96;
+                path[i] = alongX ? new IntVector3(p, 64, offset) : new IntVector3(offset, 64, p);
+            }
+            trains.add(new SimulatedTrain(reservations, path, random.nextInt(40)));
+        }
+        return trains;
+    }
+
+    private static final class SimulatedTrain {
+        /** Shared by all trains, like the reservations of a mutex zone slot */
+        public final MutexRailReservations<SimulatedTrain> reservations;
+        public final IntVector3[] path;
+        public final int delay;
+        public final Set<IntVector3> rails = new HashSet<>();
+
+        public SimulatedTrain(MutexRailReservations<SimulatedTrain> reservations, IntVector3[] path, int delay) {
+            this.reservations = reservations;
+            this.path = path;
+            this.delay = delay;
+        }
+
+        public void move(int tick) {
+            // Train occupies 12 rails and looks 20 rails ahead
+            int head = Math.min(path.length, Math.max(0, tick - delay) + 32);
+            int tail = Math.max(0, head - 32);
+            this.rails.clear();
+            for (int i = tail; i < head; i++) {
+                if (this.rails.add(path[i])) {
+                    this.reservations.reserve(path[i], this);
+                }
+            }
+        }
+    }
+}